@@ -6,6 +6,8 @@ import com.sandy.aiot.vision.collector.entity.Tag;
 import com.sandy.aiot.vision.collector.repository.AlertRepository;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
 import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.AlertStatsTracker;
+import com.sandy.aiot.vision.collector.service.AlertWriter;
 import com.sandy.aiot.vision.collector.service.impl.AlertScanService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -31,13 +33,15 @@ public class AlertController {
     private final AlertScanService alertScanService;
     private final DeviceRepository deviceRepository;
     private final TagRepository tagRepository;
+    private final AlertWriter alertWriter;
+    private final AlertStatsTracker alertStatsTracker;
 
     @org.springframework.beans.factory.annotation.Value("${alert.enabled:true}")
     private boolean alertEnabled;
 
     @GetMapping
     public List<AlertItem> listActive() {
-        return alertRepository.findByAcknowledgedFalseAndIgnoredFalseOrderByCreatedAtDesc()
+        return alertRepository.findByAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullOrderByCreatedAtDesc()
                 .stream().map(this::toItem).collect(Collectors.toList());
     }
 
@@ -47,32 +51,16 @@ public class AlertController {
     }
 
     // New stats endpoint for big screen monitoring
+    // 计数由 AlertStatsTracker 随预警新增/确认/忽略/解除增量维护, 不再逐次加载预警
     @GetMapping("/stats")
     public Stats stats() {
+        AlertStatsTracker.Snapshot snap = alertStatsTracker.snapshot(12); // last 12 hours including current hour
         Stats s = new Stats();
-        List<Alert> active = alertRepository.findByAcknowledgedFalseAndIgnoredFalseOrderByCreatedAtDesc();
-        s.setActiveCount(active.size());
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime dayAgo = now.minusHours(24);
-        List<Alert> recent = alertRepository.findByCreatedAtAfterOrderByCreatedAtAsc(dayAgo);
-        s.setRecent24hCount(recent.size());
-        s.setSeverityActive(countBySeverity(active));
-        s.setSeverityRecent24h(countBySeverity(recent));
-        // Hour buckets (last 12 hours including current hour)
-        Map<String, Integer> hourMap = new LinkedHashMap<>();
-        for (int i = 11; i >= 0; i--) {
-            LocalDateTime start = now.minusHours(i).withMinute(0).withSecond(0).withNano(0);
-            String label = String.format("%02d:00", start.getHour());
-            hourMap.put(label, 0);
-        }
-        for (Alert a : recent) {
-            LocalDateTime ts = a.getCreatedAt();
-            if (ts == null) continue;
-            if (ts.isBefore(now.minusHours(12))) continue;
-            String label = String.format("%02d:00", ts.getHour());
-            hourMap.computeIfPresent(label, (k, v) -> v + 1);
-        }
-        List<HourStat> hourStats = hourMap.entrySet().stream().map(e -> {
+        s.setActiveCount(snap.activeCount());
+        s.setRecent24hCount(snap.recent24hCount());
+        s.setSeverityActive(snap.severityActive());
+        s.setSeverityRecent24h(snap.severityRecent24h());
+        List<HourStat> hourStats = snap.hourStats().entrySet().stream().map(e -> {
             HourStat h = new HourStat();
             h.setHour(e.getKey());
             h.setCount(e.getValue());
@@ -82,15 +70,6 @@ public class AlertController {
         return s;
     }
 
-    private Map<String, Integer> countBySeverity(List<Alert> alerts) {
-        Map<String, Integer> map = new LinkedHashMap<>();
-        for (Alert a : alerts) {
-            String sev = Optional.ofNullable(a.getSeverity()).orElse("UNKNOWN").toUpperCase();
-            map.put(sev, map.getOrDefault(sev, 0) + 1);
-        }
-        return map;
-    }
-
     @PostMapping("/{id}/ack")
     public ResponseEntity<ActionResp> acknowledge(@PathVariable Long id) {
         Optional<Alert> opt = alertRepository.findById(id);
@@ -131,7 +110,7 @@ public class AlertController {
     public Meta meta() {
         Meta m = new Meta();
         m.setEnabled(alertEnabled); // use injected property instead of service accessor
-        m.setActiveCount(alertRepository.findByAcknowledgedFalseAndIgnoredFalseOrderByCreatedAtDesc().size());
+        m.setActiveCount(alertStatsTracker.activeCount());
         return m;
     }
 
@@ -151,6 +130,7 @@ public class AlertController {
         it.setDeviationPercent(a.getDeviationPercent());
         it.setAcknowledged(a.isAcknowledged());
         it.setIgnored(a.isIgnored());
+        it.setResolvedAt(a.getResolvedAt());
         // added enrichment (best-effort, null if missing)
         if (a.getDeviceId() != null) {
             try { it.setDeviceName(deviceRepository.findById(a.getDeviceId()).map(Device::getName).orElse(null)); } catch (Exception ignored) { }
@@ -177,6 +157,7 @@ public class AlertController {
         private Double deviationPercent;
         private boolean acknowledged;
         private boolean ignored;
+        private LocalDateTime resolvedAt;
         // added fields
         private String deviceName;
         private String tagName;
@@ -211,50 +192,22 @@ public class AlertController {
 
     @PostMapping("/batch-ack")
     public ResponseEntity<BatchActionResp> batchAcknowledge(@RequestBody BatchActionReq req) {
-        List<Long> ids = req.getIds();
-        List<Long> failed = new ArrayList<>();
-        int success = 0;
-        for (Long id : ids) {
-            Optional<Alert> opt = alertRepository.findById(id);
-            if (opt.isEmpty()) { failed.add(id); continue; }
-            Alert a = opt.get();
-            if (!a.isAcknowledged()) {
-                a.setAcknowledged(true);
-                a.setAcknowledgedAt(LocalDateTime.now());
-                alertRepository.save(a);
-                success++;
-            } else {
-                // already acknowledged, treat as success
-                success++;
-            }
-        }
+        List<Long> ids = req.getIds() == null ? List.of() : req.getIds();
+        // 单条 UPDATE ... WHERE id IN (...); 已确认的视为成功
+        List<Long> failed = alertWriter.acknowledge(ids);
         BatchActionResp resp = new BatchActionResp();
-        resp.setSuccessCount(success);
+        resp.setSuccessCount(ids.size() - failed.size());
         resp.setFailedIds(failed);
         return ResponseEntity.ok(resp);
     }
 
     @PostMapping("/batch-ignore")
     public ResponseEntity<BatchActionResp> batchIgnore(@RequestBody BatchActionReq req) {
-        List<Long> ids = req.getIds();
-        List<Long> failed = new ArrayList<>();
-        int success = 0;
-        for (Long id : ids) {
-            Optional<Alert> opt = alertRepository.findById(id);
-            if (opt.isEmpty()) { failed.add(id); continue; }
-            Alert a = opt.get();
-            if (!a.isIgnored()) {
-                a.setIgnored(true);
-                a.setIgnoredAt(LocalDateTime.now());
-                alertRepository.save(a);
-                success++;
-            } else {
-                // already ignored, treat as success
-                success++;
-            }
-        }
+        List<Long> ids = req.getIds() == null ? List.of() : req.getIds();
+        // 已忽略的视为成功
+        List<Long> failed = alertWriter.ignore(ids);
         BatchActionResp resp = new BatchActionResp();
-        resp.setSuccessCount(success);
+        resp.setSuccessCount(ids.size() - failed.size());
         resp.setFailedIds(failed);
         return ResponseEntity.ok(resp);
     }
@@ -0,0 +1,74 @@
+package com.sandy.aiot.vision.collector.controller;
+
+import com.sandy.aiot.vision.collector.entity.AlertRule;
+import com.sandy.aiot.vision.collector.repository.AlertRuleRepository;
+import com.sandy.aiot.vision.collector.service.impl.AlertRuleEngine;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * CRUD for alert rules (per tag or per tag group). Every change recompiles the rules right away.
+ */
+@RestController
+@RequestMapping("/data/api/alert-rules")
+@RequiredArgsConstructor
+@Slf4j
+public class AlertRuleController {
+
+    private final AlertRuleRepository alertRuleRepository;
+    private final AlertRuleEngine alertRuleEngine;
+
+    @GetMapping
+    public List<AlertRule> list() {
+        return alertRuleRepository.findAll();
+    }
+
+    @PostMapping
+    public ResponseEntity<RuleResp> create(@RequestBody AlertRule rule) {
+        rule.setId(null);
+        return save(rule);
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<RuleResp> update(@PathVariable Long id, @RequestBody AlertRule rule) {
+        if (alertRuleRepository.findById(id).isEmpty()) return ResponseEntity.ok(RuleResp.fail("Rule not found"));
+        rule.setId(id);
+        return save(rule);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<RuleResp> delete(@PathVariable Long id) {
+        Optional<AlertRule> opt = alertRuleRepository.findById(id);
+        if (opt.isEmpty()) return ResponseEntity.ok(RuleResp.fail("Rule not found"));
+        alertRuleRepository.delete(opt.get());
+        alertRuleEngine.reload();
+        return ResponseEntity.ok(RuleResp.ok(opt.get()));
+    }
+
+    private ResponseEntity<RuleResp> save(AlertRule rule) {
+        try {
+            alertRuleEngine.validate(rule);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.ok(RuleResp.fail(e.getMessage()));
+        }
+        AlertRule saved = alertRuleRepository.save(rule);
+        alertRuleEngine.reload();
+        log.info("Alert rule saved id={} type={} tagId={} tagGroup={}", saved.getId(), saved.getType(), saved.getTagId(), saved.getTagGroup());
+        return ResponseEntity.ok(RuleResp.ok(saved));
+    }
+
+    @Data
+    public static class RuleResp {
+        private boolean success;
+        private String message;
+        private AlertRule rule;
+        public static RuleResp ok(AlertRule rule) { RuleResp r = new RuleResp(); r.success = true; r.rule = rule; return r; }
+        public static RuleResp fail(String msg) { RuleResp r = new RuleResp(); r.success = false; r.message = msg; return r; }
+    }
+}
@@ -4,24 +4,35 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sandy.aiot.vision.collector.entity.DataRecord;
 import com.sandy.aiot.vision.collector.entity.Device;
 import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.event.DeviceSavedEvent;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
 import com.sandy.aiot.vision.collector.repository.TagRepository;
 import com.sandy.aiot.vision.collector.service.CollectorService;
 import com.sandy.aiot.vision.collector.service.DataStorageService;
-import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.service.impl.ForecastEndpointPools;
+import com.sandy.aiot.vision.collector.service.impl.LocalForecastEngine;
+import com.sandy.aiot.vision.collector.vo.AlignedHistoryVO;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
 import com.sandy.aiot.vision.collector.vo.NamespaceVO;
 import com.sandy.aiot.vision.collector.vo.TagValueVO;
 import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelRsp;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -39,8 +50,10 @@ public class DataController {
     private final DeviceRepository deviceRepository;
     private final TagRepository tagRepository;
     private final ObjectMapper objectMapper; // kept for potential future serialization needs
-    private final PredictService predictService;
+    private final PredictionCacheService predictionCacheService;
     private final DataStorageService dataStorageService;
+    private final ForecastEndpointPools forecastEndpointPools;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Value("${data.view.latest-minutes-window}")
     private int latestMinutesWindow;
@@ -80,6 +93,7 @@ public class DataController {
             model.addAttribute("error", "Tag does not exist or does not belong to this device");
             return "tag-history";
         }
+        predictionCacheService.markViewed(deviceId, tagId);
         List<DataRecord> history = dataStorageService.findTopN(deviceId, tagId, actualMinutes);
         List<TagHistoryEntry> entries = new ArrayList<>(history.size());
         for (DataRecord rec : history) {
@@ -128,13 +142,72 @@ public class DataController {
     }
 
     /**
-     * Prediction endpoint: Returns a collection of historical and predicted results.
+     * Aligned history of several tags in one query (ascending time order, columnar JSON).
+     * With {@code from} the first rows of the range [from, to) are returned, otherwise the latest rows. Both are capped by
+     * {@code limit}, which itself may not exceed {@code data.api.history-limit}; the cap is applied by the storage query.
+     * Without tagIds all tags of the device are returned.
+     */
+    @GetMapping(value = "/api/history/{deviceId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<AlignedHistoryVO> apiAlignedHistory(@PathVariable Long deviceId,
+                                                              @RequestParam(value = "tagIds", required = false) List<Long> tagIds,
+                                                              @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                              @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                              @RequestParam(value = "limit", required = false) Integer limit) throws IOException {
+        if (deviceRepository.findById(deviceId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<Long, Tag> byId = new LinkedHashMap<>();
+        tagRepository.findByDeviceId(deviceId).stream().sorted(Comparator.comparing(Tag::getId)).forEach(t -> byId.put(t.getId(), t));
+        List<Tag> tags = new ArrayList<>();
+        if (tagIds == null || tagIds.isEmpty()) {
+            tags.addAll(byId.values());
+        } else {
+            for (Long id : new LinkedHashSet<>(tagIds)) {
+                Tag t = byId.get(id);
+                if (t != null) tags.add(t);
+            }
+        }
+        List<Long> ids = tags.stream().map(Tag::getId).toList();
+        List<String> timestamps = new ArrayList<>();
+        List<List<Object>> columns = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) columns.add(new ArrayList<>());
+        int cap = apiHistoryLimit > 0 ? apiHistoryLimit : 200;
+        int max = limit != null && limit > 0 ? Math.min(limit, cap) : cap;
+        DataStorageService.RowHandler collect = (ts, values) -> {
+            timestamps.add(TS_FMT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC)));
+            for (int i = 0; i < values.length; i++) columns.get(i).add(values[i]);
+        };
+        if (!ids.isEmpty()) {
+            if (from != null) {
+                dataStorageService.scanRange(deviceId, ids, from, to == null ? LocalDateTime.now() : to, max, collect);
+            } else {
+                dataStorageService.scanLatest(deviceId, ids, max, collect);
+                Collections.reverse(timestamps);
+                columns.forEach(Collections::reverse);
+            }
+        }
+        return ResponseEntity.ok(AlignedHistoryVO.builder()
+                .deviceId(deviceId)
+                .tagIds(ids)
+                .tagNames(tags.stream().map(Tag::getName).toList())
+                .timestamps(timestamps)
+                .values(columns)
+                .build());
+    }
+
+    /**
+     * Prediction endpoint: served from the prediction cache with its coverage and age. A stale series (coverage ended,
+     * or older than {@code maxAge} seconds) triggers one shared background refresh; the request only waits for it
+     * when nothing is cached yet.
      */
     @GetMapping(value = "/api/predict/{deviceId}/{tagId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public TimeSeriesDataModelRsp apiPredict(@PathVariable Long deviceId, @PathVariable Long tagId) {
+    public TimeSeriesDataModelRsp apiPredict(@PathVariable Long deviceId, @PathVariable Long tagId,
+                                             @RequestParam(value = "maxAge", required = false) Long maxAgeSeconds) {
         try {
-            return predictService.predict(deviceId, tagId).toTimeSeriesDataModelRsp();
+            Long maxAgeMs = maxAgeSeconds == null ? null : Math.max(0, maxAgeSeconds) * 1000;
+            return predictionCacheService.viewForecast(deviceId, tagId, maxAgeMs);
         } catch (Exception e) {
             log.error("Prediction failed for deviceId={} tagId={} error={}", deviceId, tagId, e.getMessage());
             return TimeSeriesDataModelRsp.empty();
@@ -190,8 +263,17 @@ public class DataController {
         if (tagRepository.findByDeviceIdAndAddress(deviceId, address).isPresent()) {
             return ResponseEntity.ok(TagAddResp.builder().success(false).message("A tag with this address already exists").build());
         }
+        String forecastModel = trimToNull(req.getForecastModel());
+        if (!isValidForecastModel(forecastModel)) {
+            return ResponseEntity.ok(TagAddResp.builder().success(false).message("Unsupported forecast model: " + forecastModel).build());
+        }
+        String forecastPool = trimToNull(req.getForecastPool());
+        if (!forecastEndpointPools.isKnownPool(forecastPool)) {
+            return ResponseEntity.ok(TagAddResp.builder().success(false).message("Unknown forecast pool: " + forecastPool).build());
+        }
         String name = Optional.ofNullable(req.getName()).map(String::trim).filter(s -> !s.isEmpty()).orElse(address);
-        Tag tag = Tag.builder().name(name).address(address).device(devOpt.get()).build();
+        Tag tag = Tag.builder().name(name).address(address).forecastModel(forecastModel).forecastPool(forecastPool)
+                .tagGroup(trimToNull(req.getTagGroup())).device(devOpt.get()).build();
         try {
             tag = tagRepository.save(tag);
             return ResponseEntity.ok(TagAddResp.builder()
@@ -200,6 +282,9 @@ public class DataController {
                     .id(tag.getId())
                     .name(tag.getName())
                     .address(tag.getAddress())
+                    .forecastModel(tag.getForecastModel())
+                    .forecastPool(tag.getForecastPool())
+                    .tagGroup(tag.getTagGroup())
                     .build());
         } catch (Exception e) {
             log.error("Failed to quickly add tag for deviceId={} address={} error={}", deviceId, address, e.getMessage());
@@ -220,13 +305,15 @@ public class DataController {
         if (conn.isEmpty()) return DeviceAddResp.fail("Connection string cannot be empty");
         if (!protocol.equals("opcua")) return DeviceAddResp.fail("Protocol not supported: " + protocol);
         try {
-            Device device = Device.builder().name(name).protocol(protocol).connectionString(conn).build();
+            Device device = Device.builder().name(name).protocol(protocol).connectionString(conn).storageGroup(trimToNull(req.getStorageGroup())).build();
             device = deviceRepository.save(device);
+            eventPublisher.publishEvent(new DeviceSavedEvent(device.getId(), device.getStorageGroup()));
             DeviceAddResp resp = DeviceAddResp.ok();
             resp.setId(device.getId());
             resp.setName(device.getName());
             resp.setProtocol(device.getProtocol());
             resp.setConnectionString(device.getConnectionString());
+            resp.setStorageGroup(device.getStorageGroup());
             return resp;
         } catch (Exception e) {
             log.error("Failed to add device name={} conn={} error={}", name, conn, e.getMessage());
@@ -248,6 +335,9 @@ public class DataController {
                 it.setId(t.getId());
                 it.setName(t.getName());
                 it.setAddress(t.getAddress());
+                it.setForecastModel(t.getForecastModel());
+                it.setForecastPool(t.getForecastPool());
+                it.setTagGroup(t.getTagGroup());
                 list.add(it);
             }
             list.sort(Comparator.comparing(TagListItem::getId));
@@ -259,6 +349,9 @@ public class DataController {
     public static class TagUpdateReq {
         private String name;
         private String address;
+        private String forecastModel;
+        private String forecastPool;
+        private String tagGroup;
     }
 
     /**
@@ -281,7 +374,24 @@ public class DataController {
         if (dup.isPresent() && !Objects.equals(dup.get().getId(), tag.getId())) {
             return TagAddResp.builder().success(false).message("Address already exists for this device").build();
         }
+        String forecastModel = trimToNull(req.getForecastModel());
+        if (!isValidForecastModel(forecastModel)) {
+            return TagAddResp.builder().success(false).message("Unsupported forecast model: " + forecastModel).build();
+        }
+        String forecastPool = trimToNull(req.getForecastPool());
+        if (!forecastEndpointPools.isKnownPool(forecastPool)) {
+            return TagAddResp.builder().success(false).message("Unknown forecast pool: " + forecastPool).build();
+        }
         tag.setAddress(newAddr);
+        if (req.getForecastModel() != null) {
+            tag.setForecastModel(forecastModel); // 传空字符串恢复默认模型
+        }
+        if (req.getForecastPool() != null) {
+            tag.setForecastPool(forecastPool); // 传空字符串恢复默认池
+        }
+        if (req.getTagGroup() != null) {
+            tag.setTagGroup(trimToNull(req.getTagGroup())); // 传空字符串移出分组
+        }
         if (!newName.isEmpty()) {
             tag.setName(newName);
         }
@@ -293,6 +403,9 @@ public class DataController {
                     .id(tag.getId())
                     .name(tag.getName())
                     .address(tag.getAddress())
+                    .forecastModel(tag.getForecastModel())
+                    .forecastPool(tag.getForecastPool())
+                    .tagGroup(tag.getTagGroup())
                     .build();
         } catch (Exception e) {
             log.error("Failed to update tag for deviceId={} tagId={} error={}", deviceId, tagId, e.getMessage());
@@ -301,7 +414,7 @@ public class DataController {
     }
 
     /**
-     * Deletes a tag.
+     * Deletes a tag and drops its cached predictions.
      */
     @DeleteMapping(value = "/api/{deviceId}/tags/{tagId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -314,6 +427,7 @@ public class DataController {
         }
         try {
             tagRepository.deleteById(tagId);
+            eventPublisher.publishEvent(new TagsRemovedEvent(List.of(new DeviceTagKey(deviceId, tagId))));
             return SimpleResp.ok();
         } catch (Exception e) {
             log.error("Failed to delete tag for deviceId={} tagId={} error={}", deviceId, tagId, e.getMessage());
@@ -322,7 +436,7 @@ public class DataController {
     }
 
     /**
-     * Deletes a device (cascades to delete associated tags).
+     * Deletes a device (cascades to delete associated tags) and drops the cached predictions of its tags.
      */
     @DeleteMapping(value = "/api/devices/{deviceId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -330,7 +444,11 @@ public class DataController {
         Optional<Device> devOpt = deviceRepository.findById(deviceId);
         if (devOpt.isEmpty()) return SimpleResp.fail("Device does not exist");
         try {
+            List<DeviceTagKey> keys = tagRepository.findByDeviceId(deviceId).stream()
+                    .map(t -> new DeviceTagKey(deviceId, t.getId()))
+                    .toList();
             deviceRepository.delete(devOpt.get());
+            eventPublisher.publishEvent(new TagsRemovedEvent(keys));
             return SimpleResp.ok();
         } catch (Exception e) {
             log.error("Failed to delete device for deviceId={} error={}", deviceId, e.getMessage());
@@ -345,6 +463,9 @@ public class DataController {
         private Long id;
         private String name;
         private String address;
+        private String forecastModel;
+        private String forecastPool;
+        private String tagGroup;
     }
 
     @Data
@@ -367,6 +488,15 @@ public class DataController {
         }
     }
 
+    private static String trimToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
+    // null 表示使用默认模型
+    private static boolean isValidForecastModel(String model) {
+        return model == null || "remote".equalsIgnoreCase(model) || LocalForecastEngine.Model.parse(model) != null;
+    }
+
     private List<DeviceSnapshotView> buildLatestSnapshots(int minutesWindow) {
         List<Device> devices = deviceRepository.findAllWithTags();
         if (devices.isEmpty()) return Collections.emptyList();
@@ -437,6 +567,9 @@ public class DataController {
     public static class TagAddReq {
         private String name;
         private String address;
+        private String forecastModel;
+        private String forecastPool;
+        private String tagGroup;
     }
 
     @Data
@@ -449,6 +582,9 @@ public class DataController {
         private Long id;
         private String name;
         private String address;
+        private String forecastModel;
+        private String forecastPool;
+        private String tagGroup;
     }
 
     @Data
@@ -456,6 +592,7 @@ public class DataController {
         private String name;
         private String protocol;
         private String connectionString;
+        private String storageGroup; // optional IoTDB database group; on update null keeps the current group, "" clears it
     }
 
     @Data
@@ -466,6 +603,7 @@ public class DataController {
         private String name;
         private String protocol;
         private String connectionString;
+        private String storageGroup;
 
         public static DeviceAddResp ok() {
             DeviceAddResp r = new DeviceAddResp();
@@ -501,12 +639,17 @@ public class DataController {
             d.setName(name);
             d.setProtocol(protocol);
             d.setConnectionString(conn);
+            if (req.getStorageGroup() != null) {
+                d.setStorageGroup(trimToNull(req.getStorageGroup())); // 传空字符串恢复按 id 取模路由; 不传保持不变
+            }
             d = deviceRepository.save(d);
+            eventPublisher.publishEvent(new DeviceSavedEvent(d.getId(), d.getStorageGroup()));
             DeviceAddResp resp = DeviceAddResp.ok();
             resp.setId(d.getId());
             resp.setName(d.getName());
             resp.setProtocol(d.getProtocol());
             resp.setConnectionString(d.getConnectionString());
+            resp.setStorageGroup(d.getStorageGroup());
             return resp;
         } catch (Exception e) {
             log.error("Failed to update device for id={} error={}", deviceId, e.getMessage());
@@ -0,0 +1,221 @@
+package com.sandy.aiot.vision.collector.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams raw history of one or many tags as CSV / NDJSON straight from the storage cursor to the response,
+ * so memory stays constant regardless of the exported range.
+ * <p>
+ * layout=wide (default) writes one row per timestamp with a column per tag; layout=long writes one row per point
+ * (deviceId, tagId, timestamp, value, type), the row layout accepted by the import endpoint.
+ */
+@RestController
+@RequestMapping("/data/api/export")
+@RequiredArgsConstructor
+@Slf4j
+public class DataExportController {
+
+    private final DeviceRepository deviceRepository;
+    private final TagRepository tagRepository;
+    private final DataStorageService dataStorageService;
+    private final ObjectMapper objectMapper;
+
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Exports [from, to) of the given tags (all tags of the device when tagIds is omitted).
+     * format: csv (default) | ndjson; layout: wide (default) | long; gzip=true returns a .gz attachment.
+     */
+    @GetMapping("/{deviceId}")
+    public void export(@PathVariable Long deviceId,
+                       @RequestParam(value = "tagIds", required = false) List<Long> tagIds,
+                       @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                       @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                       @RequestParam(value = "format", defaultValue = "csv") String format,
+                       @RequestParam(value = "layout", defaultValue = "wide") String layout,
+                       @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                       HttpServletResponse response) throws IOException {
+        if (deviceRepository.findById(deviceId).isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Device does not exist");
+            return;
+        }
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"csv".equalsIgnoreCase(format)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported format: " + format);
+            return;
+        }
+        boolean longLayout = "long".equalsIgnoreCase(layout);
+        if (!longLayout && !"wide".equalsIgnoreCase(layout)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported layout: " + layout);
+            return;
+        }
+        LocalDateTime end = to == null ? LocalDateTime.now() : to;
+        List<Tag> tags = resolveTags(deviceId, tagIds);
+        if (tags.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No tags to export");
+            return;
+        }
+        List<Long> ids = tags.stream().map(Tag::getId).toList();
+
+        String fileName = "device-" + deviceId + (ndjson ? ".ndjson" : ".csv") + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : (ndjson ? "application/x-ndjson" : "text/csv"));
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        long start = System.currentTimeMillis();
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE) : response.getOutputStream();
+        long rows;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (longLayout) rows = ndjson ? writeLongNdjson(writer, deviceId, ids, from, end) : writeLongCsv(writer, deviceId, ids, from, end);
+            else rows = ndjson ? writeNdjson(writer, deviceId, tags, ids, from, end) : writeCsv(writer, deviceId, tags, ids, from, end);
+        }
+        log.info("Exported deviceId={} tags={} rows={} format={} layout={} gzip={} cost={}ms", deviceId, ids, rows, format, layout, gzip, System.currentTimeMillis() - start);
+    }
+
+    private List<Tag> resolveTags(Long deviceId, List<Long> tagIds) {
+        List<Tag> all = tagRepository.findByDeviceId(deviceId);
+        if (tagIds == null || tagIds.isEmpty()) {
+            List<Tag> sorted = new ArrayList<>(all);
+            sorted.sort(Comparator.comparing(Tag::getId));
+            return sorted;
+        }
+        Map<Long, Tag> byId = new HashMap<>();
+        for (Tag t : all) byId.put(t.getId(), t);
+        List<Tag> list = new ArrayList<>(tagIds.size());
+        for (Long id : new LinkedHashSet<>(tagIds)) {
+            Tag t = byId.get(id);
+            if (t != null) list.add(t);
+        }
+        return list;
+    }
+
+    private long writeCsv(Writer w, Long deviceId, List<Tag> tags, List<Long> ids, LocalDateTime from, LocalDateTime to) throws IOException {
+        w.write("timestamp");
+        for (Tag t : tags) {
+            w.write(',');
+            w.write(csvEscape(t.getName() == null ? String.valueOf(t.getId()) : t.getName()));
+        }
+        w.write('\n');
+        return dataStorageService.scanRange(deviceId, ids, from, to, (ts, values) -> {
+            w.write(formatTs(ts));
+            for (Object v : values) {
+                w.write(',');
+                if (v != null) w.write(csvEscape(String.valueOf(v)));
+            }
+            w.write('\n');
+        });
+    }
+
+    private long writeNdjson(Writer w, Long deviceId, List<Tag> tags, List<Long> ids, LocalDateTime from, LocalDateTime to) throws IOException {
+        String[] keys = new String[tags.size()];
+        for (int i = 0; i < keys.length; i++) keys[i] = String.valueOf(tags.get(i).getId());
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(w);
+        gen.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        long rows = dataStorageService.scanRange(deviceId, ids, from, to, (ts, values) -> {
+            gen.writeStartObject();
+            gen.writeStringField("timestamp", formatTs(ts));
+            for (int i = 0; i < values.length; i++) {
+                gen.writeFieldName(keys[i]);
+                writeValue(gen, values[i]);
+            }
+            gen.writeEndObject();
+        });
+        gen.writeRaw('\n');
+        gen.flush();
+        return rows;
+    }
+
+    /** One row per point; returns the number of points. */
+    private long writeLongCsv(Writer w, Long deviceId, List<Long> ids, LocalDateTime from, LocalDateTime to) throws IOException {
+        w.write("deviceId,tagId,timestamp,value,type\n");
+        long[] points = new long[1];
+        dataStorageService.scanRange(deviceId, ids, from, to, (ts, values) -> {
+            String time = formatTs(ts);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) continue;
+                w.write(deviceId + "," + ids.get(i) + "," + time + ",");
+                w.write(csvEscape(String.valueOf(values[i])));
+                w.write(',');
+                w.write(typeOf(values[i]));
+                w.write('\n');
+                points[0]++;
+            }
+        });
+        return points[0];
+    }
+
+    private long writeLongNdjson(Writer w, Long deviceId, List<Long> ids, LocalDateTime from, LocalDateTime to) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(w);
+        gen.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        long[] points = new long[1];
+        dataStorageService.scanRange(deviceId, ids, from, to, (ts, values) -> {
+            String time = formatTs(ts);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) continue;
+                gen.writeStartObject();
+                gen.writeNumberField("deviceId", deviceId);
+                gen.writeNumberField("tagId", ids.get(i));
+                gen.writeStringField("timestamp", time);
+                gen.writeFieldName("value");
+                writeValue(gen, values[i]);
+                gen.writeStringField("type", typeOf(values[i]));
+                gen.writeEndObject();
+                points[0]++;
+            }
+        });
+        gen.writeRaw('\n');
+        gen.flush();
+        return points[0];
+    }
+
+    // 与导入接口的 type 列对应, 回灌时保持原序列的数据类型
+    private static String typeOf(Object v) {
+        if (v instanceof Double) return "DOUBLE";
+        if (v instanceof Float) return "FLOAT";
+        if (v instanceof Long) return "INT64";
+        if (v instanceof Integer) return "INT32";
+        if (v instanceof Boolean) return "BOOLEAN";
+        return "TEXT";
+    }
+
+    private void writeValue(JsonGenerator gen, Object v) throws IOException {
+        if (v == null) gen.writeNull();
+        else if (v instanceof Double d) gen.writeNumber(d);
+        else if (v instanceof Float f) gen.writeNumber(f);
+        else if (v instanceof Long l) gen.writeNumber(l);
+        else if (v instanceof Integer i) gen.writeNumber(i);
+        else if (v instanceof Boolean b) gen.writeBoolean(b);
+        else gen.writeString(String.valueOf(v));
+    }
+
+    private String formatTs(long epochMillis) {
+        return TS_FMT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC));
+    }
+
+    private static String csvEscape(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,47 @@
+package com.sandy.aiot.vision.collector.controller;
+
+import com.sandy.aiot.vision.collector.service.impl.DataImportService;
+import com.sandy.aiot.vision.collector.service.impl.DataImportService.ImportJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+/**
+ * Bulk historical import endpoints. The upload returns immediately with a job; progress is polled via GET.
+ */
+@RestController
+@RequestMapping("/data/api/import")
+@RequiredArgsConstructor
+@Slf4j
+public class DataImportController {
+
+    private final DataImportService dataImportService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJob> upload(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "format", required = false) String format) {
+        try {
+            return ResponseEntity.ok(dataImportService.submit(file, format));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Failed to accept import file={} error={}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping
+    public List<ImportJob> list() {
+        return dataImportService.listJobs();
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<ImportJob> status(@PathVariable String jobId) {
+        return dataImportService.getJob(jobId).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+}
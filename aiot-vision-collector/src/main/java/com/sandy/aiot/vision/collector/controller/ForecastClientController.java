@@ -0,0 +1,34 @@
+package com.sandy.aiot.vision.collector.controller;
+
+import com.sandy.aiot.vision.collector.service.impl.ForecastClient;
+import com.sandy.aiot.vision.collector.service.impl.ForecastEndpointPools;
+import com.sandy.aiot.vision.collector.vo.ForecastEndpointStatsVO;
+import com.sandy.aiot.vision.collector.vo.ForecastPoolVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Read-only view of the forecast service client (circuit state, errors and latency per endpoint, pool routing).
+ */
+@RestController
+@RequestMapping("/data/api/forecast")
+@RequiredArgsConstructor
+public class ForecastClientController {
+
+    private final ForecastClient forecastClient;
+    private final ForecastEndpointPools forecastEndpointPools;
+
+    @GetMapping("/endpoints")
+    public List<ForecastEndpointStatsVO> endpoints() {
+        return forecastClient.endpointStats();
+    }
+
+    @GetMapping("/pools")
+    public List<ForecastPoolVO> pools() {
+        return forecastEndpointPools.pools();
+    }
+}
@@ -0,0 +1,47 @@
+package com.sandy.aiot.vision.collector.controller;
+
+import com.sandy.aiot.vision.collector.service.ForecastAccuracyTracker;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.ForecastAccuracyVO;
+import com.sandy.aiot.vision.collector.vo.PredictionCacheStatsVO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Read-only view of the prediction cache (memory accounting and forecast accuracy per series).
+ */
+@RestController
+@RequestMapping("/data/api/predict-cache")
+@RequiredArgsConstructor
+public class PredictionCacheController {
+
+    private final PredictionCacheService predictionCacheService;
+    private final ForecastAccuracyTracker accuracyTracker;
+
+    @GetMapping
+    public PredictionCacheStatsVO stats(@RequestParam(value = "top", defaultValue = "10") int top) {
+        return predictionCacheService.stats(top);
+    }
+
+    @GetMapping("/{deviceId}/{tagId}")
+    public ResponseEntity<PredictionCacheStatsVO.SeriesStats> series(@PathVariable Long deviceId, @PathVariable Long tagId) {
+        PredictionCacheStatsVO.SeriesStats stats = predictionCacheService.seriesStats(deviceId, tagId);
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+
+    /** Series with the largest forecast error first. */
+    @GetMapping("/accuracy")
+    public List<ForecastAccuracyVO> accuracy(@RequestParam(value = "top", defaultValue = "20") int top) {
+        return accuracyTracker.worst(top);
+    }
+
+    @GetMapping("/{deviceId}/{tagId}/accuracy")
+    public ResponseEntity<ForecastAccuracyVO> seriesAccuracy(@PathVariable Long deviceId, @PathVariable Long tagId) {
+        ForecastAccuracyVO vo = accuracyTracker.accuracy(new DeviceTagKey(deviceId, tagId));
+        return vo == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(vo);
+    }
+}
@@ -9,14 +9,20 @@ import java.time.LocalDateTime;
  * MVP fields kept minimal; can be extended later (e.g. confidence interval, trend metrics).
  */
 @Entity
-@Table(name = "alerts")
+// 规则首次评估按 signature 查询未解除的预警
+@Table(name = "alerts", indexes = @Index(name = "idx_alerts_signature", columnList = "signature"))
+@EntityListeners(AlertEntityListener.class)
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Alert {
+    /** Ids are allocated in blocks so inserts can be JDBC-batched (IDENTITY disables batching). */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "alert_seq")
+    @SequenceGenerator(name = "alert_seq", sequenceName = "alerts_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private Long deviceId;
@@ -56,6 +62,9 @@ public class Alert {
     private boolean ignored;
     private LocalDateTime ignoredAt;
 
+    /** Auto-resolved: the condition cleared (null while the alert condition is still present). */
+    private LocalDateTime resolvedAt;
+
     /** For duplicate suppression, store a signature hash (device+tag+type). */
     @Column(length = 120)
     private String signature;
@@ -0,0 +1,45 @@
+package com.sandy.aiot.vision.collector.entity;
+
+import com.sandy.aiot.vision.collector.event.AlertChangedEvent;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA 实体监听器: 预警的新增、确认/忽略 (无论经由接口还是直接保存) 与删除发布为 {@link AlertChangedEvent}.
+ * 回调在 flush 时触发 (提交之前), 订阅方在提交后才应用. 由 Hibernate 通过 Spring 容器 (SpringBeanContainer) 创建, 构造器注入.
+ */
+@Component
+public class AlertEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public AlertEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    public void persisted(Alert alert) {
+        publish(AlertChangedEvent.Change.CREATED, alert);
+    }
+
+    @PostUpdate
+    public void saved(Alert alert) {
+        publish(AlertChangedEvent.Change.UPDATED, alert);
+    }
+
+    @PostRemove
+    public void removed(Alert alert) {
+        publish(AlertChangedEvent.Change.REMOVED, alert);
+    }
+
+    // 复制一份: 提交前实体仍可能被调用方修改
+    private void publish(AlertChangedEvent.Change change, Alert alert) {
+        Alert copy = Alert.builder().id(alert.getId()).signature(alert.getSignature()).severity(alert.getSeverity())
+                .createdAt(alert.getCreatedAt()).acknowledged(alert.isAcknowledged()).ignored(alert.isIgnored())
+                .resolvedAt(alert.getResolvedAt()).build();
+        eventPublisher.publishEvent(new AlertChangedEvent(change, copy));
+    }
+}
@@ -0,0 +1,55 @@
+package com.sandy.aiot.vision.collector.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Alert rule bound to a single tag or to every tag of a tag group. Which limit fields apply depends on the type;
+ * the rule engine compiles enabled rules into per-tag evaluators.
+ */
+@Entity
+@Table(name = "alert_rules")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertRule {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+
+    /** Target: exactly one of tagId / tagGroup is set. */
+    private Long tagId;
+    @Column(length = 64)
+    private String tagGroup;
+
+    /** THRESHOLD / RATE_OF_CHANGE / DEVIATION / ROLLING_STDDEV */
+    @Column(length = 32)
+    private String type;
+
+    /** THRESHOLD: 上限/下限, 至少一个. */
+    private Double upperLimit;
+    private Double lowerLimit;
+    /** RATE_OF_CHANGE: 每分钟变化量绝对值上限. */
+    private Double maxRatePerMinute;
+    /** DEVIATION: 与预测值偏差百分比阈值. */
+    private Double deviationPercent;
+    /** ROLLING_STDDEV: 滑动窗口样本数与偏离均值的标准差倍数. */
+    private Integer windowSize;
+    private Double sigma;
+
+    /**
+     * 恢复回差 (规则度量单位): 度量回落到触发限值减去该值才视为恢复. 为空时阈值规则为 0,
+     * 其他规则按 alert.state.clear-ratio.
+     */
+    private Double hysteresis;
+
+    /** LOW / MEDIUM / HIGH, 为空时按类型默认. */
+    @Column(length = 16)
+    private String severity;
+
+    /** 为空视为启用. */
+    private Boolean enabled;
+}
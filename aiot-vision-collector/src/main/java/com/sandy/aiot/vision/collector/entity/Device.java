@@ -22,6 +22,7 @@ public class Device {
     private String name;
     private String protocol; // "modbus-tcp" or "opcua"
     private String connectionString; // e.g., "modbus:tcp://ip:502?unit-id=1"
+    private String storageGroup; // optional IoTDB database group, e.g. "hot" -> root.<rt.db>_hot; null = route by id modulo
     @OneToMany(mappedBy = "device", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Tag> tags;
 
@@ -16,6 +16,9 @@ public class Tag {
     private Long id;
     private String name;
     private String address; // e.g., "holding-register:40001" or "ns=2;s=Tag1"
+    private String forecastModel; // remote / ewma / holt / holt-winters, 为空时使用 predict.local.default-model
+    private String forecastPool; // 远程预测使用的端点池 (predict.api.pools 中的名称), 为空时使用默认池
+    private String tagGroup; // 标签分组, 预警规则可按分组配置
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "device_id")
     private Device device;
@@ -0,0 +1,13 @@
+package com.sandy.aiot.vision.collector.event;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+
+/**
+ * Published by the alert entity listener when an alert row is inserted, updated or deleted through JPA. {@code alert}
+ * is a copy taken at flush time. Listeners keeping in-memory alert state apply it after commit, so rolled back writes
+ * never reach them.
+ */
+public record AlertChangedEvent(Change change, Alert alert) {
+
+    public enum Change { CREATED, UPDATED, REMOVED }
+}
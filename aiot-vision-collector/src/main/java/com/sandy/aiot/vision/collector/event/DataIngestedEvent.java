@@ -0,0 +1,12 @@
+package com.sandy.aiot.vision.collector.event;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+
+import java.util.List;
+
+/**
+ * Published synchronously after live samples were written through {@code DataStorageService.save}. Bulk imports
+ * ({@code saveBatch}) do not publish it. Listeners run on the writing thread and must stay cheap.
+ */
+public record DataIngestedEvent(List<DataRecord> records) {
+}
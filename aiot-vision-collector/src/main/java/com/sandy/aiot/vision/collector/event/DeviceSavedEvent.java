@@ -0,0 +1,8 @@
+package com.sandy.aiot.vision.collector.event;
+
+/**
+ * Published after a device was created or updated. The storage layer uses it to resolve the device's database route
+ * ahead of the first write instead of looking the device up on the write path.
+ */
+public record DeviceSavedEvent(Long deviceId, String storageGroup) {
+}
@@ -0,0 +1,12 @@
+package com.sandy.aiot.vision.collector.event;
+
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+
+import java.util.List;
+
+/**
+ * Published after tags were deleted (directly or with their device), and by the prediction cache reconcile for cached
+ * series whose tag no longer exists. Listeners drop every per-tag structure they keep for these keys.
+ */
+public record TagsRemovedEvent(List<DeviceTagKey> keys) {
+}
@@ -2,16 +2,42 @@ package com.sandy.aiot.vision.collector.repository;
 
 import com.sandy.aiot.vision.collector.entity.Alert;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AlertRepository extends JpaRepository<Alert, Long> {
-    List<Alert> findByAcknowledgedFalseAndIgnoredFalseOrderByCreatedAtDesc();
-    Optional<Alert> findTopBySignatureAndAcknowledgedFalseAndIgnoredFalseAndCreatedAtAfter(String signature, LocalDateTime after);
+    List<Alert> findByAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullOrderByCreatedAtDesc();
+    Optional<Alert> findTopBySignatureAndAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullAndCreatedAtAfter(String signature, LocalDateTime after);
+    Optional<Alert> findTopBySignatureAndResolvedAtIsNullOrderByCreatedAtDesc(String signature);
     List<Alert> findTop50ByOrderByCreatedAtDesc();
     List<Alert> findByCreatedAtAfterOrderByCreatedAtAsc(LocalDateTime after);
+    List<Alert> findByAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullAndCreatedAtAfter(LocalDateTime after);
+
+    /** [id, signature] of the existing alerts among the ids. */
+    @Query("select a.id, a.signature from Alert a where a.id in :ids")
+    List<Object[]> findIdAndSignatureByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update Alert a set a.acknowledged = true, a.acknowledgedAt = :at where a.id in :ids and a.acknowledged = false")
+    int acknowledgeByIds(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
+
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update Alert a set a.ignored = true, a.ignoredAt = :at where a.id in :ids and a.ignored = false")
+    int ignoreByIds(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
+
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update Alert a set a.resolvedAt = :at where a.id in :ids and a.resolvedAt is null")
+    int resolveByIds(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
 }
@@ -0,0 +1,9 @@
+package com.sandy.aiot.vision.collector.repository;
+
+import com.sandy.aiot.vision.collector.entity.AlertRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AlertRuleRepository extends JpaRepository<AlertRule, Long> {
+}
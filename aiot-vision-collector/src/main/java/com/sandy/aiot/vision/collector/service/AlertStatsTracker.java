@@ -0,0 +1,277 @@
+package com.sandy.aiot.vision.collector.service;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.event.AlertChangedEvent;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Alert board counters maintained on alert create / ack / ignore / resolve / delete instead of reloading alerts per
+ * request: active alerts per severity, alerts created in the last 24 h per severity (ring of minute buckets with
+ * running totals), and per-hour creation counts (ring of hour buckets). Rebuilt from the database at startup; reading
+ * the stats is O(1) in the number of alerts. Changes arriving while a rebuild queries the database are held back and
+ * replayed on top of the query results, skipping creates and deletes the results already contain.
+ */
+@Service
+@Slf4j
+public class AlertStatsTracker {
+
+    static final String[] SEVERITIES = {"HIGH", "MEDIUM", "LOW", "UNKNOWN"};
+    private static final int WINDOW_MINUTES = 24 * 60;
+    private static final int HOURS = 24;
+
+    private final ObjectProvider<AlertRepository> alertRepository; // 延迟获取, 避免与 JPA 初始化 (实体监听器) 循环依赖
+
+    // 活动预警 id -> 严重级别下标; 重复的确认/忽略/解除事件只扣减一次
+    private final Map<Long, Integer> active = new HashMap<>();
+    private final int[] activeBySeverity = new int[SEVERITIES.length];
+
+    private final long[] minuteKey = new long[WINDOW_MINUTES];
+    private final int[][] minuteCounts = new int[WINDOW_MINUTES][SEVERITIES.length];
+    private final int[] recentBySeverity = new int[SEVERITIES.length];
+    private long expiredThrough = Long.MIN_VALUE; // 已过期清理到的分钟
+
+    private final long[] hourKey = new long[HOURS];
+    private final int[] hourCounts = new int[HOURS];
+
+    private List<Change> heldBack; // 重建查询期间到达的变更, 非 null 表示正在重建
+
+    public AlertStatsTracker(ObjectProvider<AlertRepository> alertRepository) {
+        this.alertRepository = alertRepository;
+        Arrays.fill(minuteKey, Long.MIN_VALUE);
+        Arrays.fill(hourKey, Long.MIN_VALUE);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (this) {
+            heldBack = new ArrayList<>();
+        }
+        List<Alert> open;
+        List<Alert> recent;
+        try {
+            AlertRepository repo = alertRepository.getObject();
+            open = repo.findByAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullOrderByCreatedAtDesc();
+            recent = repo.findByCreatedAtAfterOrderByCreatedAtAsc(LocalDateTime.now().minusHours(HOURS));
+        } catch (RuntimeException e) {
+            synchronized (this) { // 保留原计数, 补上期间的变更
+                List<Change> changes = heldBack;
+                heldBack = null;
+                changes.forEach(c -> apply(c.kind(), c.alert()));
+            }
+            throw e;
+        }
+        synchronized (this) {
+            active.clear();
+            Arrays.fill(activeBySeverity, 0);
+            Arrays.fill(minuteKey, Long.MIN_VALUE);
+            for (int[] c : minuteCounts) Arrays.fill(c, 0);
+            Arrays.fill(recentBySeverity, 0);
+            Arrays.fill(hourKey, Long.MIN_VALUE);
+            Arrays.fill(hourCounts, 0);
+            expiredThrough = Long.MIN_VALUE;
+            Set<Long> counted = new HashSet<>();
+            for (Alert a : recent) {
+                countCreated(a, 1);
+                counted.add(a.getId());
+            }
+            for (Alert a : open) trackActive(a);
+            // 期间的新增/删除可能已在查询结果中; 确认/忽略/解除按 id 幂等
+            for (Change c : heldBack) {
+                Alert a = c.alert();
+                switch (c.kind()) {
+                    case CREATED -> {
+                        if (counted.add(a.getId())) countCreated(a, 1);
+                        trackActive(a);
+                    }
+                    case REMOVED -> {
+                        if (counted.remove(a.getId())) countCreated(a, -1);
+                        close(a.getId());
+                    }
+                    default -> apply(c.kind(), a);
+                }
+            }
+            heldBack = null;
+        }
+        log.info("Alert stats rebuilt. active={} recent24h={}", open.size(), recent.size());
+    }
+
+    /** JPA writes, applied after commit so rolled back inserts and updates are never counted. */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAlertChanged(AlertChangedEvent event) {
+        switch (event.change()) {
+            case CREATED -> onCreated(event.alert());
+            case UPDATED -> onUpdated(event.alert());
+            case REMOVED -> onRemoved(event.alert());
+        }
+    }
+
+    void onCreated(Alert alert) {
+        record(Kind.CREATED, alert);
+    }
+
+    void onUpdated(Alert alert) {
+        record(Kind.UPDATED, alert);
+    }
+
+    void onRemoved(Alert alert) {
+        record(Kind.REMOVED, alert);
+    }
+
+    /** Alert acknowledged / ignored / resolved through a bulk update (called after the update committed). */
+    void onClosed(Long alertId) {
+        record(Kind.CLOSED, Alert.builder().id(alertId).build());
+    }
+
+    private synchronized void record(Kind kind, Alert alert) {
+        if (heldBack != null) heldBack.add(new Change(kind, alert));
+        else apply(kind, alert);
+    }
+
+    private void apply(Kind kind, Alert alert) {
+        switch (kind) {
+            case CREATED -> {
+                countCreated(alert, 1);
+                trackActive(alert);
+            }
+            case UPDATED -> trackActive(alert);
+            case REMOVED -> {
+                countCreated(alert, -1);
+                close(alert.getId());
+            }
+            case CLOSED -> close(alert.getId());
+        }
+    }
+
+    public synchronized int activeCount() {
+        return active.size();
+    }
+
+    /** Current counters; hour buckets cover the last {@code hours} hours including the current one, oldest first. */
+    public synchronized Snapshot snapshot(int hours) {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMinute = epochMinute(now);
+        expire(nowMinute);
+        int recentTotal = 0;
+        for (int c : recentBySeverity) recentTotal += c;
+        Map<String, Integer> hourStats = new LinkedHashMap<>();
+        long nowHour = Math.floorDiv(nowMinute, 60);
+        int n = Math.min(hours, HOURS);
+        for (long h = nowHour - n + 1; h <= nowHour; h++) {
+            int idx = (int) Math.floorMod(h, HOURS);
+            String label = String.format("%02d:00", LocalDateTime.ofEpochSecond(h * 3600, 0, ZoneOffset.UTC).getHour());
+            hourStats.put(label, hourKey[idx] == h ? hourCounts[idx] : 0);
+        }
+        return new Snapshot(active.size(), recentTotal, toMap(activeBySeverity), toMap(recentBySeverity), hourStats);
+    }
+
+    private void trackActive(Alert a) {
+        if (a.getId() == null) return;
+        if (a.isAcknowledged() || a.isIgnored() || a.getResolvedAt() != null) {
+            close(a.getId());
+            return;
+        }
+        int sev = severityIndex(a.getSeverity());
+        Integer prev = active.put(a.getId(), sev);
+        if (prev != null) activeBySeverity[prev]--;
+        activeBySeverity[sev]++;
+    }
+
+    private void close(Long alertId) {
+        Integer sev = alertId == null ? null : active.remove(alertId);
+        if (sev != null) activeBySeverity[sev]--;
+    }
+
+    private void countCreated(Alert a, int delta) {
+        if (a.getCreatedAt() == null) return;
+        long minute = epochMinute(a.getCreatedAt());
+        expire(epochMinute(LocalDateTime.now()));
+        int sev = severityIndex(a.getSeverity());
+        if (minute > expiredThrough) {
+            int idx = (int) Math.floorMod(minute, WINDOW_MINUTES);
+            if (minuteKey[idx] != minute) {
+                if (delta < 0) return; // 桶已被复用, 该预警已不在窗口内
+                clearMinute(idx);
+                minuteKey[idx] = minute;
+            }
+            minuteCounts[idx][sev] += delta;
+            recentBySeverity[sev] += delta;
+        }
+        long hour = Math.floorDiv(minute, 60);
+        int h = (int) Math.floorMod(hour, HOURS);
+        if (hourKey[h] != hour) {
+            if (delta < 0 || hour < hourKey[h]) return;
+            hourKey[h] = hour;
+            hourCounts[h] = 0;
+        }
+        hourCounts[h] += delta;
+    }
+
+    /** 移出 24 小时窗口的分钟桶从累计值中扣除; 每分钟最多处理一次. */
+    private void expire(long nowMinute) {
+        long through = nowMinute - WINDOW_MINUTES;
+        if (through <= expiredThrough) return;
+        long from = Math.max(expiredThrough + 1, through - WINDOW_MINUTES + 1);
+        for (long m = from; m <= through; m++) {
+            int idx = (int) Math.floorMod(m, WINDOW_MINUTES);
+            if (minuteKey[idx] == m) clearMinute(idx);
+        }
+        expiredThrough = through;
+    }
+
+    private void clearMinute(int idx) {
+        int[] counts = minuteCounts[idx];
+        for (int s = 0; s < counts.length; s++) {
+            recentBySeverity[s] -= counts[s];
+            counts[s] = 0;
+        }
+        minuteKey[idx] = Long.MIN_VALUE;
+    }
+
+    private static Map<String, Integer> toMap(int[] counts) {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) map.put(SEVERITIES[s], counts[s]);
+        }
+        return map;
+    }
+
+    private static int severityIndex(String severity) {
+        if (severity != null) {
+            String sev = severity.toUpperCase(Locale.ROOT);
+            for (int i = 0; i < SEVERITIES.length - 1; i++) {
+                if (SEVERITIES[i].equals(sev)) return i;
+            }
+        }
+        return SEVERITIES.length - 1;
+    }
+
+    private static long epochMinute(LocalDateTime ts) {
+        return Math.floorDiv(ts.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private enum Kind { CREATED, UPDATED, REMOVED, CLOSED }
+
+    private record Change(Kind kind, Alert alert) { }
+
+    public record Snapshot(int activeCount, int recent24hCount, Map<String, Integer> severityActive,
+                           Map<String, Integer> severityRecent24h, Map<String, Integer> hourStats) { }
+}
@@ -0,0 +1,129 @@
+package com.sandy.aiot.vision.collector.service;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.event.AlertChangedEvent;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预警重复抑制索引: signature -> 未确认、未忽略且未自动解除的预警 (id -> 创建时间). 启动后从数据库加载抑制窗口内的未处理预警,
+ * 之后在每次保存/更新/删除提交后随 {@link AlertChangedEvent} 同步, 抑制判断不再查询数据库.
+ * 只保留窗口内的条目, 更早的预警不影响抑制, 定期清理.
+ */
+@Service
+@Slf4j
+public class AlertSuppressionIndex {
+
+    private final ObjectProvider<AlertRepository> alertRepository; // 延迟获取, 避免与 JPA 初始化 (实体监听器) 循环依赖
+
+    @Value("${alert.duplicate-suppress-minutes:5}")
+    private int duplicateSuppressMinutes;
+
+    private final Map<String, Map<Long, LocalDateTime>> open = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public AlertSuppressionIndex(ObjectProvider<AlertRepository> alertRepository) {
+        this.alertRepository = alertRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(duplicateSuppressMinutes);
+        List<Alert> alerts = alertRepository.getObject().findByAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullAndCreatedAtAfter(cutoff);
+        alerts.forEach(this::onSaved);
+        ready = true;
+        log.info("Alert suppression index loaded. openAlerts={} signatures={}", alerts.size(), open.size());
+    }
+
+    /** 索引加载完成前调用方应回退到数据库查询. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** 是否存在 createdAt 晚于 cutoff 的未确认、未忽略且未解除的同签名预警. */
+    public boolean hasOpenSince(String signature, LocalDateTime cutoff) {
+        return findOpenSince(signature, cutoff) != null;
+    }
+
+    /** 同 {@link #hasOpenSince}, 返回其中一条预警的 id, 没有时返回 null. */
+    public Long findOpenSince(String signature, LocalDateTime cutoff) {
+        Map<Long, LocalDateTime> alerts = open.get(signature);
+        if (alerts == null) return null;
+        synchronized (alerts) {
+            for (Map.Entry<Long, LocalDateTime> e : alerts.entrySet()) {
+                if (e.getValue().isAfter(cutoff)) return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /** 索引中的未处理预警数. */
+    public int size() {
+        int n = 0;
+        for (Map<Long, LocalDateTime> alerts : open.values()) {
+            synchronized (alerts) {
+                n += alerts.size();
+            }
+        }
+        return n;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAlertChanged(AlertChangedEvent event) {
+        if (event.change() == AlertChangedEvent.Change.REMOVED) onRemoved(event.alert());
+        else onSaved(event.alert());
+    }
+
+    void onSaved(Alert alert) {
+        if (alert.getSignature() == null || alert.getId() == null) return;
+        if (alert.isAcknowledged() || alert.isIgnored() || alert.getResolvedAt() != null || alert.getCreatedAt() == null) {
+            onRemoved(alert);
+            return;
+        }
+        open.compute(alert.getSignature(), (sig, alerts) -> {
+            Map<Long, LocalDateTime> m = alerts != null ? alerts : new HashMap<>();
+            synchronized (m) {
+                m.put(alert.getId(), alert.getCreatedAt());
+            }
+            return m;
+        });
+    }
+
+    void onRemoved(Alert alert) {
+        if (alert.getSignature() == null || alert.getId() == null) return;
+        open.computeIfPresent(alert.getSignature(), (sig, alerts) -> {
+            synchronized (alerts) {
+                alerts.remove(alert.getId());
+                return alerts.isEmpty() ? null : alerts;
+            }
+        });
+    }
+
+    /** 清理已超出抑制窗口的条目. */
+    @Scheduled(fixedDelayString = "${alert.suppression-index.prune-interval-ms:60000}")
+    public void prune() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(duplicateSuppressMinutes);
+        for (String signature : open.keySet()) {
+            open.computeIfPresent(signature, (sig, alerts) -> {
+                synchronized (alerts) {
+                    alerts.values().removeIf(createdAt -> !createdAt.isAfter(cutoff));
+                    return alerts.isEmpty() ? null : alerts;
+                }
+            });
+        }
+    }
+}
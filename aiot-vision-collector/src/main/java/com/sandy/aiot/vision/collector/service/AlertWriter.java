@@ -0,0 +1,219 @@
+package com.sandy.aiot.vision.collector.service;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Buffers alert inserts and auto-resolves and writes them in batches: inserts go through one {@code saveAll}
+ * transaction per batch (JDBC batched, ids from the pooled {@code alerts_seq}), resolves become one bulk UPDATE.
+ * The scan and the streaming evaluator flush at the end of each pass; a scheduled flush picks up anything left, and
+ * the queue is flushed on shutdown.
+ * <p>
+ * A failed batch insert is retried row by row; alerts that still cannot be written (or do not fit into the queue) are
+ * reported to the caller's failure callback. Failed resolves stay queued for the next flush.
+ * <p>
+ * Batch acknowledge / ignore are bulk UPDATEs as well. Bulk updates bypass the entity listener, so the suppression
+ * index and the stats tracker are updated here.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class AlertWriter {
+
+    private final AlertRepository alertRepository;
+    private final AlertSuppressionIndex suppressionIndex;
+    private final AlertStatsTracker statsTracker;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${alert.writer.batch-size:200}")
+    private int batchSize;
+    @Value("${alert.writer.max-queued:10000}")
+    private int maxQueued; // 排队的新增上限; 解除不受限 (每条规则至多一条活动预警)
+
+    // 按提交顺序: 解除操作总在对应的新增之后
+    private final Queue<Op> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedInserts = new AtomicInteger();
+
+    /**
+     * 表由 IDENTITY 改为序列生成 id 后, 已有数据库中的序列可能落后于现有 id: 启动时把序列调整到 max(id) 之后.
+     */
+    @PostConstruct
+    public void alignSequence() {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from alerts", Long.class);
+            if (maxId != null && maxId > 0) {
+                jdbcTemplate.execute("alter sequence alerts_seq restart with " + (maxId + Alert.ID_ALLOCATION_SIZE + 1));
+                log.info("Alert id sequence realigned after existing max id {}", maxId);
+            }
+        } catch (Exception e) {
+            log.warn("Alert id sequence alignment skipped: {}", e.getMessage());
+        }
+    }
+
+    /** Queues a new alert; its id is assigned when flushed. */
+    public void enqueue(Alert alert) {
+        enqueue(alert, null);
+    }
+
+    /**
+     * Queues a new alert. {@code onFailed} is called with the alert when it is not written: the queue is full (called
+     * right away) or the insert failed (called from the flushing thread).
+     */
+    public void enqueue(Alert alert, Consumer<Alert> onFailed) {
+        if (queuedInserts.incrementAndGet() > Math.max(1, maxQueued)) {
+            queuedInserts.decrementAndGet();
+            log.warn("Alert write queue full ({}), alert dropped signature={}", maxQueued, alert.getSignature());
+            if (onFailed != null) onFailed.accept(alert);
+            return;
+        }
+        queue.add(new Op(alert, null, onFailed));
+    }
+
+    /** Queues an auto-resolve of a queued or persisted alert. */
+    public void resolve(Alert alert, LocalDateTime resolvedAt) {
+        queue.add(new Op(alert, resolvedAt, null));
+    }
+
+    /** Operations waiting to be written. */
+    public int pending() {
+        return queue.size();
+    }
+
+    @Scheduled(fixedDelayString = "${alert.writer.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /** Writes everything queued so far. */
+    public synchronized void flush() {
+        int size = Math.max(1, batchSize);
+        List<Op> inserts = new ArrayList<>();
+        List<Op> resolves = new ArrayList<>();
+        List<Op> retry = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            inserts.clear();
+            resolves.clear();
+            Op op;
+            while (inserts.size() + resolves.size() < size && (op = queue.poll()) != null) {
+                if (op.resolvedAt == null) {
+                    queuedInserts.decrementAndGet();
+                    inserts.add(op);
+                } else {
+                    resolves.add(op);
+                }
+            }
+            writeBatch(inserts, resolves, retry);
+        }
+        queue.addAll(retry); // 写入失败的解除留到下次 flush
+    }
+
+    /** Bulk-acknowledges the alerts; returns the ids that do not exist. */
+    public List<Long> acknowledge(List<Long> ids) {
+        return bulkUpdate(ids, true);
+    }
+
+    /** Bulk-ignores the alerts; returns the ids that do not exist. */
+    public List<Long> ignore(List<Long> ids) {
+        return bulkUpdate(ids, false);
+    }
+
+    private List<Long> bulkUpdate(List<Long> ids, boolean acknowledge) {
+        List<Long> missing = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) return missing;
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> found = new HashSet<>();
+        int size = Math.max(1, batchSize);
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        for (int from = 0; from < distinct.size(); from += size) {
+            List<Long> chunk = distinct.subList(from, Math.min(distinct.size(), from + size));
+            List<Object[]> rows = alertRepository.findIdAndSignatureByIdIn(chunk);
+            if (rows.isEmpty()) continue;
+            if (acknowledge) alertRepository.acknowledgeByIds(chunk, now);
+            else alertRepository.ignoreByIds(chunk, now);
+            for (Object[] row : rows) {
+                Long id = (Long) row[0];
+                found.add(id);
+                suppressionIndex.onRemoved(Alert.builder().id(id).signature((String) row[1]).build());
+                statsTracker.onClosed(id);
+            }
+        }
+        for (Long id : ids) {
+            if (!found.contains(id)) missing.add(id);
+        }
+        return missing;
+    }
+
+    private void writeBatch(List<Op> inserts, List<Op> resolves, List<Op> retry) {
+        if (!inserts.isEmpty()) insert(inserts);
+        if (resolves.isEmpty()) return;
+        // 同一批次共用一个解除时间, 误差不超过一次 flush 间隔
+        LocalDateTime resolvedAt = resolves.get(0).resolvedAt;
+        List<Long> ids = new ArrayList<>(resolves.size());
+        for (Op op : resolves) {
+            if (op.alert.getId() != null) ids.add(op.alert.getId());
+        }
+        if (ids.isEmpty()) return;
+        try {
+            int updated = alertRepository.resolveByIds(ids, resolvedAt);
+            for (Op op : resolves) {
+                suppressionIndex.onRemoved(op.alert);
+                statsTracker.onClosed(op.alert.getId());
+            }
+            log.debug("Alert batch resolved count={} updated={}", ids.size(), updated);
+        } catch (Exception e) {
+            log.error("Alert batch resolve failed count={} error={}, retrying on next flush", ids.size(), e.getMessage());
+            for (Op op : resolves) {
+                if (op.alert.getId() != null) retry.add(op);
+            }
+        }
+    }
+
+    private void insert(List<Op> inserts) {
+        List<Alert> alerts = new ArrayList<>(inserts.size());
+        for (Op op : inserts) alerts.add(op.alert);
+        try {
+            alertRepository.saveAll(alerts);
+            log.debug("Alert batch inserted count={}", alerts.size());
+            return;
+        } catch (Exception e) {
+            log.warn("Alert batch insert failed count={} error={}, retrying row by row", alerts.size(), e.getMessage());
+        }
+        // 回滚的事务中分配的 id 无效, 清空后逐条重新插入
+        alerts.forEach(a -> a.setId(null));
+        for (Op op : inserts) {
+            try {
+                alertRepository.save(op.alert);
+            } catch (Exception e) {
+                op.alert.setId(null);
+                log.error("Alert insert failed signature={} error={}", op.alert.getSignature(), e.getMessage());
+                if (op.onFailed != null) op.onFailed.accept(op.alert);
+            }
+        }
+    }
+
+    private record Op(Alert alert, LocalDateTime resolvedAt, Consumer<Alert> onFailed) { }
+}
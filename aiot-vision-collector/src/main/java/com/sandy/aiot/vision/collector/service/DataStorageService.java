@@ -2,6 +2,8 @@ package com.sandy.aiot.vision.collector.service;
 
 import com.sandy.aiot.vision.collector.entity.DataRecord;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,4 +13,40 @@ public interface DataStorageService {
     List<DataRecord> findTopN(Long deviceId, Long tagId, int limit);
     List<DataRecord> findTopN(Long deviceId, int limit);
     boolean save(List<DataRecord> dataRecords);
+
+    /**
+     * Bulk write path (imports / backfill): records are grouped by device and written as one tablet per device.
+     */
+    boolean saveBatch(List<DataRecord> dataRecords);
+
+    /**
+     * Streams rows of the given tags within [from, to) in ascending time order without materializing the result.
+     *
+     * @return number of rows passed to the handler
+     */
+    default long scanRange(Long deviceId, List<Long> tagIds, LocalDateTime from, LocalDateTime to, RowHandler handler) throws IOException {
+        return scanRange(deviceId, tagIds, from, to, 0, handler);
+    }
+
+    /**
+     * Like {@link #scanRange(Long, List, LocalDateTime, LocalDateTime, RowHandler)} but stops after the first
+     * {@code limit} rows; the limit is applied by the storage query. {@code limit <= 0} means unlimited.
+     */
+    long scanRange(Long deviceId, List<Long> tagIds, LocalDateTime from, LocalDateTime to, int limit, RowHandler handler) throws IOException;
+
+    /**
+     * Streams the latest {@code limit} aligned rows of the given tags in descending time order.
+     *
+     * @return number of rows passed to the handler
+     */
+    long scanLatest(Long deviceId, List<Long> tagIds, int limit, RowHandler handler) throws IOException;
+
+    /**
+     * Receives one aligned row per timestamp. {@code values} is reused between calls and indexed like the requested tagIds
+     * (null where a tag has no value at that timestamp).
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void onRow(long epochMillis, Object[] values) throws IOException;
+    }
 }
@@ -0,0 +1,139 @@
+package com.sandy.aiot.vision.collector.service;
+
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.ForecastAccuracyVO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预测精度的流式统计: 每个到达的实际值与缓存中对应时间点的预测值比对, 以指数加权方式累计 MAE / MAPE / bias,
+ * 并据此给出刷新周期系数 (精度好且稳定的序列延后刷新, 漂移的序列提前刷新).
+ */
+@Service
+public class ForecastAccuracyTracker {
+
+    @Value("${predict.accuracy.enabled:true}")
+    private boolean enabled;
+    @Value("${predict.accuracy.alpha:0.05}")
+    private double alpha; // 指数加权系数, 约等于最近 1/alpha 个样本
+    @Value("${predict.accuracy.min-samples:10}")
+    private int minSamples; // 样本不足时系数为 1
+    @Value("${predict.accuracy.good-error:0.02}")
+    private double goodError; // errorRatio 不高于该值时使用 max-factor
+    @Value("${predict.accuracy.bad-error:0.10}")
+    private double badError; // errorRatio 不低于该值时使用 min-factor
+    @Value("${predict.accuracy.min-factor:0.25}")
+    private double minFactor;
+    @Value("${predict.accuracy.max-factor:2.0}")
+    private double maxFactor;
+
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Map<DeviceTagKey, Stats> stats = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 记录一次 (预测值, 实际值) 比对. */
+    public void record(DeviceTagKey key, double predicted, double actual) {
+        if (!enabled || Double.isNaN(predicted) || Double.isNaN(actual) || Double.isInfinite(predicted) || Double.isInfinite(actual)) return;
+        stats.computeIfAbsent(key, k -> new Stats()).update(predicted, actual, alpha);
+    }
+
+    /**
+     * 刷新周期系数: errorRatio 在 [good-error, bad-error] 之间时在 [max-factor, min-factor] 间线性插值.
+     */
+    public double refreshFactor(DeviceTagKey key) {
+        if (!enabled) return 1d;
+        Stats s = stats.get(key);
+        if (s == null) return 1d;
+        synchronized (s) {
+            if (s.samples < minSamples) return 1d;
+            return factorOf(s.errorRatio());
+        }
+    }
+
+    public ForecastAccuracyVO accuracy(DeviceTagKey key) {
+        Stats s = stats.get(key);
+        return s == null ? null : toVO(key, s);
+    }
+
+    /** 按 errorRatio 从差到好排序的前 top 个序列. */
+    public List<ForecastAccuracyVO> worst(int top) {
+        List<ForecastAccuracyVO> all = new ArrayList<>(stats.size());
+        stats.forEach((k, s) -> all.add(toVO(k, s)));
+        all.sort(Comparator.comparingDouble(ForecastAccuracyVO::getErrorRatio).reversed());
+        return new ArrayList<>(all.subList(0, Math.min(Math.max(top, 0), all.size())));
+    }
+
+    /** 移除已不存在的序列. */
+    public void retain(Set<DeviceTagKey> live) {
+        stats.keySet().retainAll(live);
+    }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        event.keys().forEach(stats::remove);
+    }
+
+    private double factorOf(double errorRatio) {
+        if (errorRatio <= goodError) return maxFactor;
+        if (errorRatio >= badError || badError <= goodError) return minFactor;
+        double t = (errorRatio - goodError) / (badError - goodError);
+        return maxFactor + t * (minFactor - maxFactor);
+    }
+
+    private ForecastAccuracyVO toVO(DeviceTagKey key, Stats s) {
+        synchronized (s) {
+            double ratio = s.errorRatio();
+            return ForecastAccuracyVO.builder()
+                    .deviceId(key.deviceId())
+                    .tagId(key.tagId())
+                    .samples(s.samples)
+                    .mae(s.mae)
+                    .mape(s.mape)
+                    .bias(s.bias)
+                    .errorRatio(ratio)
+                    .refreshFactor(s.samples < minSamples ? 1d : factorOf(ratio))
+                    .lastUpdated(s.lastUpdated == null ? null : TS_FMT.format(s.lastUpdated))
+                    .build();
+        }
+    }
+
+    // 指数加权统计; 首个样本直接作为初值
+    private static final class Stats {
+        long samples;
+        double mae;
+        double bias;
+        double absActual;
+        Double mape;      // 实际值为 0 的样本不参与, 全部为 0 时为 null
+        LocalDateTime lastUpdated;
+
+        synchronized void update(double predicted, double actual, double alpha) {
+            double err = predicted - actual;
+            double a = samples == 0 ? 1d : alpha;
+            mae += a * (Math.abs(err) - mae);
+            bias += a * (err - bias);
+            absActual += a * (Math.abs(actual) - absActual);
+            if (actual != 0) {
+                double ape = Math.abs(err / actual);
+                mape = mape == null ? ape : mape + alpha * (ape - mape);
+            }
+            samples++;
+            lastUpdated = LocalDateTime.now();
+        }
+
+        double errorRatio() {
+            double scale = Math.max(absActual, 1e-9);
+            return Math.max(mae, Math.abs(bias)) / scale;
+        }
+    }
+}
@@ -1,7 +1,45 @@
 package com.sandy.aiot.vision.collector.service;
 
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
 import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 public interface PredictService {
-    TimeSeriesDataModelVO predict(Long deviceId, Long tagId);
+    /**
+     * Non-blocking prediction; the future never fails because of the forecast service (fallback values are used instead).
+     */
+    CompletableFuture<TimeSeriesDataModelVO> predictAsync(Long deviceId, Long tagId);
+
+    /**
+     * Predicts many series at once; results are keyed by the requested (deviceId, tagId).
+     * Keys whose device does not exist are omitted from the result.
+     */
+    CompletableFuture<Map<DeviceTagKey, TimeSeriesDataModelVO>> predictBatchAsync(Collection<DeviceTagKey> keys);
+
+    /**
+     * Blocking prediction.
+     *
+     * @throws IllegalArgumentException if the device does not exist
+     */
+    default TimeSeriesDataModelVO predict(Long deviceId, Long tagId) {
+        return join(predictAsync(deviceId, tagId));
+    }
+
+    default Map<DeviceTagKey, TimeSeriesDataModelVO> predictBatch(Collection<DeviceTagKey> keys) {
+        return join(predictBatchAsync(keys));
+    }
+
+    // 历史在 future 内加载, 设备不存在等参数错误以原异常抛出
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
 }
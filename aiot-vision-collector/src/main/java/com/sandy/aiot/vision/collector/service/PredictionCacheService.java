@@ -1,23 +1,45 @@
 package com.sandy.aiot.vision.collector.service;
 
+import com.sandy.aiot.vision.collector.entity.DataRecord;
 import com.sandy.aiot.vision.collector.entity.Device;
 import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.event.DataIngestedEvent;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.service.impl.AlertRuleEngine;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.PredictionCacheStatsVO;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelRsp;
 import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 缓存预测结果: 预先调用预测服务并将 (deviceId, tagId, timestamp) -> value 存入内存.
  * 当实际采集值到来时, 直接按照时间戳获取预测值, 再做偏差判断, 避免每次扫描临时调用预测服务.
+ * 缓存按序列数与估算字节数限容 (超限时按最近读取时间近似 LRU 淘汰), 长期未读取的序列按 ttl 过期,
+ * 标签/设备删除时随 {@link TagsRemovedEvent} 移除.
  */
 @Service
 @Slf4j
@@ -26,6 +48,9 @@ public class PredictionCacheService {
 
     private final PredictService predictService;
     private final DeviceRepository deviceRepository;
+    private final ForecastAccuracyTracker accuracyTracker;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AlertRuleEngine alertRuleEngine;
 
     @Value("${predict.cache.enabled:true}")
     private boolean enabled;
@@ -38,21 +63,293 @@ public class PredictionCacheService {
     @Value("${predict.cache.max-points-per-tag:5000}")
     private int maxPointsPerTag;
 
+    @Value("${predict.cache.max-refresh-per-cycle:500}")
+    private int maxRefreshPerCycle; // 每轮最多刷新的序列数, 防止突发压垮预测服务
+    @Value("${predict.cache.priority-window-ms:600000}")
+    private long priorityWindowMs; // 最近被查看的序列在该时间窗内优先刷新
+    @Value("${predict.cache.reconcile-interval-ms:300000}")
+    private long reconcileIntervalMs; // 与数据库同步标签列表的周期
+    @Value("${predict.cache.stale-tolerance-ms:60000}")
+    private long staleToleranceMs; // 未命中时可返回的旧预测值的最大时间差 (不超过一个预测步长), <= tolerance-ms 表示不返回旧值
+    @Value("${predict.cache.refresh-threads:2}")
+    private int refreshThreads; // 懒加载刷新线程数
+    @Value("${predict.cache.snapshot.enabled:true}")
+    private boolean snapshotEnabled; // 定期将缓存写入磁盘, 重启后加载
+    @Value("${predict.cache.snapshot.path:./data/prediction-cache.bin}")
+    private String snapshotPath;
+    @Value("${predict.cache.view-wait-ms:10000}")
+    private long viewWaitMs; // 页面请求时缓存中没有可用预测, 等待 (合并后的) 刷新的最长时间
+    @Value("${predict.cache.max-series:50000}")
+    private int maxSeries; // 序列数上限, <=0 不限
+    @Value("${predict.cache.max-bytes:268435456}")
+    private long maxBytes; // 估算占用字节上限, <=0 不限
+    @Value("${predict.cache.ttl-ms:21600000}")
+    private long ttlMs; // 超过该时间未被读取 (预警/页面) 的序列过期移除, <=0 不过期
+
     // 缓存结构: key -> (timestamp -> predictedValue)
     private final Map<DeviceTagKey, PredSeries> cache = new ConcurrentHashMap<>();
+    // 到期队列: 按覆盖到期时间排序; 条目的 dueAt 与序列当前 dueAt 不一致即为过期条目, 出队时丢弃
+    private final PriorityQueue<DueEntry> dueQueue = new PriorityQueue<>(Comparator.comparingLong(DueEntry::dueAtMillis));
+    private final AtomicBoolean prefetchInFlight = new AtomicBoolean();
+    // 正在刷新的序列, 用于合并并发刷新
+    private final Map<DeviceTagKey, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private ExecutorService refreshExecutor;
+    private volatile long lastReconcileMillis;
+    // 上次 reconcile 时数据库中的标签, 只为新出现的标签预建序列; 过期移除的序列等到再次被读取时重建
+    private volatile Set<DeviceTagKey> knownLive = Set.of();
+    // 估算总占用: 写入时累加, 超限时在 enforceBounds 中按实际快照重算
+    private final AtomicLong weightBytes = new AtomicLong();
+    private final Object boundsLock = new Object();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictedCapacity = new AtomicLong();
+    private final AtomicLong evictedExpired = new AtomicLong();
+    private final AtomicLong evictedRemoved = new AtomicLong();
+
+    private static final DateTimeFormatter STATS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int PRIORITY_VIEWED = 0;
+    private static final int PRIORITY_ALERTING = 1;
+    private static final int PRIORITY_OTHER = 2;
+    // key + PredSeries + map 节点的近似开销
+    private static final long SERIES_OVERHEAD_BYTES = 160;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        refreshExecutor = Executors.newFixedThreadPool(Math.max(1, refreshThreads), r -> {
+            Thread t = new Thread(r, "prediction-refresh-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled && snapshotEnabled) loadSnapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refreshExecutor != null) refreshExecutor.shutdownNow();
+        if (enabled && snapshotEnabled) saveSnapshot();
+    }
+
+    /** 定期快照, 进程崩溃时最多丢失一个周期的预测. */
+    @Scheduled(initialDelayString = "${predict.cache.snapshot.interval-ms:60000}", fixedDelayString = "${predict.cache.snapshot.interval-ms:60000}")
+    public void scheduledSnapshot() {
+        if (enabled && snapshotEnabled) saveSnapshot();
+    }
+
+    /**
+     * 将所有非空序列写入快照文件 (先写临时文件再原子替换).
+     *
+     * @return 写入的序列数, 失败时为 -1
+     */
+    public int saveSnapshot() {
+        long start = System.currentTimeMillis();
+        List<PredictionSnapshotCodec.SeriesData> data = new ArrayList<>(cache.size());
+        for (Map.Entry<DeviceTagKey, PredSeries> e : cache.entrySet()) {
+            Snapshot snap = e.getValue().snapshot;
+            if (snap.size == 0) continue;
+            data.add(new PredictionSnapshotCodec.SeriesData(e.getKey(), e.getValue().stepMillis,
+                    Arrays.copyOf(snap.ts, snap.size), Arrays.copyOf(snap.values, snap.size)));
+        }
+        try {
+            PredictionSnapshotCodec.writeFile(Path.of(snapshotPath), System.currentTimeMillis(), data);
+            log.debug("Prediction cache snapshot saved. series={} path={} cost={}ms", data.size(), snapshotPath, System.currentTimeMillis() - start);
+            return data.size();
+        } catch (IOException e) {
+            log.warn("Failed to save prediction cache snapshot path={} err={}", snapshotPath, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 从快照文件恢复缓存, 丢弃已超出 stale-tolerance 的点; 覆盖仍充足的序列按正常到期时间入队, 重启后不会集中刷新.
+     *
+     * @return 恢复的序列数
+     */
+    public int loadSnapshot() {
+        Path file = Path.of(snapshotPath);
+        if (!Files.isRegularFile(file)) return 0;
+        long cutoff = nowMillis() - Math.max(toleranceMs, staleToleranceMs);
+        List<PredictionSnapshotCodec.SeriesData> data;
+        try {
+            data = PredictionSnapshotCodec.readFile(file, cutoff);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable prediction cache snapshot path={} err={}", snapshotPath, e.getMessage());
+            return 0;
+        }
+        int maxPoints = maxPointsPerTag > 0 ? maxPointsPerTag : Integer.MAX_VALUE;
+        for (PredictionSnapshotCodec.SeriesData d : data) {
+            PredSeries series = seriesFor(d.key());
+            addWeight(series.restore(Snapshot.sorted(d.ts(), d.values(), d.ts().length), d.stepMillis(), maxPoints));
+            reschedule(d.key(), series, false);
+        }
+        log.info("Prediction cache restored from snapshot. series={} path={}", data.size(), snapshotPath);
+        return data.size();
+    }
 
     /**
-     * 获取指定 device/tag 在给定时间戳的预测值 (允许一定容差). 若缓存缺失则懒加载一次预测.
+     * 获取指定 device/tag 在给定时间戳的预测值 (允许一定容差), 供预警与实际值比对. 未命中时不阻塞调用方: 立即返回
+     * stale-tolerance 内最近的旧预测值 (或 null), 并在后台异步刷新该序列. 旧值最多相差一个预测步长, 更远的预测点
+     * 与实际值比对会产生误报.
      */
     public Double getPredictedValue(Long deviceId, Long tagId, LocalDateTime timestamp) {
         if (!enabled || timestamp == null) return null;
         DeviceTagKey key = new DeviceTagKey(deviceId, tagId);
-        PredSeries series = cache.computeIfAbsent(key, k -> new PredSeries());
-        Double val = series.find(timestamp, toleranceMs);
-        if (val != null) return val;
-        // 缓存中无对应时间点, 尝试懒加载一次
-        tryPrefetch(key, series);
-        return series.find(timestamp, toleranceMs);
+        PredSeries series = seriesFor(key);
+        series.lastAccessMillis = System.currentTimeMillis();
+        long ts = toMillis(timestamp);
+        Double val = series.find(ts, toleranceMs);
+        if (val != null) {
+            hits.incrementAndGet();
+            return val;
+        }
+        misses.incrementAndGet();
+        refreshAsync(key, series, prefetchIntervalMs);
+        long stale = Math.min(staleToleranceMs, series.stepMillis);
+        return stale > toleranceMs ? series.find(ts, stale) : null;
+    }
+
+    /**
+     * 页面查看预测: 直接返回缓存中从当前步开始的预测点及其覆盖范围和时效. 覆盖已结束或早于 maxAgeMs 刷新时触发一次
+     * (与其他刷新合并的) 后台刷新; 只有缓存中没有可返回的点时才等待该刷新, 最多 view-wait-ms.
+     *
+     * @param maxAgeMs 可接受的最大时效, null 表示只要覆盖未结束即可
+     * @throws IllegalArgumentException 设备不存在
+     */
+    public TimeSeriesDataModelRsp viewForecast(Long deviceId, Long tagId, Long maxAgeMs) {
+        if (!enabled) return predictService.predict(deviceId, tagId).toTimeSeriesDataModelRsp();
+        DeviceTagKey key = new DeviceTagKey(deviceId, tagId);
+        PredSeries series = cache.get(key);
+        if (series == null) {
+            // 避免为不存在的设备建立缓存条目
+            if (!deviceRepository.existsById(deviceId)) throw new IllegalArgumentException("Device[deviceId=" + deviceId + "] not found");
+            series = seriesFor(key);
+        }
+        long now = nowMillis();
+        series.lastViewedMillis = now;
+        series.lastAccessMillis = System.currentTimeMillis();
+        CompletableFuture<Boolean> refresh = null;
+        boolean stale = isStale(series, now, maxAgeMs);
+        (stale ? misses : hits).incrementAndGet();
+        if (stale) {
+            long minInterval = maxAgeMs == null ? prefetchIntervalMs : Math.max(0, Math.min(prefetchIntervalMs, maxAgeMs));
+            refresh = refreshAsync(key, series, minInterval);
+            if (forwardFrom(series.snapshot, now - series.stepMillis) == series.snapshot.size) {
+                awaitQuietly(refresh, viewWaitMs);
+                now = nowMillis();
+            }
+        }
+        return toViewRsp(series, now, maxAgeMs, refresh != null && !refresh.isDone());
+    }
+
+    private static boolean isStale(PredSeries series, long now, Long maxAgeMs) {
+        Snapshot snap = series.snapshot;
+        if (snap.size == 0 || snap.lastMillis() < now) return true;
+        return maxAgeMs != null && (series.lastPrefetchMillis == 0 || System.currentTimeMillis() - series.lastPrefetchMillis > maxAgeMs);
+    }
+
+    private TimeSeriesDataModelRsp toViewRsp(PredSeries series, long now, Long maxAgeMs, boolean refreshing) {
+        Snapshot snap = series.snapshot;
+        List<TimeSeriesDataModelRsp.PredictionPointRsp> points = new ArrayList<>();
+        for (int i = forwardFrom(snap, now - series.stepMillis); i < snap.size; i++) {
+            points.add(new TimeSeriesDataModelRsp.PredictionPointRsp(STATS_FMT.format(toLocal(snap.ts[i])), snap.values[i]));
+        }
+        long updated = series.lastPrefetchMillis;
+        return TimeSeriesDataModelRsp.builder()
+                .predictionPoints(points)
+                .coverageStart(snap.size == 0 ? null : STATS_FMT.format(toLocal(snap.ts[0])))
+                .coverageEnd(snap.size == 0 ? null : STATS_FMT.format(toLocal(snap.lastMillis())))
+                .ageMs(updated == 0 ? null : Math.max(0, System.currentTimeMillis() - updated))
+                .stale(isStale(series, now, maxAgeMs))
+                .refreshing(refreshing)
+                .build();
+    }
+
+    // 第一个时间戳 > fromMillis 的下标
+    private static int forwardFrom(Snapshot snap, long fromMillis) {
+        int idx = Arrays.binarySearch(snap.ts, 0, snap.size, fromMillis);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    private static void awaitQuietly(CompletableFuture<Boolean> future, long timeoutMs) {
+        try {
+            future.get(Math.max(0, timeoutMs), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+            // 超时则返回当前已有内容, 刷新继续在后台完成
+        }
+    }
+
+    /**
+     * 异步刷新单个序列. 同一 key 的并发刷新 (懒加载、页面查看与定时预取) 合并为同一个 future; 距上次刷新不足
+     * minIntervalMs 时不再触发, 避免始终无法覆盖的时间戳反复打到预测服务.
+     *
+     * @return 完成时表示是否成功写入新的预测点
+     */
+    private CompletableFuture<Boolean> refreshAsync(DeviceTagKey key, PredSeries series, long minIntervalMs) {
+        CompletableFuture<Boolean> running = inFlight.get(key);
+        if (running != null) return running;
+        if (System.currentTimeMillis() - series.lastRefreshAttemptMillis < minIntervalMs) return CompletableFuture.completedFuture(false);
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        running = inFlight.putIfAbsent(key, created);
+        if (running != null) return running;
+        CompletableFuture<TimeSeriesDataModelVO> work;
+        try {
+            // 刷新线程限制并发的懒加载刷新数; 历史加载本身在预测服务的加载线程上执行, 调用方 (预警扫描) 不等待 IoTDB
+            work = CompletableFuture.supplyAsync(() -> predictService.predictAsync(key.deviceId(), key.tagId()), refreshExecutor)
+                    .thenCompose(f -> f);
+        } catch (RejectedExecutionException e) {
+            work = CompletableFuture.failedFuture(e);
+        }
+        work.whenComplete((vo, err) -> {
+            series.lastRefreshAttemptMillis = System.currentTimeMillis();
+            boolean ok = false;
+            if (err != null) {
+                log.debug("Async prediction refresh failed deviceId={} tagId={} err={}", key.deviceId(), key.tagId(), err.getMessage());
+            } else if (cache.get(key) == series) {
+                ok = applyPrediction(series, vo);
+                reschedule(key, series, true);
+            }
+            inFlight.remove(key, created);
+            created.complete(ok);
+        });
+        return created;
+    }
+
+    /**
+     * 采集到的实际值与缓存中同一时间点的预测值比对, 累计精度统计; 误差变大的序列提前入队刷新.
+     */
+    @EventListener
+    public void onIngest(DataIngestedEvent event) {
+        if (!enabled || !accuracyTracker.isEnabled()) return;
+        for (DataRecord r : event.records()) {
+            if (r.getTimestamp() == null) continue;
+            double actual;
+            if (r.getValue() instanceof Number n) actual = n.doubleValue();
+            else if (r.getValue() instanceof Boolean b) actual = b ? 1d : 0d;
+            else continue;
+            DeviceTagKey key = new DeviceTagKey(r.getDeviceId(), r.getTagId());
+            PredSeries series = cache.get(key);
+            if (series == null) continue;
+            Double predicted = series.find(toMillis(r.getTimestamp()), toleranceMs);
+            if (predicted == null) continue;
+            accuracyTracker.record(key, predicted, actual);
+            double factor = accuracyTracker.refreshFactor(key);
+            if (factor < 1 && series.spanMillis > 0) {
+                long target = series.refreshedAtMillis + Math.max((long) (series.spanMillis * factor), prefetchIntervalMs);
+                pullIn(key, series, target);
+            }
+        }
+    }
+
+    /**
+     * 标记序列正在被查看 (历史/预测页面), 在 priority-window 内优先刷新.
+     */
+    public void markViewed(Long deviceId, Long tagId) {
+        if (!enabled) return;
+        PredSeries series = seriesFor(new DeviceTagKey(deviceId, tagId));
+        series.lastViewedMillis = nowMillis();
+        series.lastAccessMillis = System.currentTimeMillis();
     }
 
     /**
@@ -61,58 +358,348 @@ public class PredictionCacheService {
     public void putPredictionPoint(Long deviceId, Long tagId, LocalDateTime timestamp, Double value) {
         if (timestamp == null || value == null) return;
         DeviceTagKey key = new DeviceTagKey(deviceId, tagId);
-        PredSeries series = cache.computeIfAbsent(key, k -> new PredSeries());
-        series.update(List.of(TimeSeriesDataModelVO.PredictionPoint.builder().timestamp(timestamp).value(value).build()), 60_000L);
+        PredSeries series = seriesFor(key);
+        series.lastAccessMillis = System.currentTimeMillis();
+        addWeight(series.update(List.of(TimeSeriesDataModelVO.PredictionPoint.builder().timestamp(timestamp).value(value).build()), 60_000L, maxPointsPerTag));
+        reschedule(key, series, false);
     }
 
-    /** 定时预取: 确保每个标签的预测序列至少覆盖当前时间之后 minAheadMinutes 分钟. */
+    /** 预测覆盖的最后时间点, 无缓存时为 null. */
+    public LocalDateTime coverageEnd(Long deviceId, Long tagId) {
+        PredSeries series = cache.get(new DeviceTagKey(deviceId, tagId));
+        return series == null ? null : series.lastTimestamp();
+    }
+
+    /** 定时预取: 只刷新覆盖即将不足 minAheadMinutes 的序列, 按优先级与每轮预算出队, 合并为批量预测请求. */
     @Scheduled(fixedDelayString = "${predict.cache.prefetch-interval-ms:30000}")
     public void scheduledPrefetch() {
         if (!enabled) return;
-        long start = System.currentTimeMillis();
-        List<Device> devices = deviceRepository.findAllWithTags();
-        int tagCount = 0;
-        int refreshed = 0;
-        for (Device d : devices) {
+        if (System.currentTimeMillis() - lastReconcileMillis >= reconcileIntervalMs) reconcile();
+        evictExpired();
+        prefetchDue();
+    }
+
+    /**
+     * 与数据库中的标签列表对齐: 新标签立即入队; 缓存中已不存在的标签作为 {@link TagsRemovedEvent} 发布,
+     * 由缓存及其他按标签保存状态的组件一并清理.
+     */
+    public void reconcile() {
+        lastReconcileMillis = System.currentTimeMillis();
+        Set<DeviceTagKey> live = new HashSet<>();
+        for (Device d : deviceRepository.findAllWithTags()) {
             if (d.getTags() == null) continue;
-            for (Tag t : d.getTags()) {
-                tagCount++;
-                DeviceTagKey key = new DeviceTagKey(d.getId(), t.getId());
-                PredSeries series = cache.computeIfAbsent(key, k -> new PredSeries());
-                if (needsPrefetch(series)) {
-                    if (tryPrefetch(key, series)) refreshed++;
+            for (Tag t : d.getTags()) live.add(new DeviceTagKey(d.getId(), t.getId()));
+        }
+        Set<DeviceTagKey> previous = knownLive;
+        for (DeviceTagKey key : live) {
+            if (!previous.contains(key)) seriesFor(key);
+        }
+        knownLive = live;
+        List<DeviceTagKey> orphans = new ArrayList<>();
+        for (DeviceTagKey key : cache.keySet()) {
+            if (!live.contains(key)) orphans.add(key);
+        }
+        if (!orphans.isEmpty()) {
+            log.info("Removing {} cached prediction series of deleted tags", orphans.size());
+            eventPublisher.publishEvent(new TagsRemovedEvent(orphans));
+        }
+        accuracyTracker.retain(live);
+    }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        for (DeviceTagKey key : event.keys()) {
+            PredSeries series = cache.remove(key);
+            if (series == null) continue;
+            weightBytes.addAndGet(-series.weight());
+            evictedRemoved.incrementAndGet();
+        }
+    }
+
+    /**
+     * 移除超过 ttl-ms 未被读取的序列 (预取刷新不算读取).
+     *
+     * @return 移除的序列数
+     */
+    public int evictExpired() {
+        if (ttlMs <= 0) return 0;
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        int removed = 0;
+        for (Map.Entry<DeviceTagKey, PredSeries> e : cache.entrySet()) {
+            PredSeries series = e.getValue();
+            if (series.lastAccessMillis < cutoff && cache.remove(e.getKey(), series)) {
+                weightBytes.addAndGet(-series.weight());
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            evictedExpired.addAndGet(removed);
+            log.debug("Expired {} idle prediction series", removed);
+        }
+        return removed;
+    }
+
+    private void addWeight(long deltaBytes) {
+        weightBytes.addAndGet(deltaBytes);
+        if (overCapacity(cache.size(), weightBytes.get())) enforceBounds();
+    }
+
+    private boolean overCapacity(int series, long bytes) {
+        return (maxSeries > 0 && series > maxSeries) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * 按实际快照重算占用; 仍超限时按最近读取时间淘汰最久未用的序列, 直到降到上限的 90%,
+     * 避免在上限附近每次写入都排序.
+     */
+    private void enforceBounds() {
+        synchronized (boundsLock) {
+            List<Candidate> all = new ArrayList<>(cache.size());
+            long total = 0;
+            for (Map.Entry<DeviceTagKey, PredSeries> e : cache.entrySet()) {
+                long w = e.getValue().weight();
+                total += w;
+                all.add(new Candidate(e.getKey(), e.getValue(), e.getValue().lastAccessMillis, w));
+            }
+            weightBytes.set(total);
+            int count = all.size();
+            if (!overCapacity(count, total)) return;
+            int targetCount = maxSeries > 0 ? maxSeries - maxSeries / 10 : Integer.MAX_VALUE;
+            long targetBytes = maxBytes > 0 ? maxBytes - maxBytes / 10 : Long.MAX_VALUE;
+            all.sort(Comparator.comparingLong(Candidate::lastAccessMillis));
+            int evicted = 0;
+            for (Candidate c : all) {
+                if (count <= targetCount && total <= targetBytes) break;
+                if (!cache.remove(c.key(), c.series())) continue;
+                weightBytes.addAndGet(-c.weight());
+                count--;
+                total -= c.weight();
+                evicted++;
+            }
+            evictedCapacity.addAndGet(evicted);
+            log.info("Prediction cache over capacity, evicted {} least recently used series. series={} bytes={}", evicted, count, total);
+        }
+    }
+
+    /**
+     * 派发一轮到期序列的预测, 结果异步写回; 上一轮未完成时跳过本轮.
+     *
+     * @return 完成时给出本轮成功刷新的序列数
+     */
+    public CompletableFuture<Integer> prefetchDue() {
+        if (!enabled || !prefetchInFlight.compareAndSet(false, true)) return CompletableFuture.completedFuture(0);
+        long start = System.currentTimeMillis();
+        List<DeviceTagKey> due = pollDue(nowMillis());
+        // 已在懒加载刷新中的序列交给该刷新完成后重新入队
+        CompletableFuture<Boolean> cycle = new CompletableFuture<>();
+        due.removeIf(k -> inFlight.putIfAbsent(k, cycle) != null);
+        if (due.isEmpty()) {
+            cycle.complete(false);
+            prefetchInFlight.set(false);
+            return CompletableFuture.completedFuture(0);
+        }
+        CompletableFuture<Map<DeviceTagKey, TimeSeriesDataModelVO>> future;
+        try {
+            future = predictService.predictBatchAsync(due);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handle((results, err) -> {
+            int refreshed = 0;
+            try {
+                if (err != null) log.debug("Batch prefetch prediction failed tags={} err={}", due.size(), err.getMessage());
+                for (DeviceTagKey key : due) {
+                    PredSeries series = cache.get(key);
+                    if (series == null) continue; // 期间已被删除
+                    TimeSeriesDataModelVO vo = results == null ? null : results.get(key);
+                    if (applyPrediction(series, vo)) refreshed++;
+                    series.lastRefreshAttemptMillis = System.currentTimeMillis();
+                    reschedule(key, series, true);
                 }
-                series.trimOld(maxPointsPerTag);
+                log.debug("Prediction prefetch completed. due={} refreshed={} queued={} cost={}ms", due.size(), refreshed, queuedSeries(), System.currentTimeMillis() - start);
+            } finally {
+                for (DeviceTagKey key : due) inFlight.remove(key, cycle);
+                cycle.complete(refreshed > 0);
+                prefetchInFlight.set(false);
             }
+            return refreshed;
+        });
+    }
+
+    /**
+     * 内存统计: 总序列数/点数/字节数, 以及按占用排序的前 top 个序列.
+     */
+    public PredictionCacheStatsVO stats(int top) {
+        long points = 0;
+        long bytes = 0;
+        List<PredictionCacheStatsVO.SeriesStats> all = new ArrayList<>(cache.size());
+        for (Map.Entry<DeviceTagKey, PredSeries> e : cache.entrySet()) {
+            PredictionCacheStatsVO.SeriesStats st = toStats(e.getKey(), e.getValue());
+            points += st.getPoints();
+            bytes += st.getBytes();
+            all.add(st);
+        }
+        all.sort(Comparator.comparingLong(PredictionCacheStatsVO.SeriesStats::getBytes).reversed());
+        return PredictionCacheStatsVO.builder()
+                .seriesCount(all.size())
+                .totalPoints(points)
+                .totalBytes(bytes)
+                .queuedSeries(queuedSeries())
+                .maxSeries(maxSeries)
+                .maxBytes(maxBytes)
+                .hits(hits.get())
+                .misses(misses.get())
+                .evictedCapacity(evictedCapacity.get())
+                .evictedExpired(evictedExpired.get())
+                .evictedRemoved(evictedRemoved.get())
+                .largest(new ArrayList<>(all.subList(0, Math.min(Math.max(top, 0), all.size()))))
+                .build();
+    }
+
+    /** 单个序列的内存统计, 未缓存时返回 null. */
+    public PredictionCacheStatsVO.SeriesStats seriesStats(Long deviceId, Long tagId) {
+        DeviceTagKey key = new DeviceTagKey(deviceId, tagId);
+        PredSeries series = cache.get(key);
+        return series == null ? null : toStats(key, series);
+    }
+
+    private PredictionCacheStatsVO.SeriesStats toStats(DeviceTagKey key, PredSeries series) {
+        Snapshot snap = series.snapshot;
+        return PredictionCacheStatsVO.SeriesStats.builder()
+                .deviceId(key.deviceId())
+                .tagId(key.tagId())
+                .points(snap.size)
+                .bytes(snap.memoryBytes())
+                .coverageStart(snap.size == 0 ? null : STATS_FMT.format(toLocal(snap.ts[0])))
+                .coverageEnd(snap.size == 0 ? null : STATS_FMT.format(toLocal(snap.lastMillis())))
+                .stepMillis(series.stepMillis)
+                .build();
+    }
+
+    /** 队列中等待刷新的序列数 (含未到期). */
+    public int queuedSeries() {
+        synchronized (dueQueue) {
+            return dueQueue.size();
         }
-        long cost = System.currentTimeMillis() - start;
-        if (tagCount > 0) {
-            log.debug("Prediction prefetch completed. tagsChecked={} refreshed={} cost={}ms", tagCount, refreshed, cost);
+    }
+
+    private PredSeries seriesFor(DeviceTagKey key) {
+        PredSeries series = cache.get(key);
+        if (series != null) return series;
+        PredSeries created = new PredSeries();
+        series = cache.putIfAbsent(key, created);
+        if (series != null) return series;
+        schedule(key, created, nowMillis()); // 新序列立即到期
+        addWeight(created.weight());
+        return created;
+    }
+
+    /**
+     * 取出所有已到期的序列, 按 (优先级, 到期时间) 选出不超过预算的部分; 其余原样放回等待下一轮.
+     */
+    private List<DeviceTagKey> pollDue(long now) {
+        // 删除/淘汰不持有 dueQueue 锁, 因此沿用首次取到的序列, 并跳过期间已从缓存移除的序列
+        List<DueCandidate> candidates = new ArrayList<>();
+        synchronized (dueQueue) {
+            while (!dueQueue.isEmpty() && dueQueue.peek().dueAtMillis() <= now) {
+                DueEntry e = dueQueue.poll();
+                PredSeries series = cache.get(e.key());
+                if (series == null || series.dueAtMillis != e.dueAtMillis()) continue;
+                candidates.add(new DueCandidate(e, series, priorityOf(e.key(), series, now)));
+            }
+            candidates.sort(Comparator.comparingInt(DueCandidate::priority).thenComparingLong(c -> c.entry().dueAtMillis()));
+            int budget = maxRefreshPerCycle > 0 ? maxRefreshPerCycle : Integer.MAX_VALUE;
+            List<DeviceTagKey> selected = new ArrayList<>(Math.min(budget, candidates.size()));
+            for (DueCandidate c : candidates) {
+                if (cache.get(c.entry().key()) != c.series()) continue;
+                if (selected.size() < budget) {
+                    c.series().dueAtMillis = Long.MAX_VALUE; // 在途, 完成后重新入队
+                    selected.add(c.entry().key());
+                } else {
+                    dueQueue.add(c.entry());
+                }
+            }
+            return selected;
         }
     }
 
-    private boolean needsPrefetch(PredSeries series) {
-        LocalDateTime now = LocalDateTime.now();
+    /**
+     * 最近被页面查看的序列最优先; 其次是配置了使用预测值的预警规则 (标签或分组规则) 的标签. 扫描会读取所有标签的
+     * 预测值, 默认偏差规则也作用于所有标签, 两者都不能区分优先级, 因此以规则配置为准.
+     */
+    private int priorityOf(DeviceTagKey key, PredSeries series, long now) {
+        if (series == null) return PRIORITY_OTHER;
+        if (now - series.lastViewedMillis <= priorityWindowMs) return PRIORITY_VIEWED;
+        if (alertRuleEngine.hasConfiguredPredictionRules(key.tagId())) return PRIORITY_ALERTING;
+        return PRIORITY_OTHER;
+    }
+
+    /**
+     * 按覆盖到期时间 (最后预测点 - minAheadMinutes) 重新入队. afterRefresh 时至少间隔一个预取周期, 避免预测长度
+     * 不足 minAheadMinutes 的序列每轮都被刷新.
+     */
+    private void reschedule(DeviceTagKey key, PredSeries series, boolean afterRefresh) {
+        long now = nowMillis();
         LocalDateTime lastTs = series.lastTimestamp();
-        if (lastTs == null) return true;
-        Duration ahead = Duration.between(now, lastTs);
-        return ahead.toMinutes() < minAheadMinutes; // 覆盖时间不足
+        long aheadMs = Duration.ofMinutes(minAheadMinutes).toMillis();
+        long dueAt = lastTs == null ? now : toMillis(lastTs) - aheadMs;
+        if (afterRefresh) {
+            series.refreshedAtMillis = now;
+            series.spanMillis = Math.max(0, dueAt - now);
+            if (lastTs != null) dueAt = adaptiveDue(key, series, dueAt);
+            dueAt = Math.max(dueAt, now + prefetchIntervalMs);
+        }
+        schedule(key, series, dueAt);
     }
 
-    private boolean tryPrefetch(DeviceTagKey key, PredSeries series) {
-        try {
-            TimeSeriesDataModelVO vo = predictService.predict(key.deviceId, key.tagId);
-            if (vo == null || vo.getPredictionPoints() == null || vo.getPredictionPoints().isEmpty()) return false;
-            // 计算步长
-            long stepMillis = inferStepMillis(vo.getTimestamps());
-            series.update(vo.getPredictionPoints(), stepMillis);
-            return true;
-        } catch (Exception e) {
-            log.debug("Prefetch prediction failed deviceId={} tagId={} err={}", key.deviceId, key.tagId, e.getMessage());
-            return false;
+    /**
+     * 按精度系数缩放刷新间隔. 系数 > 1 时最多延后到覆盖结束后 stale-tolerance 之内 (期间返回最后的预测值).
+     */
+    private long adaptiveDue(DeviceTagKey key, PredSeries series, long coverageDue) {
+        double factor = accuracyTracker.refreshFactor(key);
+        if (factor == 1d) return coverageDue;
+        long target = series.refreshedAtMillis + (long) (series.spanMillis * factor);
+        if (factor > 1) target = Math.max(coverageDue, Math.min(target, coverageDue + staleToleranceMs));
+        return target;
+    }
+
+    // 只会提前, 不会推迟; 在途 (dueAt = MAX_VALUE) 的序列由刷新完成时重新入队
+    private void pullIn(DeviceTagKey key, PredSeries series, long target) {
+        synchronized (dueQueue) {
+            if (series.dueAtMillis == Long.MAX_VALUE || series.dueAtMillis <= target) return;
+            series.dueAtMillis = target;
+            dueQueue.add(new DueEntry(key, target));
+        }
+    }
+
+    private void schedule(DeviceTagKey key, PredSeries series, long dueAt) {
+        synchronized (dueQueue) {
+            series.dueAtMillis = dueAt;
+            dueQueue.add(new DueEntry(key, dueAt));
         }
     }
 
+    // 与预测时间戳 (LocalDateTime) 保持同一时间基准
+    private static long nowMillis() {
+        return toMillis(LocalDateTime.now());
+    }
+
+    private static long toMillis(LocalDateTime ts) {
+        return ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private boolean applyPrediction(PredSeries series, TimeSeriesDataModelVO vo) {
+        if (vo == null || vo.getPredictionPoints() == null || vo.getPredictionPoints().isEmpty()) return false;
+        // 计算步长
+        long stepMillis = inferStepMillis(vo.getTimestamps());
+        addWeight(series.update(vo.getPredictionPoints(), stepMillis, maxPointsPerTag));
+        return true;
+    }
+
     private long inferStepMillis(List<LocalDateTime> ts) {
         if (ts == null || ts.size() < 2) return 60_000L;
         List<Long> diffs = new ArrayList<>();
@@ -126,54 +713,157 @@ public class PredictionCacheService {
         return median <= 0 ? 60_000L : median;
     }
 
-    // 内部 key
-    private record DeviceTagKey(Long deviceId, Long tagId) {}
+    private record DueEntry(DeviceTagKey key, long dueAtMillis) {}
+
+    private record DueCandidate(DueEntry entry, PredSeries series, int priority) {}
+
+    private record Candidate(DeviceTagKey key, PredSeries series, long lastAccessMillis, long weight) {}
 
-    // 预测序列封装
-    private static class PredSeries {
-        private final NavigableMap<LocalDateTime, Double> points = new TreeMap<>();
-        private long stepMillis = 60_000L;
-        private LocalDateTime lastPrefetchTime;
+    /**
+     * 预测序列: 按时间升序的 long[] (epoch millis, UTC 基准) / double[] 不可变快照, 写入时复制并发布新快照,
+     * 读取无锁 (volatile 读 + 二分查找). 合并时只保留最新的 maxPoints 个点.
+     */
+    private static final class PredSeries {
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+        private volatile long stepMillis = 60_000L;
+        private volatile long lastPrefetchMillis;
+        private volatile long lastRefreshAttemptMillis;
+        // 最近一次刷新时刻与当时的覆盖跨度 (与 nowMillis 同一基准), 用于按精度缩放刷新间隔
+        private volatile long refreshedAtMillis;
+        private volatile long spanMillis;
+        // 调度元数据: dueAtMillis 只在 dueQueue 锁内修改
+        private long dueAtMillis;
+        private volatile long lastViewedMillis = Long.MIN_VALUE / 2;
+        // 最近一次被读取 (预警取值/页面查看) 的时刻, 用于 ttl 与容量淘汰
+        private volatile long lastAccessMillis = System.currentTimeMillis();
 
-        synchronized void update(List<TimeSeriesDataModelVO.PredictionPoint> newPoints, long stepMillis) {
+        /**
+         * 合并新预测点 (同一时间戳以新值为准), 只保留最新的 maxPoints 个点.
+         *
+         * @return 占用字节的变化量
+         */
+        synchronized long update(List<TimeSeriesDataModelVO.PredictionPoint> newPoints, long stepMillis, int maxPoints) {
+            int n = 0;
+            long[] ts = new long[newPoints.size()];
+            double[] vs = new double[newPoints.size()];
             for (TimeSeriesDataModelVO.PredictionPoint p : newPoints) {
-                if (p.getTimestamp() != null && p.getValue() != null) {
-                    points.put(p.getTimestamp(), p.getValue());
-                }
+                if (p.getTimestamp() == null || p.getValue() == null) continue;
+                ts[n] = toMillis(p.getTimestamp());
+                vs[n] = p.getValue();
+                n++;
             }
-            this.stepMillis = stepMillis > 0 ? stepMillis : this.stepMillis;
-            lastPrefetchTime = LocalDateTime.now();
-        }
-
-        synchronized Double find(LocalDateTime ts, long toleranceMs) {
-            if (ts == null || points.isEmpty()) return null;
-            Double exact = points.get(ts);
-            if (exact != null) return exact;
-            // 在最近的前后点里找最小差值
-            Map.Entry<LocalDateTime, Double> floor = points.floorEntry(ts);
-            Map.Entry<LocalDateTime, Double> ceil = points.ceilingEntry(ts);
-            long bestDiff = Long.MAX_VALUE;
-            Double bestVal = null;
-            if (floor != null) {
-                long diff = Math.abs(Duration.between(ts, floor.getKey()).toMillis());
-                if (diff < bestDiff) { bestDiff = diff; bestVal = floor.getValue(); }
-            }
-            if (ceil != null) {
-                long diff = Math.abs(Duration.between(ts, ceil.getKey()).toMillis());
-                if (diff < bestDiff) { bestDiff = diff; bestVal = ceil.getValue(); }
+            long before = snapshot.memoryBytes();
+            if (n > 0) snapshot = snapshot.merge(Snapshot.sorted(ts, vs, n), maxPoints > 0 ? maxPoints : Integer.MAX_VALUE);
+            if (stepMillis > 0) this.stepMillis = stepMillis;
+            lastPrefetchMillis = System.currentTimeMillis();
+            return snapshot.memoryBytes() - before;
+        }
+
+        synchronized long restore(Snapshot restored, long stepMillis, int maxPoints) {
+            long before = snapshot.memoryBytes();
+            snapshot = snapshot.merge(restored, maxPoints);
+            if (stepMillis > 0) this.stepMillis = stepMillis;
+            return snapshot.memoryBytes() - before;
+        }
+
+        long weight() {
+            return SERIES_OVERHEAD_BYTES + snapshot.memoryBytes();
+        }
+
+        Double find(long ts, long toleranceMs) {
+            return snapshot.nearest(ts, toleranceMs);
+        }
+
+        LocalDateTime lastTimestamp() {
+            Snapshot s = snapshot;
+            return s.size == 0 ? null : toLocal(s.lastMillis());
+        }
+    }
+
+    /**
+     * 不可变快照: 有效数据为 ts/values 的前 size 个元素.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new double[0], 0);
+        // 数组对象头 + 快照对象本身的近似开销
+        private static final long OVERHEAD_BYTES = 2 * 16 + 32;
+
+        final long[] ts;
+        final double[] values;
+        final int size;
+
+        Snapshot(long[] ts, double[] values, int size) {
+            this.ts = ts;
+            this.values = values;
+            this.size = size;
+        }
+
+        /** 由 (可能无序/重复的) 前 n 个点构造有序快照, 重复时间戳保留最后一个值. */
+        static Snapshot sorted(long[] ts, double[] vs, int n) {
+            boolean ordered = true;
+            for (int i = 1; i < n && ordered; i++) ordered = ts[i - 1] < ts[i];
+            if (!ordered) {
+                Integer[] idx = new Integer[n];
+                for (int i = 0; i < n; i++) idx[i] = i;
+                Arrays.sort(idx, (a, b) -> ts[a] != ts[b] ? Long.compare(ts[a], ts[b]) : Integer.compare(a, b));
+                long[] st = new long[n];
+                double[] sv = new double[n];
+                int m = 0;
+                for (Integer i : idx) {
+                    if (m > 0 && st[m - 1] == ts[i]) m--; // 同一时间戳后出现的覆盖先出现的
+                    st[m] = ts[i];
+                    sv[m] = vs[i];
+                    m++;
+                }
+                return new Snapshot(st, sv, m);
             }
-            return bestDiff <= toleranceMs ? bestVal : null;
+            return new Snapshot(ts, vs, n);
         }
 
-        synchronized LocalDateTime lastTimestamp() {
-            return points.isEmpty() ? null : points.lastKey();
+        long lastMillis() {
+            return ts[size - 1];
         }
 
-        synchronized void trimOld(int maxPoints) {
-            while (points.size() > maxPoints) {
-                points.pollFirstEntry();
+        Snapshot merge(Snapshot incoming, int maxPoints) {
+            long[] mt = new long[size + incoming.size];
+            double[] mv = new double[size + incoming.size];
+            int i = 0, j = 0, m = 0;
+            while (i < size || j < incoming.size) {
+                if (j >= incoming.size || (i < size && ts[i] < incoming.ts[j])) {
+                    mt[m] = ts[i];
+                    mv[m++] = values[i++];
+                } else {
+                    if (i < size && ts[i] == incoming.ts[j]) i++; // 新值覆盖旧值
+                    mt[m] = incoming.ts[j];
+                    mv[m++] = incoming.values[j++];
+                }
             }
+            int keep = Math.min(m, maxPoints);
+            if (keep == mt.length) return new Snapshot(mt, mv, keep);
+            return new Snapshot(Arrays.copyOfRange(mt, m - keep, m), Arrays.copyOfRange(mv, m - keep, m), keep);
+        }
+
+        /** 二分查找容差范围内最近的点, 距离相同时取较早的点. */
+        Double nearest(long t, long toleranceMs) {
+            if (size == 0) return null;
+            int idx = Arrays.binarySearch(ts, 0, size, t);
+            if (idx >= 0) return values[idx];
+            int ins = -idx - 1;
+            long best = Long.MAX_VALUE;
+            int bestIdx = -1;
+            if (ins > 0) {
+                best = t - ts[ins - 1];
+                bestIdx = ins - 1;
+            }
+            if (ins < size && ts[ins] - t < best) {
+                best = ts[ins] - t;
+                bestIdx = ins;
+            }
+            return bestIdx >= 0 && best <= toleranceMs ? values[bestIdx] : null;
+        }
+
+        long memoryBytes() {
+            return OVERHEAD_BYTES + (long) ts.length * Long.BYTES + (long) values.length * Double.BYTES;
         }
     }
 }
-
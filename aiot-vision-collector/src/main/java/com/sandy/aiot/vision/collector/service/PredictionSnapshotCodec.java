@@ -0,0 +1,148 @@
+package com.sandy.aiot.vision.collector.service;
+
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file format of the prediction cache snapshot.
+ * <pre>
+ * header : magic "AVPC" (int) | version (short) | createdAt epoch millis (long) | series count (int)
+ * series : deviceId (long) | tagId (long) | stepMillis (long) | points n (int)
+ *          | first timestamp (long) | n-1 timestamp deltas (varint) | n values (double)
+ * trailer: CRC32 of everything before it (long)
+ * </pre>
+ * Timestamps are epoch millis on the same UTC basis as the cache. Files with another magic/version or a bad
+ * checksum are rejected as a whole.
+ */
+public final class PredictionSnapshotCodec {
+
+    public static final int MAGIC = 0x41565043; // "AVPC"
+    public static final short VERSION = 1;
+    private static final int MAX_POINTS_PER_SERIES = 10_000_000; // 防止损坏的长度字段导致超大分配
+
+    private PredictionSnapshotCodec() {
+    }
+
+    /** One cached series; ts ascending, same length as values. */
+    public record SeriesData(DeviceTagKey key, long stepMillis, long[] ts, double[] values) {
+    }
+
+    public static void write(OutputStream target, long createdAtMillis, List<SeriesData> series) throws IOException {
+        CRC32 crc = new CRC32();
+        BufferedOutputStream buf = new BufferedOutputStream(target, 64 * 1024);
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buf, crc));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(createdAtMillis);
+        out.writeInt(series.size());
+        for (SeriesData s : series) {
+            int n = s.ts().length;
+            out.writeLong(s.key().deviceId());
+            out.writeLong(s.key().tagId());
+            out.writeLong(s.stepMillis());
+            out.writeInt(n);
+            if (n == 0) continue;
+            out.writeLong(s.ts()[0]);
+            for (int i = 1; i < n; i++) writeVarLong(out, s.ts()[i] - s.ts()[i - 1]);
+            for (double v : s.values()) out.writeDouble(v);
+        }
+        // 校验和本身不参与校验
+        new DataOutputStream(buf).writeLong(crc.getValue());
+        buf.flush();
+    }
+
+    /**
+     * Reads a snapshot keeping only points at or after {@code minMillis}; series left without points are skipped.
+     *
+     * @throws IOException on unknown magic/version, truncation or checksum mismatch
+     */
+    public static List<SeriesData> read(InputStream source, long minMillis) throws IOException {
+        CRC32 crc = new CRC32();
+        BufferedInputStream buf = new BufferedInputStream(source, 64 * 1024);
+        DataInputStream in = new DataInputStream(new CheckedInputStream(buf, crc));
+        if (in.readInt() != MAGIC) throw new IOException("Not a prediction cache snapshot");
+        short version = in.readShort();
+        if (version != VERSION) throw new IOException("Unsupported prediction cache snapshot version " + version);
+        in.readLong(); // createdAt
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Corrupt prediction cache snapshot: series count " + count);
+        List<SeriesData> result = new ArrayList<>(Math.min(count, 100_000));
+        for (int k = 0; k < count; k++) {
+            DeviceTagKey key = new DeviceTagKey(in.readLong(), in.readLong());
+            long step = in.readLong();
+            int n = in.readInt();
+            if (n < 0 || n > MAX_POINTS_PER_SERIES) throw new IOException("Corrupt prediction cache snapshot: point count " + n);
+            if (n == 0) continue;
+            long[] ts = new long[n];
+            ts[0] = in.readLong();
+            for (int i = 1; i < n; i++) ts[i] = ts[i - 1] + readVarLong(in);
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) values[i] = in.readDouble();
+            int from = 0;
+            while (from < n && ts[from] < minMillis) from++; // 丢弃已过期的点
+            if (from == n) continue;
+            if (from > 0) {
+                ts = Arrays.copyOfRange(ts, from, n);
+                values = Arrays.copyOfRange(values, from, n);
+            }
+            result.add(new SeriesData(key, step, ts, values));
+        }
+        long expected = crc.getValue();
+        long actual = new DataInputStream(buf).readLong();
+        if (expected != actual) throw new IOException("Prediction cache snapshot checksum mismatch");
+        return result;
+    }
+
+    /** Writes to a temp file next to {@code file} and moves it into place, so readers never see a partial file. */
+    public static void writeFile(Path file, long createdAtMillis, List<SeriesData> series) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                write(os, createdAtMillis, series);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static List<SeriesData> readFile(Path file, long minMillis) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return read(is, minMillis);
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long v) throws IOException {
+        // zigzag, 乱序/回退的时间戳也能编码
+        long z = (v << 1) ^ (v >> 63);
+        while ((z & ~0x7FL) != 0) {
+            out.writeByte((int) ((z & 0x7F) | 0x80));
+            z >>>= 7;
+        }
+        out.writeByte((int) z);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long z = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            z |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (z >>> 1) ^ -(z & 1);
+        }
+        throw new IOException("Corrupt prediction cache snapshot: varint too long");
+    }
+}
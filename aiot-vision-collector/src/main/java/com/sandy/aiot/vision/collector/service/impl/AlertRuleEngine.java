@@ -0,0 +1,470 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.entity.AlertRule;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
+import com.sandy.aiot.vision.collector.repository.AlertRuleRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the configured {@link AlertRule}s into per-tag evaluators. Each evaluator holds precomputed limits and its
+ * own running state (previous sample, rolling window), so evaluating a sample is a pass over a small array without
+ * allocation. Group rules get one evaluator per member tag. When prediction alerts are enabled, tags without an
+ * explicit DEVIATION rule also get the default deviation rule ({@code alert.deviation-percent-threshold}).
+ * <p>
+ * Every evaluator also carries the alert state of its tag and rule (NORMAL → PENDING → ACTIVE → CLEARING), driven by
+ * {@link AlertScanService}. Evaluators are only used under the per-tag lock.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class AlertRuleEngine {
+
+    public static final String THRESHOLD = "THRESHOLD";
+    public static final String RATE_OF_CHANGE = "RATE_OF_CHANGE";
+    public static final String DEVIATION = "DEVIATION";
+    public static final String ROLLING_STDDEV = "ROLLING_STDDEV";
+    private static final Set<String> TYPES = Set.of(THRESHOLD, RATE_OF_CHANGE, DEVIATION, ROLLING_STDDEV);
+    private static final Set<String> SEVERITIES = Set.of("LOW", "MEDIUM", "HIGH");
+    private static final int MAX_WINDOW = 10000;
+
+    private final AlertRuleRepository alertRuleRepository;
+    private final TagRepository tagRepository;
+
+    @Value("${alert.prediction-enabled:false}")
+    private boolean predictionEnabled;
+    @Value("${alert.deviation-percent-threshold:15}")
+    private double deviationPercentThreshold;
+    @Value("${alert.state.clear-ratio:0.8}")
+    private double clearRatio; // 未配置 hysteresis 的规则: 度量回落到触发限值的该比例以下才算恢复 (阈值规则除外)
+
+    // tagId -> 编译后的规则; 只有默认偏差规则的标签首次评估时按需加入
+    private volatile Map<Long, TagRules> byTag = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${alert.rules.reload-interval-ms:60000}", initialDelayString = "${alert.rules.reload-interval-ms:60000}")
+    public void scheduledReload() {
+        try { reload(); } catch (Exception e) { log.warn("Alert rule reload failed: {}", e.getMessage()); }
+    }
+
+    /**
+     * Recompiles all enabled rules (also picks up tags that joined or left a group). Evaluators of unchanged rules are
+     * kept, so their rolling state survives the reload.
+     */
+    public synchronized void reload() {
+        List<AlertRule> rules = alertRuleRepository.findAll();
+        Map<Long, List<AlertRule>> perTag = new HashMap<>();
+        Map<String, List<AlertRule>> perGroup = new HashMap<>();
+        int active = 0;
+        for (AlertRule r : rules) {
+            if (Boolean.FALSE.equals(r.getEnabled())) continue;
+            try {
+                validate(r);
+            } catch (IllegalArgumentException e) {
+                log.warn("Skip invalid alert rule id={} error={}", r.getId(), e.getMessage());
+                continue;
+            }
+            active++;
+            if (r.getTagId() != null) perTag.computeIfAbsent(r.getTagId(), k -> new ArrayList<>()).add(r);
+            else perGroup.computeIfAbsent(r.getTagGroup(), k -> new ArrayList<>()).add(r);
+        }
+        if (!perGroup.isEmpty()) {
+            for (Tag t : tagRepository.findAll()) {
+                List<AlertRule> group = t.getTagGroup() == null ? null : perGroup.get(t.getTagGroup());
+                if (group != null) perTag.computeIfAbsent(t.getId(), k -> new ArrayList<>()).addAll(group);
+            }
+        }
+        Map<Long, TagRules> old = byTag;
+        Map<Long, TagRules> next = new ConcurrentHashMap<>();
+        for (Map.Entry<Long, List<AlertRule>> e : perTag.entrySet()) {
+            TagRules previous = old.get(e.getKey());
+            List<CompiledRule> compiled = new ArrayList<>(e.getValue().size() + 1);
+            boolean explicitDeviation = false;
+            for (AlertRule r : e.getValue()) {
+                String fp = fingerprint(r);
+                CompiledRule c = previous == null ? null : previous.find(r.getId(), fp);
+                compiled.add(c != null ? c : compile(r, fp, clearRatio));
+                explicitDeviation |= DEVIATION.equals(r.getType());
+            }
+            if (predictionEnabled && !explicitDeviation) compiled.add(implicitDeviation(previous));
+            next.put(e.getKey(), new TagRules(compiled.toArray(new CompiledRule[0])));
+        }
+        // 只有默认偏差规则的标签沿用原评估器
+        if (predictionEnabled) {
+            old.forEach((tagId, rulesOfTag) -> {
+                if (!next.containsKey(tagId) && rulesOfTag.implicitOnly()) next.put(tagId, rulesOfTag);
+            });
+        }
+        byTag = next;
+        log.info("Alert rules compiled. rules={} tagsWithRules={}", active, perTag.size());
+    }
+
+    /** Compiled rules of the tag, or null when nothing is evaluated for it. */
+    public TagRules rulesFor(Long tagId) {
+        Map<Long, TagRules> current = byTag;
+        TagRules rules = current.get(tagId);
+        if (rules != null || !predictionEnabled) return rules;
+        return current.computeIfAbsent(tagId, k -> new TagRules(new CompiledRule[]{implicitDeviation(null)}));
+    }
+
+    /**
+     * Whether alerts configured for the tag (own or group rules) consume predictions. The implicit default deviation
+     * rule alone does not count: with it every tag would qualify.
+     */
+    public boolean hasConfiguredPredictionRules(Long tagId) {
+        TagRules rules = byTag.get(tagId);
+        return rules != null && rules.needsPrediction && !rules.implicitOnly();
+    }
+
+    /** Whether any tag can have rules (default deviation rule or at least one configured rule). */
+    public boolean hasRules() {
+        return predictionEnabled || !byTag.isEmpty();
+    }
+
+    public boolean isPredictionEnabled() { return predictionEnabled; }
+
+    public double getDeviationPercentThreshold() { return deviationPercentThreshold; }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        Map<Long, TagRules> current = byTag;
+        for (DeviceTagKey key : event.keys()) current.remove(key.tagId());
+    }
+
+    /**
+     * Checks and normalizes a rule (type / severity upper-cased, blank group cleared).
+     *
+     * @throws IllegalArgumentException when the rule is incomplete or inconsistent
+     */
+    public void validate(AlertRule r) {
+        if (r.getTagGroup() != null && r.getTagGroup().isBlank()) r.setTagGroup(null);
+        if (r.getTagGroup() != null) r.setTagGroup(r.getTagGroup().trim());
+        if ((r.getTagId() == null) == (r.getTagGroup() == null)) {
+            throw new IllegalArgumentException("Exactly one of tagId / tagGroup is required");
+        }
+        String type = r.getType() == null ? null : r.getType().trim().toUpperCase(Locale.ROOT);
+        if (type == null || !TYPES.contains(type)) throw new IllegalArgumentException("Unsupported rule type: " + r.getType());
+        r.setType(type);
+        if (r.getHysteresis() != null && !(r.getHysteresis() >= 0)) throw new IllegalArgumentException("hysteresis must not be negative");
+        if (r.getSeverity() != null && !r.getSeverity().isBlank()) {
+            String sev = r.getSeverity().trim().toUpperCase(Locale.ROOT);
+            if (!SEVERITIES.contains(sev)) throw new IllegalArgumentException("Unsupported severity: " + r.getSeverity());
+            r.setSeverity(sev);
+        } else {
+            r.setSeverity(null);
+        }
+        switch (type) {
+            case THRESHOLD -> {
+                if (r.getUpperLimit() == null && r.getLowerLimit() == null) throw new IllegalArgumentException("upperLimit or lowerLimit is required");
+                if (r.getUpperLimit() != null && r.getLowerLimit() != null && r.getLowerLimit() > r.getUpperLimit()) {
+                    throw new IllegalArgumentException("lowerLimit must not exceed upperLimit");
+                }
+            }
+            case RATE_OF_CHANGE -> {
+                if (r.getMaxRatePerMinute() == null || !(r.getMaxRatePerMinute() > 0)) throw new IllegalArgumentException("maxRatePerMinute must be positive");
+            }
+            case DEVIATION -> {
+                if (r.getDeviationPercent() == null || !(r.getDeviationPercent() > 0)) throw new IllegalArgumentException("deviationPercent must be positive");
+            }
+            case ROLLING_STDDEV -> {
+                if (r.getWindowSize() == null || r.getWindowSize() < 2 || r.getWindowSize() > MAX_WINDOW) {
+                    throw new IllegalArgumentException("windowSize must be between 2 and " + MAX_WINDOW);
+                }
+                if (r.getSigma() == null || !(r.getSigma() > 0)) throw new IllegalArgumentException("sigma must be positive");
+            }
+            default -> { }
+        }
+    }
+
+    private CompiledRule implicitDeviation(TagRules previous) {
+        if (previous != null) {
+            for (CompiledRule c : previous.rules) {
+                if (c.ruleId == null) return c;
+            }
+        }
+        return new Deviation(null, null, "", deviationPercentThreshold, deviationPercentThreshold * clearRatio);
+    }
+
+    private static CompiledRule compile(AlertRule r, String fp, double clearRatio) {
+        Double h = r.getHysteresis();
+        return switch (r.getType()) {
+            case THRESHOLD -> new Threshold(r.getId(), r.getSeverity(), fp,
+                    r.getUpperLimit() == null ? Double.POSITIVE_INFINITY : r.getUpperLimit(),
+                    r.getLowerLimit() == null ? Double.NEGATIVE_INFINITY : r.getLowerLimit(), h == null ? 0d : h);
+            case RATE_OF_CHANGE -> new RateOfChange(r.getId(), r.getSeverity(), fp, r.getMaxRatePerMinute(),
+                    clearLimit(r.getMaxRatePerMinute(), h, clearRatio));
+            case DEVIATION -> new Deviation(r.getId(), r.getSeverity(), fp, r.getDeviationPercent(),
+                    clearLimit(r.getDeviationPercent(), h, clearRatio));
+            case ROLLING_STDDEV -> new RollingStdDev(r.getId(), r.getSeverity(), fp, r.getWindowSize(), r.getSigma(),
+                    clearLimit(r.getSigma(), h, clearRatio));
+            default -> throw new IllegalArgumentException("Unsupported rule type: " + r.getType());
+        };
+    }
+
+    private static double clearLimit(double raiseLimit, Double hysteresis, double clearRatio) {
+        return hysteresis != null ? Math.max(0d, raiseLimit - hysteresis) : raiseLimit * clearRatio;
+    }
+
+    private static String fingerprint(AlertRule r) {
+        return r.getType() + "|" + r.getUpperLimit() + "|" + r.getLowerLimit() + "|" + r.getMaxRatePerMinute() + "|"
+                + r.getDeviationPercent() + "|" + r.getWindowSize() + "|" + r.getSigma() + "|" + r.getHysteresis() + "|" + r.getSeverity();
+    }
+
+    /**
+     * 偏差百分比 (actual vs predicted), 对 actual==0 / predicted≈0 的特殊情况做处理:
+     * 两者都几乎为 0 视为无偏差; 优先用预测值作分母, 否则用实际值.
+     */
+    static double deviationPercent(double actual, double predicted) {
+        final double EPS = 1e-6; // near-zero 阈值
+        boolean aZeroLike = Math.abs(actual) < EPS;
+        boolean pZeroLike = Math.abs(predicted) < EPS;
+        if (aZeroLike && pZeroLike) return 0d;
+        double denom = !pZeroLike ? predicted : actual;
+        return (actual - predicted) / denom * 100.0;
+    }
+
+    private static int classify(double magnitude, double raiseLimit, double clearLimit) {
+        if (magnitude > raiseLimit) return RAISE;
+        return magnitude < clearLimit ? CLEAR : HOLD;
+    }
+
+    /** Compiled rules of one tag, evaluated in a single pass. */
+    public static final class TagRules {
+        final CompiledRule[] rules;
+        final boolean needsPrediction;
+        final boolean needsEverySample;
+
+        TagRules(CompiledRule[] rules) {
+            this.rules = rules;
+            boolean p = false;
+            boolean raw = false;
+            for (CompiledRule r : rules) {
+                p |= r.usesPrediction();
+                raw |= !r.usesPrediction();
+            }
+            this.needsPrediction = p;
+            this.needsEverySample = raw;
+        }
+
+        public CompiledRule[] rules() { return rules; }
+
+        public boolean needsPrediction() { return needsPrediction; }
+
+        /** Rules on the raw value (threshold, rate of change, rolling stddev) keep per-sample state and must see every sample. */
+        public boolean needsEverySample() { return needsEverySample; }
+
+        CompiledRule find(Long ruleId, String fingerprint) {
+            for (CompiledRule c : rules) {
+                if (c.ruleId != null && c.ruleId.equals(ruleId) && c.fingerprint.equals(fingerprint)) return c;
+            }
+            return null;
+        }
+
+        boolean implicitOnly() {
+            return rules.length == 1 && rules[0].ruleId == null;
+        }
+    }
+
+    /** Alert state of one tag and rule. */
+    public enum AlertState { NORMAL, PENDING, ACTIVE, CLEARING }
+
+    /** {@link CompiledRule#test} results. */
+    public static final int RAISE = 1;
+    public static final int HOLD = 0; // 介于触发与恢复限值之间, 或尚无法计算 (例如首个样本)
+    public static final int CLEAR = -1;
+
+    /**
+     * One rule compiled for one tag. {@link #test} classifies a sample as {@link #RAISE} (beyond the limit),
+     * {@link #CLEAR} (back within the clear limit) or {@link #HOLD}, leaving the measured value in {@link #metric}
+     * and, on RAISE, the crossed limit in {@link #limit}.
+     */
+    public abstract static class CompiledRule {
+        final Long ruleId; // null: 默认偏差规则
+        final String severity;
+        final String fingerprint;
+        double metric;
+        double limit;
+        // 状态机, 由 AlertScanService 在标签锁内维护
+        AlertState state = AlertState.NORMAL;
+        long sinceMillis; // 进入 PENDING / CLEARING 的样本时间
+        Alert alert; // ACTIVE / CLEARING 时对应的预警 (可能仍在写入队列中)
+        boolean seeded; // 已按数据库中未解除的预警恢复状态 (首次评估时, 重启或规则修改后)
+        volatile Alert failedAlert; // 写入失败的预警, 由写入线程设置, 下次评估时若仍是当前预警则回到 NORMAL
+
+        CompiledRule(Long ruleId, String severity, String fingerprint) {
+            this.ruleId = ruleId;
+            this.severity = severity;
+            this.fingerprint = fingerprint;
+        }
+
+        public abstract String type();
+
+        /** @param predicted 预测值, 无基线时为 NaN */
+        public abstract int test(long ts, double value, double predicted);
+
+        boolean usesPrediction() { return false; }
+
+        public Long ruleId() { return ruleId; }
+
+        public String severity() { return severity; }
+
+        public double metric() { return metric; }
+
+        public double limit() { return limit; }
+
+        public AlertState state() { return state; }
+    }
+
+    static final class Threshold extends CompiledRule {
+        private final double upper;
+        private final double lower;
+        private final double clearUpper;
+        private final double clearLower;
+
+        Threshold(Long ruleId, String severity, String fp, double upper, double lower, double hysteresis) {
+            super(ruleId, severity, fp);
+            this.upper = upper;
+            this.lower = lower;
+            this.clearUpper = upper - hysteresis;
+            this.clearLower = lower + hysteresis;
+        }
+
+        @Override public String type() { return THRESHOLD; }
+
+        @Override
+        public int test(long ts, double value, double predicted) {
+            metric = value;
+            if (value > upper) { limit = upper; return RAISE; }
+            if (value < lower) { limit = lower; return RAISE; }
+            return value <= clearUpper && value >= clearLower ? CLEAR : HOLD;
+        }
+    }
+
+    static final class RateOfChange extends CompiledRule {
+        private final double maxPerMinute;
+        private final double clearPerMinute;
+        private long prevTs = Long.MIN_VALUE;
+        private double prevValue;
+
+        RateOfChange(Long ruleId, String severity, String fp, double maxPerMinute, double clearPerMinute) {
+            super(ruleId, severity, fp);
+            this.maxPerMinute = maxPerMinute;
+            this.clearPerMinute = clearPerMinute;
+            this.limit = maxPerMinute;
+        }
+
+        @Override public String type() { return RATE_OF_CHANGE; }
+
+        @Override
+        public int test(long ts, double value, double predicted) {
+            long prev = prevTs;
+            double prevV = prevValue;
+            prevTs = ts;
+            prevValue = value;
+            if (prev == Long.MIN_VALUE || ts <= prev) return HOLD;
+            metric = (value - prevV) * 60000.0 / (ts - prev);
+            return classify(Math.abs(metric), maxPerMinute, clearPerMinute);
+        }
+    }
+
+    static final class Deviation extends CompiledRule {
+        private final double clearPercent;
+
+        Deviation(Long ruleId, String severity, String fp, double percent, double clearPercent) {
+            super(ruleId, severity, fp);
+            this.limit = percent;
+            this.clearPercent = clearPercent;
+        }
+
+        @Override public String type() { return DEVIATION; }
+
+        @Override boolean usesPrediction() { return true; }
+
+        @Override
+        public int test(long ts, double value, double predicted) {
+            if (Double.isNaN(predicted)) return HOLD;
+            metric = deviationPercent(value, predicted);
+            double abs = Math.abs(metric);
+            if (abs >= limit) return RAISE;
+            return abs < clearPercent ? CLEAR : HOLD;
+        }
+    }
+
+    /**
+     * Flags samples farther than {@code sigma} standard deviations from the mean of the previous {@code window}
+     * samples. Ring buffer with running sum / sum of squares, recomputed on each wrap to avoid drift.
+     */
+    static final class RollingStdDev extends CompiledRule {
+        private final double[] window;
+        private final double sigma;
+        private final double clearSigma;
+        private int next;
+        private int count;
+        private double sum;
+        private double sumSq;
+        double mean;
+        double stddev;
+
+        RollingStdDev(Long ruleId, String severity, String fp, int size, double sigma, double clearSigma) {
+            super(ruleId, severity, fp);
+            this.window = new double[size];
+            this.sigma = sigma;
+            this.clearSigma = clearSigma;
+            this.limit = sigma;
+        }
+
+        @Override public String type() { return ROLLING_STDDEV; }
+
+        @Override
+        public int test(long ts, double value, double predicted) {
+            int result = HOLD;
+            int n = window.length;
+            if (count == n) {
+                mean = sum / n;
+                stddev = Math.sqrt(Math.max(0d, sumSq / n - mean * mean));
+                double dist = Math.abs(value - mean);
+                metric = stddev > 0 ? dist / stddev : (dist > 0 ? Double.POSITIVE_INFINITY : 0d);
+                result = classify(metric, sigma, clearSigma);
+            }
+            if (count == n) {
+                double out = window[next];
+                sum -= out;
+                sumSq -= out * out;
+            } else {
+                count++;
+            }
+            window[next] = value;
+            sum += value;
+            sumSq += value * value;
+            next++;
+            if (next == n) {
+                next = 0;
+                double s = 0, sq = 0;
+                for (double v : window) { s += v; sq += v * v; }
+                sum = s;
+                sumSq = sq;
+            }
+            return result;
+        }
+
+        public double mean() { return mean; }
+
+        public double stddev() { return stddev; }
+    }
+}
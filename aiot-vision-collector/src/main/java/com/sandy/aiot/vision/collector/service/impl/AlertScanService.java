@@ -4,28 +4,39 @@ import com.sandy.aiot.vision.collector.entity.Alert;
 import com.sandy.aiot.vision.collector.entity.Device;
 import com.sandy.aiot.vision.collector.entity.Tag;
 import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
 import com.sandy.aiot.vision.collector.repository.AlertRepository;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
 import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.AlertSuppressionIndex;
+import com.sandy.aiot.vision.collector.service.AlertWriter;
 import com.sandy.aiot.vision.collector.service.DataStorageService;
 import com.sandy.aiot.vision.collector.service.PredictService; // kept for cache prefetch fallback
 import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Scans latest numeric tag values and generates deviation alerts using cached prediction baseline.
+ * Generates alerts by running each tag's compiled rules ({@link AlertRuleEngine}: threshold, rate of change,
+ * deviation from the cached prediction, rolling mean/stddev) over its numeric values. Samples are normally evaluated
+ * as they are ingested ({@link StreamingAlertEvaluator}); the periodic scan of latest values only covers tags without
+ * a recent streamed evaluation (no samples through ingest, or no baseline at that time).
  */
 @Service
 @Slf4j
@@ -38,6 +49,9 @@ public class AlertScanService {
     private final AlertRepository alertRepository;
     private final PredictService predictService; // retained for prediction cache's lazy prefetch
     private final PredictionCacheService predictionCacheService; // new cache service
+    private final AlertSuppressionIndex suppressionIndex;
+    private final AlertRuleEngine ruleEngine;
+    private final AlertWriter alertWriter;
 
     @Value("${alert.enabled:true}")
     private boolean enabled;
@@ -45,16 +59,24 @@ public class AlertScanService {
     private int duplicateSuppressMinutes;
     @Value("${alert.severity-high-percent:20}")
     private double severityHighPercent; // used for deviation severity classification
-    @Value("${alert.prediction-enabled:false}")
-    private boolean predictionEnabled; // toggle deviation logic
-    @Value("${alert.deviation-percent-threshold:15}")
-    private double deviationPercentThreshold;
+    @Value("${alert.streaming.enabled:true}")
+    private boolean streamingEnabled;
+    @Value("${alert.streaming.fallback-after-ms:120000}")
+    private long fallbackAfterMs; // 该时间内已由采集流评估过的标签, 定时扫描跳过
+    @Value("${alert.state.raise-after-ms:0}")
+    private long raiseAfterMs; // 持续超限该时长 (按采集时间) 才生成预警
+    @Value("${alert.state.clear-after-ms:0}")
+    private long clearAfterMs; // 持续恢复该时长才自动解除预警
+
+    // 每个标签的评估状态; 同一样本只被 (流式或扫描) 评估一次
+    private final Map<DeviceTagKey, TagState> states = new ConcurrentHashMap<>();
 
     private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     @PostConstruct
     public void init() {
-        log.info("Alert scanning service initialized: enabled={} deviationPctThr={} predictionEnabled={}", enabled, deviationPercentThreshold, predictionEnabled);
+        log.info("Alert scanning service initialized: enabled={} deviationPctThr={} predictionEnabled={} streaming={}", enabled,
+                ruleEngine.getDeviationPercentThreshold(), ruleEngine.isPredictionEnabled(), streamingEnabled);
     }
 
     @Scheduled(fixedDelayString = "${alert.scan-interval-ms:60000}")
@@ -70,121 +92,250 @@ public class AlertScanService {
         if (!enabled) return;
         List<Device> devices = deviceRepository.findAllWithTags();
         int totalChecked = 0;
+        int streamed = 0;
         for (Device device : devices) {
             if (device.getTags() == null) continue;
             for (Tag tag : device.getTags()) {
+                if (ruleEngine.rulesFor(tag.getId()) == null) continue; // 无规则
                 totalChecked++;
-                if (predictionEnabled) {
-                    generateDeviationAlertIfNeeded(device, tag);
+                if (isStreamCovered(new DeviceTagKey(device.getId(), tag.getId()))) {
+                    streamed++;
+                    continue;
                 }
+                evaluateLatest(device, tag);
             }
         }
+        alertWriter.flush(); // 本轮生成/解除的预警一次批量写入
         if (totalChecked > 0) {
-            log.debug("Alert scan completed. devices={} checkedTags={}", devices.size(), totalChecked);
+            log.debug("Alert scan completed. devices={} checkedTags={} coveredByStream={}", devices.size(), totalChecked, streamed);
         }
     }
 
-    private void generateDeviationAlertIfNeeded(Device device, Tag tag) {
+    /** Whether ingested samples should be evaluated by {@link StreamingAlertEvaluator}. */
+    public boolean isStreamingActive() {
+        return enabled && streamingEnabled && ruleEngine.hasRules();
+    }
+
+    /**
+     * Evaluates one ingested sample against the cached prediction (called off the ingest thread). Device and tag
+     * names are only loaded when an alert is created; alerts are queued and written by the caller's
+     * {@link AlertWriter#flush()}.
+     */
+    public void evaluateSample(DataRecord record) {
+        if (!isStreamingActive() || record == null) return;
+        evaluate(record.getDeviceId(), record.getTagId(), null, null, record.getValue(), record.getTimestamp(), true);
+    }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        event.keys().forEach(states::remove);
+    }
+
+    private boolean isStreamCovered(DeviceTagKey key) {
+        if (!streamingEnabled) return false;
+        TagState state = states.get(key);
+        return state != null && System.currentTimeMillis() - state.streamedAtMillis <= fallbackAfterMs;
+    }
+
+    private void evaluateLatest(Device device, Tag tag) {
         try {
             Optional<DataRecord> latestOpt = dataStorageService.findLatest(device.getId(), tag.getId());
             if (latestOpt.isEmpty()) return;
             DataRecord dr = latestOpt.get();
-            Double actual = toDouble(dr.getValue());
-            if (actual == null || Double.isNaN(actual)) return;
-            LocalDateTime actualTs = dr.getTimestamp();
-            if (actualTs == null) return; // need timestamp for alignment
-
-            // 从缓存获取对应时间点预测值 (内部容差匹配). 若未命中则缓存内部会尝试懒加载一次再返回.
-            Double predicted = predictionCacheService.getPredictedValue(device.getId(), tag.getId(), actualTs);
-            if (predicted == null || Double.isNaN(predicted)) {
-                log.info("No cached prediction value for deviation alert deviceId={} tagId={} ts={}", device.getId(), tag.getId(), actualTs);
-                return; // 无预测基线
+            evaluate(device.getId(), tag.getId(), device.getName(), tag.getName(), dr.getValue(), dr.getTimestamp(), false);
+        } catch (Exception e) {
+            log.debug("Failed alert evaluation for deviceId={} tagId={} error={}", device.getId(), tag.getId(), e.getMessage());
+        }
+    }
+
+    private void evaluate(Long deviceId, Long tagId, String deviceName, String tagName, Object value, LocalDateTime actualTs, boolean streamed) {
+        AlertRuleEngine.TagRules rules = ruleEngine.rulesFor(tagId);
+        if (rules == null) return;
+        Double actual = toDouble(value);
+        if (actual == null || Double.isNaN(actual)) return;
+        if (actualTs == null) return; // need timestamp for alignment
+        TagState state = states.computeIfAbsent(new DeviceTagKey(deviceId, tagId), k -> new TagState());
+        // 同一标签的流式与扫描评估串行, 避免重复判断同一样本或并发生成重复预警
+        synchronized (state) {
+            try {
+                evaluateLocked(state, rules, deviceId, tagId, deviceName, tagName, actual, actualTs, streamed);
+            } catch (Exception e) {
+                log.debug("Failed alert evaluation for deviceId={} tagId={} error={}", deviceId, tagId, e.getMessage());
             }
+        }
+    }
 
-            Double deviationPctObj = computeDeviationPercent(actual, predicted);
-            if (deviationPctObj == null) return; // 计算失败
-            double deviationPct = deviationPctObj;
-            if (Double.isNaN(deviationPct)) return;
-            log.info("Deviation evaluation deviceId={} tagId={} actual={} predicted={} deviationPct={}% deviationPercentThreshold={}",
-                    device.getId(), tag.getId(), actual, predicted, String.format("%.2f", deviationPct), deviationPercentThreshold);
-            if (Math.abs(deviationPct) < deviationPercentThreshold) return; // 未达到阈值
-
-            String signature = buildSignature(device.getId(), tag.getId(), "DEVIATION");
-            LocalDateTime cutoff = LocalDateTime.now().minus(duplicateSuppressMinutes, ChronoUnit.MINUTES);
-            // NEW suppression logic: only suppress if there exists an unacknowledged & unignored alert with same signature within window
-            if (alertRepository.findTopBySignatureAndAcknowledgedFalseAndIgnoredFalseAndCreatedAtAfter(signature, cutoff).isPresent()) {
-                log.info("Duplicate deviation alert suppressed (pending) deviceId={} tagId={} signature={} since {} (ack=false ignored=false)", device.getId(), tag.getId(), signature, TS_FMT.format(cutoff));
-                return; // 重复抑制 (仅未确认且未忽略的仍在窗口内)
+    /**
+     * Runs all rules of the tag over one sample. Rules on the raw value (and their running state) see each sample
+     * once; deviation rules run once a prediction baseline exists for the sample, which may be on a later scan.
+     */
+    private void evaluateLocked(TagState state, AlertRuleEngine.TagRules rules, Long deviceId, Long tagId, String deviceName, String tagName,
+                                double actual, LocalDateTime actualTs, boolean streamed) {
+        long sampleMillis = actualTs.toInstant(ZoneOffset.UTC).toEpochMilli();
+        boolean fresh = sampleMillis > state.lastSampleMillis;
+        boolean baselinePending = rules.needsPrediction() && sampleMillis > state.lastBaselineMillis;
+        if (!fresh && !baselinePending) return; // 已评估过 (或迟到的旧样本)
+        double predicted = Double.NaN;
+        if (baselinePending) {
+            // 从缓存获取对应时间点预测值 (内部容差匹配). 未命中时缓存在后台刷新, 偏差规则留给扫描兜底.
+            Double p = predictionCacheService.getPredictedValue(deviceId, tagId, actualTs);
+            if (p != null && !Double.isNaN(p)) {
+                predicted = p;
+                state.lastBaselineMillis = sampleMillis;
+            } else {
+                log.debug("No cached prediction value for deviation alert deviceId={} tagId={} ts={}", deviceId, tagId, actualTs);
             }
+        }
+        boolean hasBaseline = !Double.isNaN(predicted);
+        if (fresh) state.lastSampleMillis = sampleMillis;
+        if (streamed && (!rules.needsPrediction() || hasBaseline)) state.streamedAtMillis = System.currentTimeMillis();
 
-            String severity = computeSeverityByPercent(Math.abs(deviationPct));
-            LocalDateTime alertTime = LocalDateTime.now();
-            String msg = String.format("偏差预警: 设备[%s] 点位[%s] 当前值 %.2f 预测值 %.2f 偏差 %.2f%% (阈值%.2f%%) 采集时间:%s 预警时间:%s",
-                    device.getName(), tag.getName(), actual, predicted, deviationPct, deviationPercentThreshold,
-                    TS_FMT.format(actualTs), TS_FMT.format(alertTime));
-            Alert alert = Alert.builder()
-                    .deviceId(device.getId())
-                    .tagId(tag.getId())
-                    .type("DEVIATION")
-                    .severity(severity)
-                    .message(msg)
-                    .thresholdValue(null)
-                    .actualValue(actual)
-                    .predictedPeakValue(null)
-                    .predictedBaseValue(predicted)
-                    .deviationPercent(deviationPct)
-                    .createdAt(alertTime)
-                    .acknowledged(false)
-                    .ignored(false)
-                    .signature(signature)
-                    .build();
-            alertRepository.save(alert);
-            log.info("Created deviation alert id={} signature={} severity={} deviationPct={} actualTs={} predictedTs={}", alert.getId(), signature, severity, String.format("%.2f", deviationPct), actualTs, actualTs);
-        } catch (Exception e) {
-            log.debug("Failed deviation evaluation for deviceId={} tagId={} error={}", device.getId(), tag.getId(), e.getMessage());
+        for (AlertRuleEngine.CompiledRule rule : rules.rules()) {
+            if (rule.type().equals(AlertRuleEngine.DEVIATION) ? !hasBaseline : !fresh) continue;
+            int signal = rule.test(sampleMillis, actual, predicted);
+            advance(rule, signal, sampleMillis, deviceId, tagId, deviceName, tagName, actual, predicted, actualTs);
         }
     }
 
     /**
-     * 计算偏差百分比 (actual vs predicted) 并对 actual==0 / predicted≈0 的特殊情况做优化。
-     * 规则:
-     * 1. 两者都几乎为 0 (|value| < EPS) -> 返回 0 (视为无偏差, 跳过)
-     * 2. 优先使用预测值作为分母 (若其绝对值 >= EPS)
-     * 3. 否则用实际值作为分母 (若其绝对值 >= EPS)
-     * 4. 若二者都 < EPS 已在第1步处理，不进入 0 分母情况
+     * Per-rule state machine: NORMAL → PENDING (breach seen, waiting raise-after-ms) → ACTIVE (alert persisted)
+     * → CLEARING (back within the clear limit, waiting clear-after-ms) → NORMAL (alert resolved). Samples between the
+     * raise and clear limits keep an active alert active, so a signal oscillating around the threshold produces one
+     * alert instead of one per suppression window. Only the transitions to ACTIVE and back to NORMAL touch the database.
+     * The state is in memory only: on its first evaluation a rule starts ACTIVE when an unresolved alert with its
+     * signature exists, so that alert is still resolved once the condition clears after a restart or a rule edit.
      */
-    private Double computeDeviationPercent(Double actual, Double predicted) {
-        if (actual == null || predicted == null) return null;
-        final double EPS = 1e-6; // near-zero 阈值
-        double a = actual;
-        double p = predicted;
-        boolean aZeroLike = Math.abs(a) < EPS;
-        boolean pZeroLike = Math.abs(p) < EPS;
-        if (aZeroLike && pZeroLike) {
-            // 都接近 0 视为无偏差，返回 0 (调用方会跳过阈值判断)
-            return 0d;
+    private void advance(AlertRuleEngine.CompiledRule rule, int signal, long sampleMillis, Long deviceId, Long tagId, String deviceName,
+                         String tagName, double actual, double predicted, LocalDateTime actualTs) {
+        if (!rule.seeded) seed(rule, deviceId, tagId);
+        Alert failed = rule.failedAlert;
+        if (failed != null) {
+            rule.failedAlert = null;
+            if (failed == rule.alert) { // 预警未写入: 仍超限时重新去抖并生成
+                rule.alert = null;
+                rule.state = AlertRuleEngine.AlertState.NORMAL;
+            }
         }
-        double denom;
-        if (!pZeroLike) {
-            denom = p; // 优先预测值
-        } else if (!aZeroLike) {
-            denom = a; // 次选实际值
-        } else {
-            // 理论不会到达 (两者都 zeroLike 已在前面处理)，兜底
-            denom = 1.0;
+        switch (rule.state) {
+            case NORMAL, PENDING -> {
+                if (signal != AlertRuleEngine.RAISE) {
+                    rule.state = AlertRuleEngine.AlertState.NORMAL;
+                    return;
+                }
+                if (rule.state == AlertRuleEngine.AlertState.NORMAL) {
+                    rule.state = AlertRuleEngine.AlertState.PENDING;
+                    rule.sinceMillis = sampleMillis;
+                }
+                if (sampleMillis - rule.sinceMillis < raiseAfterMs) return; // 去抖: 持续时间不足
+                rule.alert = raiseAlert(rule, deviceId, tagId, deviceName, tagName, actual, predicted, actualTs);
+                rule.state = AlertRuleEngine.AlertState.ACTIVE;
+            }
+            case ACTIVE, CLEARING -> {
+                if (signal != AlertRuleEngine.CLEAR) {
+                    rule.state = AlertRuleEngine.AlertState.ACTIVE;
+                    return;
+                }
+                if (rule.state == AlertRuleEngine.AlertState.ACTIVE) {
+                    rule.state = AlertRuleEngine.AlertState.CLEARING;
+                    rule.sinceMillis = sampleMillis;
+                }
+                if (sampleMillis - rule.sinceMillis < clearAfterMs) return;
+                resolveAlert(rule.alert, actualTs);
+                rule.alert = null;
+                rule.state = AlertRuleEngine.AlertState.NORMAL;
+            }
         }
-        if (Math.abs(denom) < EPS) {
-            // 仍不安全，避免数值炸裂
-            log.debug("Skip deviation evaluation due to near-zero denominator deviceId? actual={} predicted={} denom={}", a, p, denom);
-            return null;
+    }
+
+    private void seed(AlertRuleEngine.CompiledRule rule, Long deviceId, Long tagId) {
+        String signature = signatureOf(rule, deviceId, tagId);
+        alertRepository.findTopBySignatureAndResolvedAtIsNullOrderByCreatedAtDesc(signature).ifPresent(open -> {
+            rule.alert = Alert.builder().id(open.getId()).signature(signature).build();
+            rule.state = AlertRuleEngine.AlertState.ACTIVE;
+            log.debug("Rule state restored from unresolved alert id={} signature={}", open.getId(), signature);
+        });
+        rule.seeded = true;
+    }
+
+    private void resolveAlert(Alert alert, LocalDateTime actualTs) {
+        if (alert == null) return;
+        alertWriter.resolve(alert, LocalDateTime.now());
+        log.info("Resolving alert signature={} actualTs={}", alert.getSignature(), actualTs);
+    }
+
+    /**
+     * Queues the alert for writing and returns it; when an open alert with the same signature exists, returns a
+     * reference to that one instead.
+     */
+    private Alert raiseAlert(AlertRuleEngine.CompiledRule rule, Long deviceId, Long tagId, String deviceName, String tagName,
+                            double actual, double predicted, LocalDateTime actualTs) {
+        String type = rule.type();
+        String signature = signatureOf(rule, deviceId, tagId);
+        LocalDateTime cutoff = LocalDateTime.now().minus(duplicateSuppressMinutes, ChronoUnit.MINUTES);
+        // NEW suppression logic: only suppress if there exists an unacknowledged & unignored alert with same signature within window
+        Long openId = findOpenAlert(signature, cutoff);
+        if (openId != null) {
+            log.info("Duplicate {} alert suppressed (pending) deviceId={} tagId={} signature={} since {} (ack=false ignored=false)", type, deviceId, tagId, signature, TS_FMT.format(cutoff));
+            return Alert.builder().id(openId).signature(signature).build(); // 重复抑制 (仅未确认且未忽略的仍在窗口内), 沿用已有预警 (例如重启后状态丢失)
         }
-        return (a - p) / denom * 100.0;
+
+        String severity = rule.severity() != null ? rule.severity()
+                : AlertRuleEngine.DEVIATION.equals(type) ? computeSeverityByPercent(Math.abs(rule.metric())) : "MEDIUM";
+        if (deviceName == null) deviceName = deviceRepository.findById(deviceId).map(Device::getName).orElse(String.valueOf(deviceId));
+        if (tagName == null) tagName = tagRepository.findById(tagId).map(Tag::getName).orElse(String.valueOf(tagId));
+        LocalDateTime alertTime = LocalDateTime.now();
+        String times = String.format("采集时间:%s 预警时间:%s", TS_FMT.format(actualTs), TS_FMT.format(alertTime));
+        String msg = switch (type) {
+            case AlertRuleEngine.THRESHOLD -> String.format("阈值预警: 设备[%s] 点位[%s] 当前值 %.2f 超出%s限 %.2f %s",
+                    deviceName, tagName, actual, actual > rule.limit() ? "上" : "下", rule.limit(), times);
+            case AlertRuleEngine.RATE_OF_CHANGE -> String.format("变化率预警: 设备[%s] 点位[%s] 当前值 %.2f 变化率 %.2f/分钟 (上限%.2f/分钟) %s",
+                    deviceName, tagName, actual, rule.metric(), rule.limit(), times);
+            case AlertRuleEngine.ROLLING_STDDEV -> {
+                AlertRuleEngine.RollingStdDev r = (AlertRuleEngine.RollingStdDev) rule;
+                yield String.format("波动预警: 设备[%s] 点位[%s] 当前值 %.2f 窗口均值 %.2f 标准差 %.4f (阈值%.2fσ) %s",
+                        deviceName, tagName, actual, r.mean(), r.stddev(), rule.limit(), times);
+            }
+            default -> String.format("偏差预警: 设备[%s] 点位[%s] 当前值 %.2f 预测值 %.2f 偏差 %.2f%% (阈值%.2f%%) %s",
+                    deviceName, tagName, actual, predicted, rule.metric(), rule.limit(), times);
+        };
+        boolean deviation = AlertRuleEngine.DEVIATION.equals(type);
+        Alert alert = Alert.builder()
+                .deviceId(deviceId)
+                .tagId(tagId)
+                .type(type)
+                .severity(severity)
+                .message(msg)
+                .thresholdValue(deviation ? null : rule.limit())
+                .actualValue(actual)
+                .predictedPeakValue(null)
+                .predictedBaseValue(deviation ? predicted : null)
+                .deviationPercent(deviation ? rule.metric() : null)
+                .createdAt(alertTime)
+                .acknowledged(false)
+                .ignored(false)
+                .signature(signature)
+                .build();
+        alertWriter.enqueue(alert, a -> rule.failedAlert = a);
+        log.info("Created {} alert signature={} severity={} metric={} actualTs={}", type, signature, severity, String.format("%.2f", rule.metric()), actualTs);
+        return alert;
+    }
+
+    // 内存索引就绪后不再查询数据库; 启动加载完成前回退到原查询
+    private Long findOpenAlert(String signature, LocalDateTime cutoff) {
+        if (suppressionIndex.isReady()) return suppressionIndex.findOpenSince(signature, cutoff);
+        return alertRepository.findTopBySignatureAndAcknowledgedFalseAndIgnoredFalseAndResolvedAtIsNullAndCreatedAtAfter(signature, cutoff)
+                .map(Alert::getId).orElse(null);
     }
 
     private String computeSeverityByPercent(double absDeviationPercent) {
         return absDeviationPercent >= severityHighPercent ? "HIGH" : "MEDIUM";
     }
 
+    // 默认偏差规则沿用原签名; 配置的规则按规则区分
+    private String signatureOf(AlertRuleEngine.CompiledRule rule, Long deviceId, Long tagId) {
+        return rule.ruleId() == null ? buildSignature(deviceId, tagId, rule.type()) : buildSignature(deviceId, tagId, rule.type() + ":" + rule.ruleId());
+    }
+
     private String buildSignature(Long deviceId, Long tagId, String type) {
         return deviceId + ":" + tagId + ":" + type;
     }
@@ -202,4 +353,10 @@ public class AlertScanService {
     }
 
     public boolean isEnabled() { return enabled; }
+
+    private static final class TagState {
+        long lastSampleMillis = Long.MIN_VALUE; // 最近评估过的样本时间
+        long lastBaselineMillis = Long.MIN_VALUE; // 最近有预测基线 (已评估偏差规则) 的样本时间
+        volatile long streamedAtMillis = Long.MIN_VALUE / 2; // 最近一次流式评估的时刻
+    }
 }
@@ -0,0 +1,434 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk historical import (backfill). Uploads are spooled to a temp file, then stream-parsed on a single low-priority
+ * worker into batches written through {@link DataStorageService#saveBatch(List)}. The write rate is capped so live
+ * ingest keeps priority on the storage connection.
+ * <p>
+ * Row layout (CSV header / NDJSON fields): deviceId, tagId, timestamp, value[, type]. CSV fields may be quoted
+ * (RFC 4180: "" inside quotes is a literal quote, quoted fields may contain commas and line breaks).
+ * timestamp: epoch millis, "yyyy-MM-dd HH:mm:ss[.SSS]" or ISO-8601 with an optional offset ("Z", "+08:00", "+0800");
+ * values with an offset are converted to UTC, the basis stored timestamps use, values without one are taken as is.
+ * type (optional): BOOLEAN/INT32/INT64/FLOAT/DOUBLE/TEXT.
+ * Without a type, values of an existing series are converted to that series' data type (taken from its latest value),
+ * so a backfill never mixes types within a series; rows that do not fit the type are rejected one by one.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DataImportService {
+
+    private final DataStorageService dataStorageService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${data.import.batch-size:5000}")
+    private int batchSize;
+    @Value("${data.import.max-points-per-second:50000}")
+    private long maxPointsPerSecond; // <=0 不限速
+    @Value("${data.import.max-jobs-kept:50}")
+    private int maxJobsKept;
+
+    private static final DateTimeFormatter TS_FMT = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd[ ]['T']HH:mm:ss")
+            .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+            .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HHMM", "Z").optionalEnd()
+            .toFormatter();
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "data-import");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Spools the upload to disk and queues it. Format "csv" / "ndjson"; inferred from the file name when null.
+     * A trailing ".gz" on the file name enables gzip decoding.
+     */
+    public ImportJob submit(MultipartFile file, String format) throws IOException {
+        String name = Optional.ofNullable(file.getOriginalFilename()).orElse("upload");
+        boolean gzip = name.toLowerCase().endsWith(".gz");
+        String baseName = gzip ? name.substring(0, name.length() - 3) : name;
+        String fmt = format != null && !format.isBlank() ? format.trim().toLowerCase()
+                : (baseName.toLowerCase().endsWith(".ndjson") || baseName.toLowerCase().endsWith(".jsonl") ? "ndjson" : "csv");
+        if (!fmt.equals("csv") && !fmt.equals("ndjson")) {
+            throw new IllegalArgumentException("Unsupported import format: " + fmt);
+        }
+        Path tmp = Files.createTempFile("avc-import-", gzip ? ".gz" : ".dat");
+        file.transferTo(tmp);
+
+        ImportJob job = new ImportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setFileName(name);
+        job.setFormat(fmt);
+        job.setStatus("QUEUED");
+        job.setTotalBytes(Files.size(tmp));
+        job.setSubmittedAt(LocalDateTime.now());
+        jobs.put(job.getId(), job);
+        trimJobs();
+        worker.submit(() -> run(job, tmp, gzip));
+        return job;
+    }
+
+    public Optional<ImportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<ImportJob> listJobs() {
+        List<ImportJob> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparing(ImportJob::getSubmittedAt).reversed());
+        return list;
+    }
+
+    private void run(ImportJob job, Path file, boolean gzip) {
+        job.setStatus("RUNNING");
+        job.setStartedAt(LocalDateTime.now());
+        long start = System.currentTimeMillis();
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024), job);
+             InputStream in = gzip ? new GZIPInputStream(counting, 64 * 1024) : counting) {
+            BatchWriter writer = new BatchWriter(job, start);
+            if ("ndjson".equals(job.getFormat())) {
+                importNdjson(in, job, writer);
+            } else {
+                importCsv(in, job, writer);
+            }
+            writer.flush();
+            job.setStatus("COMPLETED");
+        } catch (Exception e) {
+            log.error("Import failed job={} file={} error={}", job.getId(), job.getFileName(), e.getMessage(), e);
+            job.setStatus("FAILED");
+            job.setMessage(e.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+            try { Files.deleteIfExists(file); } catch (IOException ignored) { }
+            log.info("Import finished job={} status={} rows={} points={} rejected={} cost={}ms",
+                    job.getId(), job.getStatus(), job.getRowsRead(), job.getPointsWritten(), job.getRowsRejected(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private void importCsv(InputStream in, ImportJob job, BatchWriter writer) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        String header = readRecord(reader);
+        if (header == null) return;
+        String[] cols = splitCsv(header);
+        int iDevice = indexOf(cols, "deviceId"), iTag = indexOf(cols, "tagId"), iTs = indexOf(cols, "timestamp"),
+                iValue = indexOf(cols, "value"), iType = indexOf(cols, "type");
+        if (iDevice < 0 || iTag < 0 || iTs < 0 || iValue < 0) {
+            throw new IllegalArgumentException("CSV header must contain deviceId,tagId,timestamp,value");
+        }
+        Map<DeviceTagKey, String> seriesTypes = new HashMap<>();
+        String line;
+        while ((line = readRecord(reader)) != null) {
+            if (line.isBlank()) continue;
+            job.rowsRead++;
+            try {
+                String[] f = splitCsv(line);
+                long deviceId = Long.parseLong(f[iDevice]);
+                long tagId = Long.parseLong(f[iTag]);
+                String type = iType >= 0 && iType < f.length && !f[iType].isBlank() ? f[iType] : seriesType(seriesTypes, deviceId, tagId);
+                writer.add(DataRecord.builder()
+                        .deviceId(deviceId)
+                        .tagId(tagId)
+                        .timestamp(parseTimestamp(f[iTs]))
+                        .value(parseValue(f[iValue], type))
+                        .build());
+            } catch (RuntimeException e) {
+                reject(job, line, e);
+            }
+        }
+    }
+
+    private void importNdjson(InputStream in, ImportJob job, BatchWriter writer) throws IOException, InterruptedException {
+        Map<DeviceTagKey, String> seriesTypes = new HashMap<>();
+        try (MappingIterator<JsonNode> it = objectMapper.readerFor(JsonNode.class).readValues(in)) {
+            while (it.hasNextValue()) {
+                JsonNode n = it.nextValue();
+                job.rowsRead++;
+                try {
+                    long deviceId = n.get("deviceId").asLong();
+                    long tagId = n.get("tagId").asLong();
+                    JsonNode v = n.get("value");
+                    String type = n.hasNonNull("type") && !n.get("type").asText().isBlank() ? n.get("type").asText()
+                            : seriesType(seriesTypes, deviceId, tagId);
+                    Object value;
+                    if (v == null || v.isNull()) value = null;
+                    else if (type != null || v.isTextual()) value = parseValue(v.asText(), type);
+                    else if (v.isBoolean()) value = v.booleanValue();
+                    else value = v.doubleValue();
+                    JsonNode ts = n.get("timestamp");
+                    writer.add(DataRecord.builder()
+                            .deviceId(deviceId)
+                            .tagId(tagId)
+                            .timestamp(ts.isNumber() ? toLocalDateTime(ts.asLong()) : parseTimestamp(ts.asText()))
+                            .value(value)
+                            .build());
+                } catch (RuntimeException e) {
+                    reject(job, n.toString(), e);
+                }
+            }
+        }
+    }
+
+    private void reject(ImportJob job, String row, Exception e) {
+        job.rowsRejected++;
+        if (job.rowsRejected <= 10) {
+            log.warn("Import job={} rejected row '{}': {}", job.getId(), row.length() > 200 ? row.substring(0, 200) : row, e.getMessage());
+        }
+    }
+
+    /**
+     * Data type of an existing series derived from its latest value, null for a new series. Looked up once per series
+     * and job.
+     */
+    private String seriesType(Map<DeviceTagKey, String> cache, long deviceId, long tagId) {
+        String type = cache.computeIfAbsent(new DeviceTagKey(deviceId, tagId), k -> dataStorageService.findLatest(deviceId, tagId)
+                .map(r -> typeOf(r.getValue())).orElse(""));
+        return type.isEmpty() ? null : type;
+    }
+
+    private static String typeOf(Object v) {
+        if (v instanceof Boolean) return "BOOLEAN";
+        if (v instanceof Integer) return "INT32";
+        if (v instanceof Long) return "INT64";
+        if (v instanceof Float) return "FLOAT";
+        if (v instanceof Double) return "DOUBLE";
+        if (v instanceof String) return "TEXT";
+        return "";
+    }
+
+    /**
+     * Converts a textual value into the Java type that maps to the wanted TSDataType (see DataStorageServiceByIotdb#getTSDataType).
+     * Without a type (new series): true/false -> Boolean, numbers -> Double, anything else -> String.
+     */
+    private Object parseValue(String raw, String type) {
+        if (raw == null) return null;
+        String s = raw.trim();
+        if (s.isEmpty()) return null;
+        if (type != null && !type.isBlank()) {
+            return switch (type.trim().toUpperCase()) {
+                case "BOOLEAN" -> parseBoolean(s);
+                case "INT32" -> Integer.parseInt(s);
+                case "INT64" -> Long.parseLong(s);
+                case "FLOAT" -> Float.parseFloat(s);
+                case "DOUBLE" -> Double.parseDouble(s);
+                case "TEXT", "STRING" -> s;
+                default -> throw new IllegalArgumentException("Unsupported type: " + type);
+            };
+        }
+        if (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false")) return Boolean.parseBoolean(s);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return s;
+        }
+    }
+
+    private static Boolean parseBoolean(String s) {
+        if (s.equalsIgnoreCase("true") || s.equals("1")) return true;
+        if (s.equalsIgnoreCase("false") || s.equals("0")) return false;
+        throw new IllegalArgumentException("Not a boolean: " + s);
+    }
+
+    private LocalDateTime parseTimestamp(String raw) {
+        String s = raw.trim();
+        if (!s.isEmpty() && s.chars().allMatch(Character::isDigit)) {
+            return toLocalDateTime(Long.parseLong(s));
+        }
+        TemporalAccessor parsed = TS_FMT.parseBest(s, OffsetDateTime::from, LocalDateTime::from);
+        if (parsed instanceof OffsetDateTime odt) return odt.withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        return (LocalDateTime) parsed;
+    }
+
+    private LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static int indexOf(String[] cols, String name) {
+        for (int i = 0; i < cols.length; i++) if (cols[i].equalsIgnoreCase(name)) return i;
+        return -1;
+    }
+
+    /** Reads one CSV record, joining lines while a quoted field is open. Null at end of input. */
+    private static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || line.indexOf('"') < 0) return line;
+        StringBuilder record = new StringBuilder(line);
+        while (countQuotes(record) % 2 != 0) {
+            String next = reader.readLine();
+            if (next == null) break; // 引号未闭合, 由 splitCsv 拒绝该行
+            record.append('\n').append(next);
+        }
+        return record.toString();
+    }
+
+    private static int countQuotes(CharSequence s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) == '"') n++;
+        return n;
+    }
+
+    /** Splits one record into fields; unquoted fields are trimmed, quoted ones are kept verbatim. */
+    private static String[] splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        boolean quoted = false; // 当前字段以引号开始
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == ',') {
+                fields.add(quoted ? field.toString() : field.toString().trim());
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '"' && !quoted && field.toString().isBlank()) {
+                field.setLength(0);
+                inQuotes = true;
+                quoted = true;
+            } else if (!quoted || !Character.isWhitespace(c)) {
+                field.append(c);
+            }
+        }
+        if (inQuotes) throw new IllegalArgumentException("Unterminated quoted field");
+        fields.add(quoted ? field.toString() : field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    private void trimJobs() {
+        if (jobs.size() <= maxJobsKept) return;
+        jobs.values().stream()
+                .filter(j -> j.getFinishedAt() != null)
+                .sorted(Comparator.comparing(ImportJob::getSubmittedAt))
+                .limit(jobs.size() - maxJobsKept)
+                .forEach(j -> jobs.remove(j.getId()));
+    }
+
+    /**
+     * Accumulates records and writes them in batches, sleeping as needed to stay under max-points-per-second.
+     */
+    private class BatchWriter {
+        private final ImportJob job;
+        private final long startMillis;
+        private final List<DataRecord> buffer;
+
+        BatchWriter(ImportJob job, long startMillis) {
+            this.job = job;
+            this.startMillis = startMillis;
+            this.buffer = new ArrayList<>(Math.max(batchSize, 1));
+        }
+
+        void add(DataRecord record) throws InterruptedException {
+            if (record.getValue() == null) {
+                job.rowsRejected++;
+                return;
+            }
+            buffer.add(record);
+            if (buffer.size() >= batchSize) flush();
+        }
+
+        void flush() throws InterruptedException {
+            if (buffer.isEmpty()) return;
+            if (!dataStorageService.saveBatch(buffer)) {
+                throw new IllegalStateException("Storage rejected batch after " + job.getPointsWritten() + " points");
+            }
+            job.pointsWritten += buffer.size();
+            buffer.clear();
+            if (maxPointsPerSecond > 0) {
+                long expectedMs = job.pointsWritten * 1000 / maxPointsPerSecond;
+                long elapsed = System.currentTimeMillis() - startMillis;
+                if (expectedMs > elapsed) Thread.sleep(expectedMs - elapsed);
+            }
+        }
+    }
+
+    /** Tracks bytes consumed from the spooled file for progress reporting. */
+    private static class CountingInputStream extends FilterInputStream {
+        private final ImportJob job;
+
+        CountingInputStream(InputStream in, ImportJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) job.bytesRead++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) job.bytesRead += n;
+            return n;
+        }
+    }
+
+    @Data
+    public static class ImportJob {
+        private String id;
+        private String fileName;
+        private String format;
+        private volatile String status; // QUEUED / RUNNING / COMPLETED / FAILED
+        private long totalBytes;
+        private volatile long bytesRead;
+        private volatile long rowsRead;
+        private volatile long rowsRejected;
+        private volatile long pointsWritten;
+        private LocalDateTime submittedAt;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String message;
+
+        public double getProgressPercent() {
+            return totalBytes <= 0 ? 0d : Math.min(100d, bytesRead * 100d / totalBytes);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package com.sandy.aiot.vision.collector.service.impl;
 
 import com.sandy.aiot.vision.collector.entity.Device;
 import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.event.DeviceSavedEvent;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
 import com.sandy.aiot.vision.collector.repository.TagRepository;
 import com.sandy.aiot.vision.collector.service.DataService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -16,6 +18,7 @@ public class DataServiceImpl implements DataService {
 
     private final DeviceRepository deviceRepository;
     private final TagRepository tagRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<Device> getAllDevices() { return deviceRepository.findAll(); }
@@ -30,7 +33,11 @@ public class DataServiceImpl implements DataService {
     public Tag getTagById(Long tagId) { return tagRepository.findById(tagId).orElse(null); }
 
     @Override
-    public Device saveDevice(Device device) { return deviceRepository.save(device); }
+    public Device saveDevice(Device device) {
+        Device saved = deviceRepository.save(device);
+        eventPublisher.publishEvent(new DeviceSavedEvent(saved.getId(), saved.getStorageGroup()));
+        return saved;
+    }
 
     @Override
     public void deleteDevice(Long id) { deviceRepository.deleteById(id); }
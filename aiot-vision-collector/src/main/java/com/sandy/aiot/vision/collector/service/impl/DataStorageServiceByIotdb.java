@@ -1,33 +1,55 @@
 package com.sandy.aiot.vision.collector.service.impl;
 
 import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.event.DataIngestedEvent;
+import com.sandy.aiot.vision.collector.event.DeviceSavedEvent;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
 import com.sandy.aiot.vision.collector.service.DataStorageService;
 import com.sun.jdi.ShortType;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.iotdb.isession.SessionDataSet;
 import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
 import org.apache.iotdb.session.Session;
 import org.apache.tsfile.enums.TSDataType;
-import org.apache.tsfile.read.common.Field;
-import org.apache.tsfile.read.common.RowRecord;
 import org.apache.tsfile.utils.Binary;
+import org.apache.tsfile.write.record.Tablet;
+import org.apache.tsfile.write.schema.IMeasurementSchema;
+import org.apache.tsfile.write.schema.MeasurementSchema;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * IoTDB backed storage. Devices are routed into one of several databases (root.&lt;rt.db&gt;[_suffix]) so the
+ * storage engine can spread data regions; see {@link #databaseOf(Long)} for the routing rules.
+ */
 @Service
 @Profile("!test")
 @Slf4j
+@RequiredArgsConstructor
 public class DataStorageServiceByIotdb implements DataStorageService {
+    private final DeviceRepository deviceRepository;
+    private final TagRepository tagRepository;
+    private final ApplicationEventPublisher eventPublisher;
     private Session session;
 
     @Value("${iotdb.host}")
@@ -43,6 +65,16 @@ public class DataStorageServiceByIotdb implements DataStorageService {
     private  String realtimeDB;
     @Value("${iotdb.rt.ttl}")
     private  long realtimeTTL ;
+    @Value("${iotdb.rt.db-count:1}")
+    private int databaseCount; // >1: 按 deviceId 取模路由到 root.<rt.db>_<n>
+    @Value("${iotdb.rt.group-ttl:}")
+    private String groupTtlConfig; // 例: rt_0=3600000,rt_hot=600000 (库名不含 root.)
+
+    // deviceId -> database (root.xxx)
+    private final Map<Long, String> deviceDatabases = new ConcurrentHashMap<>();
+    // 已完成创建与 TTL 设置的数据库
+    private final Set<String> preparedDatabases = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> groupTtls = new HashMap<>();
 
     @PostConstruct
     public void init() {
@@ -50,22 +82,122 @@ public class DataStorageServiceByIotdb implements DataStorageService {
         try {
             session.open(false);
             log.info("IoTDB session connected successfully. host={} port={}", host, port);
-            setTTL();
+            this.realtimeDB = "root." + realtimeDBwithoutRoot;
+            parseGroupTtls();
+            if (databaseCount > 1) {
+                for (int i = 0; i < databaseCount; i++) prepareDatabase(realtimeDB + "_" + i);
+            } else {
+                prepareDatabase(realtimeDB);
+            }
+            refreshRoutes();
         } catch (Exception e) {
             log.error("Failed to connect to IoTDB host={} port={}", host, port, e);
             throw new IllegalStateException("IoTDB connection failed", e);
         }
     }
 
-    private void setTTL() {
+    private void parseGroupTtls() {
+        if (groupTtlConfig == null || groupTtlConfig.isBlank()) return;
+        for (String item : groupTtlConfig.split(",")) {
+            String[] kv = item.trim().split("=");
+            if (kv.length != 2) continue;
+            try {
+                groupTtls.put("root." + kv[0].trim(), Long.parseLong(kv[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid iotdb.rt.group-ttl entry '{}'", item);
+            }
+        }
+    }
+
+    /**
+     * Creates the database if absent and applies its TTL (group specific TTL or the default rt TTL). Runs once per database.
+     */
+    private void prepareDatabase(String database) {
+        if (preparedDatabases.contains(database)) return;
+        synchronized (preparedDatabases) {
+            if (preparedDatabases.contains(database)) return;
+            try {
+                session.createDatabase(database);
+                log.info("IoTDB database created: {}", database);
+            } catch (StatementExecutionException e) {
+                log.debug("IoTDB database {} not created (probably exists): {}", database, e.getMessage());
+            } catch (Exception e) {
+                log.warn("Error creating database {}: {}", database, e.getMessage());
+            }
+            long ttl = groupTtls.getOrDefault(database, realtimeTTL);
+            try {
+                String sql = String.format("set ttl to %s %d", database, ttl);
+                session.executeNonQueryStatement(sql);
+                log.info("TTL set to {} ms for database {}", ttl, database);
+            } catch (Exception e) {
+                log.error("Error setting TTL for database {}", database, e);
+            }
+            preparedDatabases.add(database);
+        }
+    }
+
+    /**
+     * 定期刷新设备 -> 数据库路由 (兜底; 设备新增/修改时由 {@link DeviceSavedEvent} 立即预热).
+     * 注意: 路由变化不会迁移历史数据, 旧库中的数据不再被查询, 按其 TTL 自然过期. 以下变更都会导致路由变化:
+     * 设备 storageGroup 变更, 以及 iotdb.rt.db-count 变更 (如 1 -> N 时设备从 root.&lt;rt.db&gt; 改为
+     * root.&lt;rt.db&gt;_&lt;deviceId % N&gt;, N 变化时取模结果也随之改变). 需要保留历史时, 在变更前以 layout=long
+     * 导出 (每行 deviceId,tagId,timestamp,value,type, 即导入接口的行格式), 变更后经导入接口回灌到新库.
+     */
+    @Scheduled(fixedDelayString = "${iotdb.rt.route-refresh-ms:60000}")
+    public void refreshRoutes() {
         try {
-            this.realtimeDB="root."+realtimeDBwithoutRoot;
-            String sql = String.format("set ttl to %s %d", realtimeDB,realtimeTTL);
-            session.executeNonQueryStatement(sql);
-            log.info("TTL set to {} ms for database {}", realtimeTTL,realtimeDB);
+            for (Device d : deviceRepository.findAll()) {
+                updateRoute(d.getId(), d.getStorageGroup());
+            }
         } catch (Exception e) {
-            log.error("Error setting TTL for database {}", realtimeDB, e);
+            log.warn("Failed to refresh IoTDB storage routes: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onDeviceSaved(DeviceSavedEvent event) {
+        if (event.deviceId() != null) updateRoute(event.deviceId(), event.storageGroup());
+    }
+
+    private void updateRoute(Long deviceId, String storageGroup) {
+        String db = resolveDatabase(deviceId, storageGroup);
+        String old = deviceDatabases.put(deviceId, db);
+        if (old != null && !old.equals(db)) {
+            log.warn("Device {} storage route changed {} -> {}; existing history stays in {}", deviceId, old, db, old);
+        }
+    }
+
+    /**
+     * 路由规则:
+     * 1. 设备显式指定 storageGroup -> root.&lt;rt.db&gt;_&lt;group&gt;
+     * 2. iotdb.rt.db-count &gt; 1 -> root.&lt;rt.db&gt;_&lt;deviceId % db-count&gt;
+     * 3. 否则 -> root.&lt;rt.db&gt; (单库, 与旧版本兼容)
+     */
+    private String databaseOf(Long deviceId) {
+        String db = deviceDatabases.get(deviceId);
+        if (db != null) return db;
+        // 路由在启动与设备保存时已预热; 仅未经接口创建的设备会走到这里
+        String group = deviceRepository.findById(deviceId).map(Device::getStorageGroup).orElse(null);
+        db = resolveDatabase(deviceId, group);
+        deviceDatabases.put(deviceId, db);
+        return db;
+    }
+
+    private String resolveDatabase(Long deviceId, String storageGroup) {
+        String db;
+        if (storageGroup != null && !storageGroup.isBlank()) {
+            db = realtimeDB + "_" + storageGroup.trim().replaceAll("[^A-Za-z0-9_]", "_");
+        } else if (databaseCount > 1 && deviceId != null) {
+            db = realtimeDB + "_" + Math.floorMod(deviceId, databaseCount);
+        } else {
+            db = realtimeDB;
         }
+        prepareDatabase(db);
+        return db;
+    }
+
+    private String devicePath(Long deviceId) {
+        return databaseOf(deviceId) + "." + toDeviceId(deviceId);
     }
 
     @PreDestroy
@@ -82,80 +214,166 @@ public class DataStorageServiceByIotdb implements DataStorageService {
 
     @Override
     public List<DataRecord> findLatest(Long deviceId) {
-        List<DataRecord> records = new ArrayList<>();
-        String sql = String.format("SELECT last * FROM " + realtimeDB + ".%s.*", toDeviceId(deviceId));
-        try (var dataSet = session.executeQueryStatement(sql)) {
-            while (dataSet.hasNext()) {
-                RowRecord record = dataSet.next();
-                long timestamp = record.getTimestamp();
-                Field field = record.getFields().get(0);
-                Object value = convertFieldToValue(field);
-                String timeseries = dataSet.getColumnNames().get(1);
-                String tagIdStr = timeseries.substring(timeseries.lastIndexOf('.') + 1).substring(1);
-                Long tagId = Long.parseLong(tagIdStr);
-                records.add(DataRecord.builder().tagId(tagId).deviceId(deviceId).value(value).timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC)).build());
-            }
-        } catch (Exception e) {
-            log.error("Error querying latest data for device {}", deviceId, e);
-        }
-        return records;
+        List<Long> tagIds = tagRepository.findByDeviceId(deviceId).stream().map(Tag::getId).toList();
+        return queryLast(deviceId, tagIds);
     }
 
     @Override
     public Optional<DataRecord> findLatest(Long deviceId, Long tagId) {
-        DataRecord dataRecord = null;
-        String sql = String.format("SELECT last %s FROM " + realtimeDB + ".%s", toMeasurement(tagId), toDeviceId(deviceId));
-        try (var dataSet = session.executeQueryStatement(sql)) {
-            while (dataSet.hasNext()) {
-                RowRecord record = dataSet.next();
-                long timestamp = record.getTimestamp();
-                Field field = record.getFields().get(1);
-                Object value = convertFieldToValue(field);
-                dataRecord = DataRecord.builder().tagId(tagId).deviceId(deviceId).value(value).timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC)).build();
+        List<DataRecord> records = queryLast(deviceId, List.of(tagId));
+        return records.isEmpty() ? Optional.empty() : Optional.of(records.get(0));
+    }
+
+    /**
+     * Last-data query through the native session API. Result layout is fixed (Time, Timeseries, Value, DataType):
+     * the series path is mapped back through the requested path list and the value is decoded by its DataType column.
+     */
+    private List<DataRecord> queryLast(Long deviceId, List<Long> tagIds) {
+        List<DataRecord> records = new ArrayList<>();
+        if (tagIds.isEmpty()) return records;
+        SeriesPaths paths = seriesPaths(deviceId, tagIds);
+        try (var dataSet = session.executeLastDataQuery(paths.paths())) {
+            var it = dataSet.iterator();
+            while (it.next()) {
+                int pos = paths.positionOf(it.getString(2));
+                if (pos < 0) continue;
+                Object value = parseLastValue(it.getString(3), it.getString(4));
+                records.add(toRecord(deviceId, tagIds.get(pos), it.getLong(1), value));
             }
         } catch (Exception e) {
-            log.error("Error querying latest for device {} tag {}", deviceId, tagId, e);
+            log.error("Error querying latest data for device {} tags {}", deviceId, tagIds, e);
         }
-        return Optional.ofNullable(dataRecord);
+        return records;
     }
 
     @Override
     public List<DataRecord> findTopN(Long deviceId, Long tagId, int limit) {
+        return queryTopN(deviceId, List.of(tagId), limit);
+    }
+
+    @Override
+    public List<DataRecord> findTopN(Long deviceId, int limit) {
+        List<Long> tagIds = tagRepository.findByDeviceId(deviceId).stream().map(Tag::getId).toList();
+        return queryTopN(deviceId, tagIds, limit);
+    }
+
+    private List<DataRecord> queryTopN(Long deviceId, List<Long> tagIds, int limit) {
         List<DataRecord> records = new ArrayList<>();
-        String sql = String.format("SELECT %s FROM " + realtimeDB + ".%s ORDER BY time DESC LIMIT %d", toMeasurement(tagId), toDeviceId(deviceId), limit);
-        try (var dataSet = session.executeQueryStatement(sql)) {
-            while (dataSet.hasNext()) {
-                RowRecord record = dataSet.next();
-                long timestamp = record.getTimestamp();
-                Field field = record.getFields().get(0);
-                Object value = convertFieldToValue(field);
-                records.add(DataRecord.builder().tagId(tagId).deviceId(deviceId).value(value).timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC)).build());
-            }
+        try {
+            scanLatest(deviceId, tagIds, limit, (ts, values) -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) records.add(toRecord(deviceId, tagIds.get(i), ts, values[i]));
+                }
+            });
         } catch (Exception e) {
-            log.error("Error querying top N for device {} tag {}", deviceId, tagId, e);
+            log.error("Error querying top N for device {} tags {}", deviceId, tagIds, e);
         }
         return records;
     }
 
+    /**
+     * 会话 API 的原始数据查询只能按时间升序读取, 没有 "倒序 + LIMIT" 的原生查询, 最近 N 条是唯一仍走 SQL 的读路径.
+     * 语句中只有由 id 生成的设备路径/测点名和整数, 结果同样按请求路径位置解码.
+     */
     @Override
-    public List<DataRecord> findTopN(Long deviceId, int limit) {
-        List<DataRecord> records = new ArrayList<>();
-        String sql = String.format("SELECT * FROM " + realtimeDB + ".%s.* ORDER BY time DESC LIMIT %d", toDeviceId(deviceId), limit);
+    public long scanLatest(Long deviceId, List<Long> tagIds, int limit, RowHandler handler) throws IOException {
+        if (tagIds == null || tagIds.isEmpty() || limit <= 0) return 0;
+        StringJoiner select = new StringJoiner(",");
+        for (Long tagId : tagIds) select.add(toMeasurement(tagId));
+        String sql = "SELECT " + select + " FROM " + devicePath(deviceId) + " ORDER BY time DESC LIMIT " + limit;
         try (var dataSet = session.executeQueryStatement(sql)) {
-            while (dataSet.hasNext()) {
-                RowRecord record = dataSet.next();
-                long timestamp = record.getTimestamp();
-                Field field = record.getFields().get(0);
-                Object value = convertFieldToValue(field);
-                String timeseries = dataSet.getColumnNames().get(1);
-                String tagIdStr = timeseries.substring(timeseries.lastIndexOf('.') + 1).substring(1);
-                Long tagId = Long.parseLong(tagIdStr);
-                records.add(DataRecord.builder().tagId(tagId).deviceId(deviceId).value(value).timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC)).build());
+            return emitRows(dataSet, seriesPaths(deviceId, tagIds), tagIds.size(), 0, handler);
+        } catch (IoTDBConnectionException | StatementExecutionException e) {
+            log.error("Error querying latest rows for device {} tags {}", deviceId, tagIds, e);
+            throw new IllegalStateException("IoTDB latest rows query failed", e);
+        }
+    }
+
+    @Override
+    public long scanRange(Long deviceId, List<Long> tagIds, LocalDateTime from, LocalDateTime to, int limit, RowHandler handler) throws IOException {
+        if (tagIds == null || tagIds.isEmpty()) return 0;
+        SeriesPaths paths = seriesPaths(deviceId, tagIds);
+        try (var dataSet = session.executeRawDataQuery(paths.paths(), toEpochMillis(from), toEpochMillis(to))) {
+            // 原始数据查询没有行数上限: 读满 limit 行后停止拉取, 关闭结果集即结束服务端查询
+            return emitRows(dataSet, paths, tagIds.size(), limit, handler);
+        } catch (IoTDBConnectionException | StatementExecutionException e) {
+            log.error("Error scanning range for device {} tags {}", deviceId, tagIds, e);
+            throw new IllegalStateException("IoTDB range query failed", e);
+        }
+    }
+
+    /**
+     * Pushes aligned rows of a result set to the handler; column → tag position is resolved once per query.
+     * Stops after {@code limit} rows when {@code limit > 0}.
+     */
+    private long emitRows(SessionDataSet dataSet, SeriesPaths paths, int width, int limit, RowHandler handler)
+            throws IoTDBConnectionException, StatementExecutionException, IOException {
+        int[] positions = paths.columnPositions(dataSet.getColumnNames());
+        Object[] values = new Object[width];
+        long rows = 0;
+        var it = dataSet.iterator();
+        while ((limit <= 0 || rows < limit) && it.next()) {
+            Arrays.fill(values, null);
+            for (int c = 1; c < positions.length; c++) {
+                // DataIterator 下标从 1 开始且 1 为 Time 列
+                if (positions[c] >= 0 && !it.isNull(c + 1)) values[positions[c]] = it.getObject(c + 1);
             }
-        } catch (Exception e) {
-            log.error("Error querying top N for device {}", deviceId, e);
+            handler.onRow(it.getLong(1), values);
+            rows++;
+        }
+        return rows;
+    }
+
+    private SeriesPaths seriesPaths(Long deviceId, List<Long> tagIds) {
+        String device = devicePath(deviceId);
+        List<String> list = new ArrayList<>(tagIds.size());
+        Map<String, Integer> index = new HashMap<>(tagIds.size() * 2);
+        for (int i = 0; i < tagIds.size(); i++) {
+            String path = device + "." + toMeasurement(tagIds.get(i));
+            list.add(path);
+            index.putIfAbsent(path, i);
+        }
+        return new SeriesPaths(list, index);
+    }
+
+    /**
+     * Requested full series paths and their positions in the caller's tag list.
+     */
+    private record SeriesPaths(List<String> paths, Map<String, Integer> index) {
+        int positionOf(String path) {
+            return path == null ? -1 : index.getOrDefault(path, -1);
+        }
+
+        /** Maps each result column (0 = Time) to a requested position, resolved once per query. */
+        int[] columnPositions(List<String> columnNames) {
+            int[] positions = new int[columnNames.size()];
+            positions[0] = -1;
+            for (int c = 1; c < columnNames.size(); c++) positions[c] = positionOf(columnNames.get(c));
+            return positions;
+        }
+    }
+
+    private DataRecord toRecord(Long deviceId, Long tagId, long timestamp, Object value) {
+        return DataRecord.builder().tagId(tagId).deviceId(deviceId).value(value).timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC)).build();
+    }
+
+    /**
+     * Last query returns values as text together with their data type; decode back into the matching Java type.
+     */
+    private Object parseLastValue(String value, String dataType) {
+        if (value == null || dataType == null) return value;
+        try {
+            return switch (TSDataType.valueOf(dataType)) {
+                case BOOLEAN -> Boolean.parseBoolean(value);
+                case INT32 -> Integer.parseInt(value);
+                case INT64 -> Long.parseLong(value);
+                case FLOAT -> Float.parseFloat(value);
+                case DOUBLE -> Double.parseDouble(value);
+                default -> value;
+            };
+        } catch (IllegalArgumentException e) {
+            return value;
         }
-        return records;
     }
 
     @Override
@@ -174,7 +392,7 @@ public class DataStorageServiceByIotdb implements DataStorageService {
                     log.warn("Skipping record with null value: deviceId={}, tagId={}, timestamp={}", record.getDeviceId(), record.getTagId(), record.getTimestamp());
                     continue;
                 }
-                String deviceIdStr = realtimeDB + "." + toDeviceId(record.getDeviceId());
+                String deviceIdStr = devicePath(record.getDeviceId());
                 deviceIds.add(deviceIdStr);
                 times.add(record.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
                 List<String> measurements = List.of(toMeasurement(record.getTagId()));
@@ -186,6 +404,7 @@ public class DataStorageServiceByIotdb implements DataStorageService {
             }
             session.insertRecords(deviceIds, times, measurementsList, typesList, valuesList);
             log.debug("Saved {} records to IoTDB", dataRecords.size());
+            eventPublisher.publishEvent(new DataIngestedEvent(dataRecords));
             return true;
         } catch (Exception e) {
             log.error("Error saving records to IoTDB", e);
@@ -193,6 +412,75 @@ public class DataStorageServiceByIotdb implements DataStorageService {
         }
     }
 
+    @Override
+    public boolean saveBatch(List<DataRecord> dataRecords) {
+        if (dataRecords.isEmpty()) {
+            return true;
+        }
+        try {
+            Map<Long, List<DataRecord>> byDevice = new LinkedHashMap<>();
+            for (DataRecord record : dataRecords) {
+                if (record.getValue() == null || record.getTimestamp() == null) continue;
+                byDevice.computeIfAbsent(record.getDeviceId(), k -> new ArrayList<>()).add(record);
+            }
+            Map<String, Tablet> tablets = new HashMap<>();
+            List<DataRecord> mismatched = new ArrayList<>();
+            for (Map.Entry<Long, List<DataRecord>> e : byDevice.entrySet()) {
+                String path = devicePath(e.getKey());
+                Tablet tablet = buildTablet(path, e.getValue(), mismatched);
+                if (tablet != null) tablets.put(path, tablet);
+            }
+            if (!tablets.isEmpty()) {
+                session.insertTablets(tablets);
+            }
+            log.debug("Saved {} records to IoTDB as {} tablets ({} fallback records)", dataRecords.size(), tablets.size(), mismatched.size());
+            // 同一批次内类型不一致的点走逐条写入
+            return mismatched.isEmpty() || save(mismatched);
+        } catch (Exception e) {
+            log.error("Error saving tablets to IoTDB", e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds one tablet for a device: a column per measurement (typed by {@link #getTSDataType(Object)} of its first value)
+     * and a row per distinct timestamp. Values whose type differs from their column are collected into {@code mismatched}.
+     */
+    private Tablet buildTablet(String devicePath, List<DataRecord> records, List<DataRecord> mismatched) {
+        Map<String, TSDataType> columns = new LinkedHashMap<>();
+        Map<Long, Integer> rowIndex = new HashMap<>();
+        List<DataRecord> accepted = new ArrayList<>(records.size());
+        for (DataRecord record : records) {
+            TSDataType type = getTSDataType(record.getValue());
+            if (type == TSDataType.UNKNOWN) {
+                log.warn("Skipping record with unsupported value type: deviceId={}, tagId={}, type={}", record.getDeviceId(), record.getTagId(), record.getValue().getClass().getSimpleName());
+                continue;
+            }
+            TSDataType existing = columns.putIfAbsent(toMeasurement(record.getTagId()), type);
+            if (existing != null && existing != type) {
+                mismatched.add(record);
+                continue;
+            }
+            accepted.add(record);
+            rowIndex.putIfAbsent(toEpochMillis(record.getTimestamp()), rowIndex.size());
+        }
+        if (accepted.isEmpty()) return null;
+        List<IMeasurementSchema> schemas = new ArrayList<>(columns.size());
+        columns.forEach((m, t) -> schemas.add(new MeasurementSchema(m, t)));
+        Tablet tablet = new Tablet(devicePath, schemas, rowIndex.size());
+        for (DataRecord record : accepted) {
+            long ts = toEpochMillis(record.getTimestamp());
+            int row = rowIndex.get(ts);
+            tablet.addTimestamp(row, ts);
+            tablet.addValue(toMeasurement(record.getTagId()), row, record.getValue());
+        }
+        return tablet;
+    }
+
+    private long toEpochMillis(LocalDateTime ts) {
+        return ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
     private String toDeviceId(Long deviceId) {
         return "d" + deviceId;
     }
@@ -215,21 +503,5 @@ public class DataStorageServiceByIotdb implements DataStorageService {
         if (value instanceof List) return TSDataType.VECTOR;
         return TSDataType.UNKNOWN;
     }
-
-    private Object convertFieldToValue(Field field) {
-        TSDataType dataType = field.getDataType();
-        return switch (dataType) {
-            case BOOLEAN -> field.getBoolV();
-            case INT32 -> field.getIntV();
-            case INT64 -> field.getLongV();
-            case FLOAT -> field.getFloatV();
-            case DOUBLE -> field.getDoubleV();
-            case TEXT, STRING -> field.getBinaryV().getStringValue(Charset.defaultCharset());
-            case VECTOR, BLOB -> field.getBinaryV();
-            case TIMESTAMP -> field.getLongV();
-            case DATE -> field.getIntV();
-            case UNKNOWN -> null;
-        };
-    }
 }
 
@@ -0,0 +1,382 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.vo.ForecastEndpointStatsVO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Non-blocking HTTP client for the forecast service. Connections are pooled and kept alive by the JDK client,
+ * every request has a timeout, and at most {@code max-concurrency} requests are in flight; the rest wait in a queue
+ * without holding a thread. When {@code max-queued} requests are already waiting new calls fail at once with
+ * {@link RejectedExecutionException} so callers fall back instead of piling up behind a slow service.
+ * <p>
+ * Every endpoint (URL without query) has a circuit breaker: after {@code failure-threshold} consecutive failures
+ * (transport errors, timeouts, 5xx) calls fail at once with {@link CircuitOpenException} for {@code open-ms}, then a
+ * single probe decides whether it closes again. With {@code hedge-after-ms > 0} a second identical request is sent
+ * when the first has not answered in time; the first good answer wins and the other one is cancelled.
+ */
+@Component
+@Slf4j
+public class ForecastClient {
+
+    // 延迟直方图桶上界 (毫秒), 另有一个 +Inf 桶
+    private static final long[] BUCKET_BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxQueued;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long hedgeAfterMillis;
+    private final ScheduledExecutorService hedgeTimer;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public ForecastClient(long connectTimeoutMs, long requestTimeoutMs, int maxConcurrency) {
+        this(connectTimeoutMs, requestTimeoutMs, maxConcurrency, 5, 30_000L, 0L);
+    }
+
+    public ForecastClient(long connectTimeoutMs, long requestTimeoutMs, int maxConcurrency,
+                          int failureThreshold, long openMillis, long hedgeAfterMillis) {
+        this(connectTimeoutMs, requestTimeoutMs, maxConcurrency, 1000, failureThreshold, openMillis, hedgeAfterMillis);
+    }
+
+    @Autowired
+    public ForecastClient(@Value("${predict.http.connect-timeout-ms:2000}") long connectTimeoutMs,
+                          @Value("${predict.http.request-timeout-ms:10000}") long requestTimeoutMs,
+                          @Value("${predict.http.max-concurrency:8}") int maxConcurrency,
+                          @Value("${predict.http.max-queued:1000}") int maxQueued,
+                          @Value("${predict.http.breaker.failure-threshold:5}") int failureThreshold,
+                          @Value("${predict.http.breaker.open-ms:30000}") long openMillis,
+                          @Value("${predict.http.hedge-after-ms:0}") long hedgeAfterMillis) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.maxQueued = maxQueued;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.hedgeAfterMillis = hedgeAfterMillis;
+        this.hedgeTimer = hedgeAfterMillis > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "forecast-hedge");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (hedgeTimer != null) hedgeTimer.shutdownNow();
+    }
+
+    /**
+     * POSTs a JSON body. The future completes with status and body for any HTTP response and exceptionally on
+     * connect/timeout errors or while the endpoint's circuit is open.
+     */
+    public CompletableFuture<Response> postJson(String url, String json) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return execute(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8),
+                resp -> new Response(resp.statusCode(), resp.body()), Response::status);
+    }
+
+    /**
+     * POSTs a binary body as {@code contentType}, accepting the same type or JSON back. The byte array is handed to
+     * the client as is and the response body is returned without decoding.
+     */
+    public CompletableFuture<BinaryResponse> postBinary(String url, byte[] body, String contentType) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Content-Type", contentType)
+                .header("Accept", contentType + ", application/json;q=0.5")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return execute(request, HttpResponse.BodyHandlers.ofByteArray(),
+                resp -> new BinaryResponse(resp.statusCode(), resp.headers().firstValue("Content-Type").orElse(""), resp.body()),
+                BinaryResponse::status);
+    }
+
+    /**
+     * Plain GET returning the status code, for health checks: bypasses the queue, the breaker and the statistics.
+     */
+    public CompletableFuture<Integer> getStatus(URI uri, long timeoutMs) {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofMillis(timeoutMs)).GET().build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+    }
+
+    /** Number of requests waiting for a free slot. */
+    public int queuedRequests() {
+        return queued.get();
+    }
+
+    /** Breaker state of an endpoint; CLOSED for endpoints never called. */
+    public CircuitState circuitState(String url) {
+        Endpoint ep = endpoints.get(endpointOf(URI.create(url)));
+        return ep == null ? CircuitState.CLOSED : ep.state();
+    }
+
+    /** Counters, breaker state and latency distribution of every endpoint called so far. */
+    public List<ForecastEndpointStatsVO> endpointStats() {
+        List<ForecastEndpointStatsVO> list = new ArrayList<>();
+        endpoints.forEach((url, ep) -> list.add(ep.toVO(url)));
+        list.sort(Comparator.comparing(ForecastEndpointStatsVO::getUrl));
+        return list;
+    }
+
+    private <B, T> CompletableFuture<T> execute(HttpRequest request, HttpResponse.BodyHandler<B> handler,
+                                                Function<HttpResponse<B>, T> mapper, ToIntFunction<T> status) {
+        String url = endpointOf(request.uri());
+        Endpoint ep = endpoints.computeIfAbsent(url, k -> new Endpoint());
+        // 在熔断判断之前拒绝: 本地排队满不是端点故障, 也不能占用半开探测名额
+        if (maxQueued > 0 && queued.get() >= maxQueued) {
+            ep.rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Forecast request queue full (" + maxQueued + ")"));
+        }
+        if (!ep.tryAcquire()) {
+            ep.shortCircuited.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitOpenException(url));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        attempts.add(attempt(ep, request, handler, mapper, status, result, outstanding));
+        // 半开探测只发一个请求, 不对冲
+        if (hedgeTimer != null && ep.state() == CircuitState.CLOSED) {
+            ScheduledFuture<?> hedge = hedgeTimer.schedule(() -> {
+                if (result.isDone() || ep.state() != CircuitState.CLOSED) return;
+                outstanding.incrementAndGet();
+                ep.hedged.incrementAndGet();
+                attempts.add(attempt(ep, request, handler, mapper, status, result, outstanding));
+                if (result.isDone()) attempts.forEach(a -> a.cancel(true));
+            }, hedgeAfterMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> hedge.cancel(false));
+        }
+        result.whenComplete((r, e) -> attempts.forEach(a -> a.cancel(true)));
+        return result;
+    }
+
+    /**
+     * One exchange of a call. A good answer completes the call; a failure only does so when no other attempt is
+     * still running.
+     */
+    private <B, T> CompletableFuture<T> attempt(Endpoint ep, HttpRequest request, HttpResponse.BodyHandler<B> handler,
+                                                Function<HttpResponse<B>, T> mapper, ToIntFunction<T> status,
+                                                CompletableFuture<T> result, AtomicInteger outstanding) {
+        long start = System.nanoTime();
+        CompletableFuture<T> sent = submit(request, handler, mapper);
+        sent.whenComplete((resp, err) -> {
+            boolean last = outstanding.decrementAndGet() == 0;
+            if (err instanceof CancellationException) return; // 对冲落败的一方, 不计入统计
+            boolean failed = err != null || status.applyAsInt(resp) >= 500;
+            ep.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed, err);
+            if (!failed) result.complete(resp);
+            else if (last) {
+                if (err != null) result.completeExceptionally(err);
+                else result.complete(resp);
+            }
+        });
+        return sent;
+    }
+
+    private <B, T> CompletableFuture<T> submit(HttpRequest request, HttpResponse.BodyHandler<B> handler, Function<HttpResponse<B>, T> mapper) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        queued.incrementAndGet();
+        waiting.add(() -> {
+            if (result.isDone()) { // 排队期间已被取消
+                permits.release();
+                return;
+            }
+            try {
+                CompletableFuture<HttpResponse<B>> exchange = httpClient.sendAsync(request, handler);
+                result.whenComplete((r, e) -> {
+                    if (e instanceof CancellationException) exchange.cancel(true);
+                });
+                exchange.whenComplete((resp, err) -> {
+                    permits.release();
+                    drain();
+                    if (err != null) result.completeExceptionally(err);
+                    else result.complete(mapper.apply(resp));
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                drain();
+                result.completeExceptionally(e);
+            }
+        });
+        drain();
+        return result;
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            queued.decrementAndGet();
+            next.run();
+        }
+    }
+
+    private static String endpointOf(URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority() + (uri.getRawPath() == null ? "" : uri.getRawPath());
+    }
+
+    public enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    /** Failure of calls rejected because the endpoint's circuit is open. */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String url) {
+            super("Circuit open for " + url);
+        }
+    }
+
+    public record Response(int status, String body) {
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    public record BinaryResponse(int status, String contentType, byte[] body) {
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        /** Media type without parameters, lower case. */
+        public String mediaType() {
+            int semi = contentType.indexOf(';');
+            return (semi < 0 ? contentType : contentType.substring(0, semi)).trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // 单个端点的熔断状态与统计
+    private final class Endpoint {
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong shortCircuited = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong hedged = new AtomicLong();
+        final AtomicLong maxMillis = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+        synchronized CircuitState state() {
+            return state;
+        }
+
+        /**
+         * CLOSED lets every call through; otherwise one probe per open-ms window (also covers a probe that never
+         * reported back).
+         */
+        synchronized boolean tryAcquire() {
+            if (state == CircuitState.CLOSED) return true;
+            long now = System.currentTimeMillis();
+            if (now - openedAt < openMillis) return false;
+            state = CircuitState.HALF_OPEN;
+            openedAt = now;
+            return true;
+        }
+
+        synchronized void record(long millis, boolean failed, Throwable err) {
+            requests.incrementAndGet();
+            int idx = 0;
+            while (idx < BUCKET_BOUNDS_MS.length && millis > BUCKET_BOUNDS_MS[idx]) idx++;
+            buckets.incrementAndGet(idx);
+            maxMillis.accumulateAndGet(millis, Math::max);
+            if (!failed) {
+                if (state != CircuitState.CLOSED) log.info("Forecast endpoint answered again, circuit closed");
+                state = CircuitState.CLOSED;
+                consecutiveFailures = 0;
+                return;
+            }
+            errors.incrementAndGet();
+            if (isTimeout(err)) timeouts.incrementAndGet();
+            consecutiveFailures++;
+            boolean trip = state == CircuitState.HALF_OPEN
+                    || (state == CircuitState.CLOSED && failureThreshold > 0 && consecutiveFailures >= failureThreshold);
+            if (trip) {
+                if (state == CircuitState.CLOSED) {
+                    log.warn("Forecast endpoint failed {} times in a row, circuit open for {}ms", consecutiveFailures, openMillis);
+                }
+                state = CircuitState.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+
+        ForecastEndpointStatsVO toVO(String url) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+                histogram.put(i < BUCKET_BOUNDS_MS.length ? "le" + BUCKET_BOUNDS_MS[i] : "inf", counts[i]);
+            }
+            return ForecastEndpointStatsVO.builder()
+                    .url(url)
+                    .circuit(state().name())
+                    .requests(requests.get())
+                    .errors(errors.get())
+                    .timeouts(timeouts.get())
+                    .shortCircuited(shortCircuited.get())
+                    .rejected(rejected.get())
+                    .hedged(hedged.get())
+                    .p50Millis(percentile(counts, total, 0.50))
+                    .p95Millis(percentile(counts, total, 0.95))
+                    .p99Millis(percentile(counts, total, 0.99))
+                    .maxMillis(maxMillis.get())
+                    .latencyBuckets(histogram)
+                    .build();
+        }
+
+        // 取分位所在桶的上界; 落在 +Inf 桶时用最大值
+        private long percentile(long[] counts, long total, double q) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) return Math.min(BUCKET_BOUNDS_MS[i], maxMillis.get());
+            }
+            return maxMillis.get();
+        }
+    }
+
+    private static boolean isTimeout(Throwable err) {
+        for (Throwable t = err; t != null; t = t.getCause()) {
+            if (t instanceof HttpTimeoutException || t instanceof TimeoutException) return true;
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,288 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.vo.ForecastPoolVO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pools of forecast endpoints. The default pool is {@code predict.api.url} (comma separated for several replicas,
+ * paired by position with {@code predict.api.batch-url}); named pools come from {@code predict.api.pools}:
+ * <pre>
+ * premium=http://gpu-1:50000/predict|http://gpu-1:50000/predict/batch,http://gpu-2:50000/predict;bulk=http://cpu:50000/predict
+ * </pre>
+ * A tag selects a pool with {@code Tag.forecastPool}; unknown or empty names use the default pool. Within a pool each
+ * call goes to the healthy member with the fewest outstanding requests (members with an open circuit or a failed
+ * health check are skipped while another member is available).
+ * <p>
+ * Batch and binary support are tracked per member: a member that rejects them is called with single-series JSON
+ * requests only, and is probed again after {@code predict.api.capability-reprobe-ms}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ForecastEndpointPools {
+
+    public static final String DEFAULT_POOL = "default";
+
+    private final ForecastClient forecastClient;
+
+    @Value("${predict.api.pools:}")
+    private String poolsSpec;
+    @Value("${predict.api.health.path:/health}")
+    private String healthPath; // 为空关闭主动健康检查; 任何非 5xx 响应 (含 404) 都视为健康
+    @Value("${predict.api.health.timeout-ms:2000}")
+    private long healthTimeoutMs;
+    @Value("${predict.api.capability-reprobe-ms:600000}")
+    private long capabilityReprobeMs; // 成员拒绝批量/二进制后, 间隔该时间再次尝试
+
+    private volatile Map<String, Pool> named;
+    // 默认池按当前配置串缓存, 同一地址的成员计数跨调用保留
+    private final Map<String, Pool> defaults = new ConcurrentHashMap<>();
+
+    /** Pool for a tag's {@code forecastPool}; the default pool is built from the given url lists. */
+    public Pool resolve(String poolName, String defaultUrls, String defaultBatchUrls) {
+        if (poolName != null && !poolName.isBlank()) {
+            Pool pool = namedPools().get(poolName.trim().toLowerCase(Locale.ROOT));
+            if (pool != null) return pool;
+        }
+        String cacheKey = Objects.toString(defaultUrls, "") + "\n" + Objects.toString(defaultBatchUrls, "");
+        return defaults.computeIfAbsent(cacheKey, k -> new Pool(DEFAULT_POOL, members(defaultUrls, defaultBatchUrls)));
+    }
+
+    /** Whether {@code name} is empty (default pool) or a configured pool. */
+    public boolean isKnownPool(String name) {
+        return name == null || name.isBlank() || DEFAULT_POOL.equalsIgnoreCase(name.trim())
+                || namedPools().containsKey(name.trim().toLowerCase(Locale.ROOT));
+    }
+
+    public List<ForecastPoolVO> pools() {
+        List<ForecastPoolVO> list = new ArrayList<>();
+        defaults.values().forEach(p -> list.add(p.toVO()));
+        namedPools().values().forEach(p -> list.add(p.toVO()));
+        return list;
+    }
+
+    /**
+     * Polls {@code health.path} on the origin of every member. Only members that are already known are checked, so
+     * an idle default pool built from an old url costs nothing once it is replaced.
+     */
+    @Scheduled(initialDelayString = "${predict.api.health.interval-ms:10000}", fixedDelayString = "${predict.api.health.interval-ms:10000}")
+    public void checkHealth() {
+        if (healthPath == null || healthPath.isBlank()) return;
+        List<Member> all = new ArrayList<>();
+        defaults.values().forEach(p -> all.addAll(p.members()));
+        namedPools().values().forEach(p -> all.addAll(p.members()));
+        for (Member m : all) {
+            URI health = m.healthUri(healthPath);
+            if (health == null) continue;
+            forecastClient.getStatus(health, healthTimeoutMs).whenComplete((status, err) -> {
+                boolean ok = err == null && status < 500;
+                if (ok != m.healthy) {
+                    if (ok) log.info("Forecast endpoint {} is healthy again", m.url());
+                    else log.warn("Forecast endpoint {} failed health check: {}", m.url(), err != null ? err.getClass().getSimpleName() : "status " + status);
+                }
+                m.healthy = ok;
+            });
+        }
+    }
+
+    private Map<String, Pool> namedPools() {
+        Map<String, Pool> map = named;
+        if (map == null) {
+            synchronized (this) {
+                if (named == null) named = parsePools(poolsSpec);
+                map = named;
+            }
+        }
+        return map;
+    }
+
+    private Map<String, Pool> parsePools(String spec) {
+        Map<String, Pool> map = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) return map;
+        for (String part : spec.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                if (!part.isBlank()) log.warn("Ignoring forecast pool definition without name: '{}'", part.trim());
+                continue;
+            }
+            String name = part.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+            List<Member> members = new ArrayList<>();
+            for (String m : part.substring(eq + 1).split(",")) {
+                if (m.isBlank()) continue;
+                String[] urls = m.trim().split("\\|", 2);
+                members.add(new Member(urls[0].trim(), urls.length > 1 && !urls[1].isBlank() ? urls[1].trim() : null));
+            }
+            if (members.isEmpty()) log.warn("Forecast pool '{}' has no endpoints, tags routed to it use the default pool", name);
+            else map.put(name, new Pool(name, members));
+        }
+        log.info("Forecast pools: {}", map.keySet());
+        return map;
+    }
+
+    private List<Member> members(String urls, String batchUrls) {
+        List<String> single = split(urls);
+        List<String> batch = split(batchUrls);
+        // 单个 batch-url 对应多个 url 时共用; 数量不一致的其余成员只走单序列接口
+        List<Member> members = new ArrayList<>(single.size());
+        for (int i = 0; i < single.size(); i++) {
+            String b = batch.size() == 1 ? batch.get(0) : i < batch.size() ? batch.get(i) : null;
+            members.add(new Member(single.get(i), b));
+        }
+        return members;
+    }
+
+    private static List<String> split(String s) {
+        List<String> list = new ArrayList<>();
+        if (s == null) return list;
+        for (String p : s.split(",")) if (!p.isBlank()) list.add(p.trim());
+        return list;
+    }
+
+    /** Endpoints of one pool. */
+    public final class Pool {
+        private final String name;
+        private final List<Member> members;
+        private final AtomicInteger rotation = new AtomicInteger();
+
+        Pool(String name, List<Member> members) {
+            this.name = name;
+            this.members = List.copyOf(members);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public List<Member> members() {
+            return members;
+        }
+
+        /** Whether a member currently accepts batch calls. */
+        public boolean hasBatch() {
+            for (Member m : members) if (m.supportsBatch()) return true;
+            return false;
+        }
+
+        /**
+         * Least-outstanding member among those that are healthy and not short-circuited (ties rotate); when none
+         * qualifies, the least loaded of all. Null for an empty pool. {@code batch} restricts to members with a
+         * batch url that have not rejected batching.
+         */
+        public Member choose(boolean batch) {
+            int n = members.size();
+            if (n == 0) return null;
+            int start = Math.floorMod(rotation.getAndIncrement(), n);
+            Member best = null;
+            Member any = null;
+            for (int i = 0; i < n; i++) {
+                Member m = members.get((start + i) % n);
+                if (batch && !m.supportsBatch()) continue;
+                if (any == null || m.outstanding.get() < any.outstanding.get()) any = m;
+                if (!m.isAvailable(batch)) continue;
+                if (best == null || m.outstanding.get() < best.outstanding.get()) best = m;
+            }
+            return best != null ? best : any;
+        }
+
+        ForecastPoolVO toVO() {
+            List<ForecastPoolVO.MemberVO> list = new ArrayList<>(members.size());
+            for (Member m : members) {
+                list.add(ForecastPoolVO.MemberVO.builder()
+                        .url(m.url())
+                        .batchUrl(m.batchUrl())
+                        .healthy(m.healthy)
+                        .circuit(forecastClient.circuitState(m.url()).name())
+                        .outstanding(m.outstanding.get())
+                        .batchSupported(m.supportsBatch())
+                        .binarySupported(m.supportsBinary())
+                        .build());
+            }
+            return ForecastPoolVO.builder().name(name).members(list).build();
+        }
+    }
+
+    /** One forecast service replica. */
+    public final class Member {
+        private final String url;
+        private final String batchUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+        // 拒绝批量/二进制后到该时刻之前不再使用; 0 表示支持
+        private volatile long batchRejectedUntil;
+        private volatile long binaryRejectedUntil;
+
+        Member(String url, String batchUrl) {
+            this.url = url;
+            this.batchUrl = batchUrl;
+        }
+
+        public String url() {
+            return url;
+        }
+
+        public String batchUrl() {
+            return batchUrl;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public boolean supportsBatch() {
+            return batchUrl != null && System.currentTimeMillis() >= batchRejectedUntil;
+        }
+
+        public boolean supportsBinary() {
+            return System.currentTimeMillis() >= binaryRejectedUntil;
+        }
+
+        /** The member answered the batch url with "not supported"; use single-series calls until the next probe. */
+        public void batchRejected(int status) {
+            log.warn("Forecast endpoint {} does not support batching (status={}), single-series calls for {}ms", batchUrl, status, capabilityReprobeMs);
+            batchRejectedUntil = System.currentTimeMillis() + Math.max(0, capabilityReprobeMs);
+        }
+
+        /** The member rejected the binary wire format; use JSON until the next probe. */
+        public void binaryRejected() {
+            log.warn("Forecast endpoint {} does not accept {}, JSON for {}ms", url, ForecastWireCodec.MEDIA_TYPE, capabilityReprobeMs);
+            binaryRejectedUntil = System.currentTimeMillis() + Math.max(0, capabilityReprobeMs);
+        }
+
+        boolean isAvailable(boolean batch) {
+            return healthy && forecastClient.circuitState(batch ? batchUrl : url) != ForecastClient.CircuitState.OPEN;
+        }
+
+        /** Runs a call against this member, counting it as outstanding until the future completes. */
+        public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+            outstanding.incrementAndGet();
+            CompletableFuture<T> f;
+            try {
+                f = call.get();
+            } catch (RuntimeException e) {
+                outstanding.decrementAndGet();
+                throw e;
+            }
+            return f.whenComplete((r, e) -> outstanding.decrementAndGet());
+        }
+
+        URI healthUri(String path) {
+            try {
+                URI u = URI.create(url);
+                return new URI(u.getScheme(), u.getRawAuthority(), path.startsWith("/") ? path : "/" + path, null, null);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
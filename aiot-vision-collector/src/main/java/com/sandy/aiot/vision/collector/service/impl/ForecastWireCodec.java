@@ -0,0 +1,123 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Binary wire format of the forecast service ({@value #MEDIA_TYPE}), used for both single and batch calls.
+ * All fields are little-endian:
+ * <pre>
+ * magic "AVF1" (4 bytes) | prediction_length (int32, 0 in responses) | series count S (int32)
+ * S x [deviceId (int64) | tagId (int64) | point count (int32)]
+ * zero padding to a multiple of 8
+ * float64 values of all series, back to back (NaN for missing values)
+ * </pre>
+ * Encoding writes straight into the array that is sent; decoding returns list views over the received array.
+ */
+public final class ForecastWireCodec {
+
+    public static final String MEDIA_TYPE = "application/x-avc-forecast";
+    private static final int MAGIC = 0x31465641; // "AVF1" read as little-endian int32
+    private static final int HEADER_BYTES = 12;
+    private static final int SERIES_HEADER_BYTES = 20;
+
+    private ForecastWireCodec() {
+    }
+
+    /** Request or response: series.get(i) belongs to keys.get(i). */
+    public record Frame(int predictionLength, List<DeviceTagKey> keys, List<List<Double>> series) {
+    }
+
+    public static byte[] encode(Frame frame) {
+        int count = frame.keys().size();
+        if (frame.series().size() != count) throw new IllegalArgumentException("keys and series differ in size");
+        long points = 0;
+        for (List<Double> s : frame.series()) points += s.size();
+        long total = valuesOffset(count) + points * Double.BYTES;
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Forecast payload too large: " + total + " bytes");
+        ByteBuffer buf = ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(frame.predictionLength()).putInt(count);
+        for (int i = 0; i < count; i++) {
+            DeviceTagKey key = frame.keys().get(i);
+            buf.putLong(key.deviceId()).putLong(key.tagId()).putInt(frame.series().get(i).size());
+        }
+        buf.position(valuesOffset(count));
+        DoubleBuffer values = buf.asDoubleBuffer();
+        for (List<Double> s : frame.series()) {
+            for (Double v : s) values.put(v == null ? Double.NaN : v);
+        }
+        return buf.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException when the body is not a well-formed frame
+     */
+    public static Frame decode(byte[] body) {
+        ByteBuffer buf = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buf.getInt() != MAGIC) throw new IllegalArgumentException("Not a forecast frame");
+            int predictionLength = buf.getInt();
+            int count = buf.getInt();
+            if (count < 0 || (long) count * SERIES_HEADER_BYTES > buf.remaining()) throw new IllegalArgumentException("Bad series count " + count);
+            List<DeviceTagKey> keys = new ArrayList<>(count);
+            int[] lengths = new int[count];
+            long points = 0;
+            for (int i = 0; i < count; i++) {
+                keys.add(new DeviceTagKey(buf.getLong(), buf.getLong()));
+                lengths[i] = buf.getInt();
+                if (lengths[i] < 0) throw new IllegalArgumentException("Bad point count " + lengths[i]);
+                points += lengths[i];
+            }
+            int offset = valuesOffset(count);
+            if (offset + points * Double.BYTES > body.length) throw new IllegalArgumentException("Truncated forecast frame");
+            buf.position(offset);
+            DoubleBuffer values = buf.asDoubleBuffer();
+            List<List<Double>> series = new ArrayList<>(count);
+            int start = 0;
+            for (int len : lengths) {
+                series.add(new DoubleView(values, start, len));
+                start += len;
+            }
+            return new Frame(predictionLength, keys, series);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated forecast frame", e);
+        }
+    }
+
+    private static int valuesOffset(int count) {
+        int header = HEADER_BYTES + count * SERIES_HEADER_BYTES;
+        return (header + 7) & ~7;
+    }
+
+    // 只读视图, 读取时才装箱单个元素
+    private static final class DoubleView extends AbstractList<Double> implements RandomAccess {
+        private final DoubleBuffer values;
+        private final int start;
+        private final int size;
+
+        DoubleView(DoubleBuffer values, int start, int size) {
+            this.values = values;
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public Double get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            return values.get(start + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process forecasting with exponential smoothing (EWMA / Holt linear trend / additive Holt-Winters).
+ * Model state is kept per tag and only advanced with observations newer than the last one consumed, so repeated
+ * forecasts over an overlapping history window cost O(new points) instead of a full refit.
+ */
+@Component
+@Slf4j
+public class LocalForecastEngine {
+
+    public enum Model {
+        EWMA, HOLT, HOLT_WINTERS;
+
+        /** "ewma" / "holt" / "holt-winters" (case-insensitive); null for anything else (e.g. "remote"). */
+        public static Model parse(String name) {
+            if (name == null) return null;
+            return switch (name.trim().toLowerCase(Locale.ROOT)) {
+                case "ewma" -> EWMA;
+                case "holt" -> HOLT;
+                case "holt-winters", "holt_winters" -> HOLT_WINTERS;
+                default -> null;
+            };
+        }
+    }
+
+    @Value("${predict.local.alpha:0.3}")
+    private double alpha; // level smoothing
+    @Value("${predict.local.beta:0.1}")
+    private double beta; // trend smoothing
+    @Value("${predict.local.gamma:0.1}")
+    private double gamma; // seasonal smoothing
+    @Value("${predict.local.max-period:288}")
+    private int maxPeriod; // 季节周期探测的最大滞后
+    @Value("${predict.local.min-seasonal-acf:0.3}")
+    private double minSeasonalAcf; // 自相关低于该值视为无季节性, Holt-Winters 退化为 Holt
+
+    private final Map<DeviceTagKey, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * Forecasts {@code horizon} steps after the last observation. {@code values}/{@code timestamps} are in ascending
+     * time order; null and NaN values are skipped. Without any usable value the forecast is all zeros.
+     */
+    public List<Double> forecast(DeviceTagKey key, Model model, List<Double> values, List<LocalDateTime> timestamps, int horizon) {
+        State state = states.compute(key, (k, current) -> advance(current, model, values, timestamps));
+        List<Double> result = new ArrayList<>(horizon);
+        if (state == null) {
+            for (int h = 0; h < horizon; h++) result.add(0d);
+            return result;
+        }
+        synchronized (state) {
+            for (int h = 1; h <= horizon; h++) result.add(state.forecast(h));
+        }
+        return result;
+    }
+
+    /** Drops the state of a tag (e.g. after its model changed or the tag was removed). */
+    public void evict(DeviceTagKey key) {
+        states.remove(key);
+    }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        event.keys().forEach(this::evict);
+    }
+
+    private State advance(State current, Model model, List<Double> values, List<LocalDateTime> timestamps) {
+        int n = values == null ? 0 : values.size();
+        boolean timed = timestamps != null && timestamps.size() == n;
+        if (current != null && current.model == model && timed && n > 0) {
+            // 只消费比上次更新更新的观测值
+            int from = n;
+            while (from > 0 && toMillis(timestamps.get(from - 1)) > current.lastMillis) from--;
+            if (from > 0) {
+                synchronized (current) {
+                    for (int i = from; i < n; i++) {
+                        Double v = values.get(i);
+                        if (usable(v)) current.update(v, alpha, beta, gamma);
+                    }
+                    if (from < n) current.lastMillis = toMillis(timestamps.get(n - 1));
+                }
+                return current;
+            }
+        }
+        double[] xs = values == null ? new double[0] : values.stream().filter(LocalForecastEngine::usable).mapToDouble(Double::doubleValue).toArray();
+        if (xs.length == 0) return null;
+        State fresh = fit(model, xs);
+        fresh.lastMillis = timed && n > 0 ? toMillis(timestamps.get(n - 1)) : Long.MIN_VALUE;
+        return fresh;
+    }
+
+    // 增量与全量拟合使用同一过滤规则
+    private static boolean usable(Double v) {
+        return v != null && !Double.isNaN(v);
+    }
+
+    private State fit(Model model, double[] xs) {
+        int period = model == Model.HOLT_WINTERS ? detectPeriod(xs) : 0;
+        Model effective = model == Model.HOLT_WINTERS && period == 0 ? Model.HOLT : model;
+        State s = new State(model, effective, period);
+        int start;
+        if (effective == Model.HOLT_WINTERS) {
+            double first = mean(xs, 0, period);
+            double second = mean(xs, period, 2 * period);
+            s.level = first;
+            s.trend = (second - first) / period;
+            for (int i = 0; i < period; i++) s.season[i] = xs[i] - first;
+            s.count = period;
+            start = period;
+        } else {
+            s.level = xs[0];
+            s.trend = effective == Model.HOLT && xs.length > 1 ? xs[1] - xs[0] : 0d;
+            s.count = 1;
+            start = 1;
+        }
+        for (int i = start; i < xs.length; i++) s.update(xs[i], alpha, beta, gamma);
+        if (log.isDebugEnabled()) log.debug("Fitted local model={} effective={} period={} points={}", model, effective, period, xs.length);
+        return s;
+    }
+
+    /**
+     * Seasonal period by autocorrelation: the lag in [2, min(maxPeriod, n/2)] with the highest ACF that is also a local
+     * peak; 0 when no lag reaches min-seasonal-acf or the history is shorter than two periods.
+     */
+    int detectPeriod(double[] xs) {
+        int n = xs.length;
+        int maxLag = Math.min(maxPeriod, n / 2);
+        if (maxLag < 2) return 0;
+        double mean = mean(xs, 0, n);
+        double var = 0;
+        for (double x : xs) var += (x - mean) * (x - mean);
+        if (var == 0) return 0;
+        double[] acf = new double[maxLag + 2];
+        for (int lag = 1; lag <= Math.min(maxLag + 1, n - 1); lag++) {
+            double c = 0;
+            for (int i = lag; i < n; i++) c += (xs[i] - mean) * (xs[i - lag] - mean);
+            acf[lag] = c / var;
+        }
+        int best = 0;
+        double bestAcf = minSeasonalAcf;
+        for (int lag = 2; lag <= maxLag; lag++) {
+            boolean peak = acf[lag] >= acf[lag - 1] && acf[lag] >= acf[lag + 1];
+            if (peak && acf[lag] > bestAcf) {
+                bestAcf = acf[lag];
+                best = lag;
+            }
+        }
+        return best;
+    }
+
+    private static double mean(double[] xs, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += xs[i];
+        return to > from ? sum / (to - from) : 0d;
+    }
+
+    private static long toMillis(LocalDateTime ts) {
+        return ts == null ? Long.MIN_VALUE : ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    // 单个标签的平滑状态
+    private static final class State {
+        final Model model;      // 请求的模型 (用于判断是否需要重建)
+        final Model effective;  // 实际使用的模型 (无季节性时 Holt-Winters 退化为 Holt)
+        final double[] season;
+        double level;
+        double trend;
+        long count;
+        long lastMillis;
+
+        State(Model model, Model effective, int period) {
+            this.model = model;
+            this.effective = effective;
+            this.season = new double[effective == Model.HOLT_WINTERS ? period : 0];
+        }
+
+        void update(double x, double alpha, double beta, double gamma) {
+            switch (effective) {
+                case EWMA -> level = alpha * x + (1 - alpha) * level;
+                case HOLT -> {
+                    double prev = level;
+                    level = alpha * x + (1 - alpha) * (level + trend);
+                    trend = beta * (level - prev) + (1 - beta) * trend;
+                }
+                case HOLT_WINTERS -> {
+                    int idx = (int) (count % season.length);
+                    double prev = level;
+                    level = alpha * (x - season[idx]) + (1 - alpha) * (level + trend);
+                    trend = beta * (level - prev) + (1 - beta) * trend;
+                    season[idx] = gamma * (x - level) + (1 - gamma) * season[idx];
+                }
+            }
+            count++;
+        }
+
+        double forecast(int h) {
+            return switch (effective) {
+                case EWMA -> level;
+                case HOLT -> level + h * trend;
+                case HOLT_WINTERS -> level + h * trend + season[(int) ((count + h - 1) % season.length)];
+            };
+        }
+    }
+}
@@ -1,28 +1,40 @@
 package com.sandy.aiot.vision.collector.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sandy.aiot.vision.collector.entity.DataRecord;
 import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
 import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
 import com.sandy.aiot.vision.collector.service.DataStorageService;
 import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
 import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
 import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO.PredictionPoint;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Implementation of the PredictService interface for performing time series predictions.
@@ -35,22 +47,153 @@ public class PredictServiceImpl implements PredictService {
     private final DeviceRepository deviceRepository;
     private final DataStorageService dataStorageService;
     private final ObjectMapper objectMapper;
+    private final ForecastClient forecastClient;
+    private final TagRepository tagRepository;
+    private final LocalForecastEngine localForecastEngine;
+    private final PredictionInputWindows inputWindows;
+    private final ForecastEndpointPools endpointPools;
 
     @Value("${predict.api.url}")
-    private String predictApiUrl;
+    private String predictApiUrl; // 逗号分隔多个副本时组成默认端点池
     @Value("${predict.api.prediction-length}")
     private int defaultPredictionLength;
     @Value("${predict.api.history-length}")
     private int historyFetchLength;
+    @Value("${predict.api.batch-url:}")
+    private String predictBatchUrl; // 为空则只走单序列接口
+    @Value("${predict.api.batch-size:64}")
+    private int batchSize;
+    @Value("${predict.api.wire-format:json}")
+    private String wireFormat; // json / binary (小端 float64 帧, 服务端返回 415 时自动退回 JSON)
+    @Value("${predict.local.default-model:remote}")
+    private String defaultModel; // 标签未指定 forecastModel 时使用: remote / ewma / holt / holt-winters
+    @Value("${predict.local.fallback-model:last}")
+    private String fallbackModel; // 远程预测失败时的本地模型, last 表示重复最后一个值
+    @Value("${predict.history.threads:2}")
+    private int historyThreads;
+    @Value("${predict.history.max-queued:1000}")
+    private int historyMaxQueued; // <=0 不限制
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // 历史加载 (标签/设备查询与存储读取) 在此执行, 调用方 (预取调度/预警扫描/请求线程) 只拿到 future
+    private ExecutorService historyLoader;
+
+    // 批量接口返回这些状态码时视为该端点不支持批量, 一段时间内对其改为单序列调用
+    private static final Set<Integer> BATCH_UNSUPPORTED = Set.of(404, 405, 415, 501);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(1, historyThreads);
+        BlockingQueue<Runnable> queue = historyMaxQueued > 0 ? new ArrayBlockingQueue<>(historyMaxQueued) : new LinkedBlockingQueue<>();
+        historyLoader = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+            Thread t = new Thread(r, "prediction-history-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (historyLoader != null) historyLoader.shutdownNow();
+    }
 
     @Override
-    public TimeSeriesDataModelVO predict(Long deviceId, Long tagId) {
-        Device device = deviceRepository.findById(deviceId)
-                .orElseThrow(() -> new IllegalArgumentException("Device[deviceId=" + deviceId + "] not found"));
-        int fetch = historyFetchLength > 0 ? historyFetchLength : 200;
-        List<DataRecord> dataRecords = dataStorageService.findTopN(device.getId(), tagId, fetch);
+    public CompletableFuture<TimeSeriesDataModelVO> predictAsync(Long deviceId, Long tagId) {
+        return loadAsync(() -> {
+            Device device = deviceRepository.findById(deviceId)
+                    .orElseThrow(() -> new IllegalArgumentException("Device[deviceId=" + deviceId + "] not found"));
+            return loadHistory(new DeviceTagKey(device.getId(), tagId), tagRepository.findById(tagId).orElse(null));
+        }).thenCompose(history -> {
+            if (history.localModel() != null) return CompletableFuture.completedFuture(toVO(history, localPredict(history, history.localModel())));
+            return doPredict(history).thenApply(predictions -> toVO(history, predictions));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<DeviceTagKey, TimeSeriesDataModelVO>> predictBatchAsync(Collection<DeviceTagKey> keys) {
+        if (keys == null || keys.isEmpty()) return CompletableFuture.completedFuture(new LinkedHashMap<>());
+        List<DeviceTagKey> requested = new ArrayList<>(keys);
+        return loadAsync(() -> loadHistories(requested)).thenCompose(this::predictLoaded);
+    }
+
+    // 队列已满时返回失败的 future, 由调用方按预测失败处理
+    private <T> CompletableFuture<T> loadAsync(Supplier<T> loader) {
+        try {
+            return CompletableFuture.supplyAsync(loader, historyLoader);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Map<DeviceTagKey, History> loadHistories(Collection<DeviceTagKey> keys) {
+        Map<Long, Boolean> deviceExists = new HashMap<>();
+        Map<Long, Tag> tags = new HashMap<>();
+        tagRepository.findAllById(keys.stream().map(DeviceTagKey::tagId).collect(Collectors.toSet())).forEach(t -> tags.put(t.getId(), t));
+        Map<DeviceTagKey, History> histories = new LinkedHashMap<>();
+        for (DeviceTagKey key : keys) {
+            if (histories.containsKey(key)) continue;
+            if (!deviceExists.computeIfAbsent(key.deviceId(), deviceRepository::existsById)) {
+                log.debug("Skip batch prediction for missing device deviceId={} tagId={}", key.deviceId(), key.tagId());
+                continue;
+            }
+            histories.put(key, loadHistory(key, tags.get(key.tagId())));
+        }
+        return histories;
+    }
+
+    private CompletableFuture<Map<DeviceTagKey, TimeSeriesDataModelVO>> predictLoaded(Map<DeviceTagKey, History> histories) {
+        Map<DeviceTagKey, CompletableFuture<List<Double>>> futures = new LinkedHashMap<>();
+        List<DeviceTagKey> pending = new ArrayList<>();
+        for (Map.Entry<DeviceTagKey, History> e : histories.entrySet()) {
+            DeviceTagKey key = e.getKey();
+            History history = e.getValue();
+            // 本地模型直接在进程内预测, 只有远程模型的序列进入批量请求
+            if (history.localModel() != null) futures.put(key, CompletableFuture.completedFuture(localPredict(history, history.localModel())));
+            else pending.add(key);
+        }
+        // 按端点池分组, 一个批量请求只发往一个池
+        Map<ForecastEndpointPools.Pool, List<DeviceTagKey>> byPool = new LinkedHashMap<>();
+        for (DeviceTagKey key : pending) byPool.computeIfAbsent(pool(histories.get(key)), p -> new ArrayList<>()).add(key);
+        int size = batchSize > 0 ? batchSize : 64;
+        byPool.forEach((pool, poolKeys) -> {
+            for (int from = 0; from < poolKeys.size(); from += size) {
+                List<DeviceTagKey> chunk = poolKeys.subList(from, Math.min(from + size, poolKeys.size()));
+                CompletableFuture<Map<DeviceTagKey, List<Double>>> batch = isBatchAvailable(pool)
+                        ? doPredictBatch(pool, chunk, histories) : CompletableFuture.completedFuture(null);
+                for (DeviceTagKey key : chunk) {
+                    // 服务端不支持批量时逐条调用单序列接口
+                    futures.put(key, batch.thenCompose(predictions -> predictions == null
+                            ? doPredict(histories.get(key))
+                            : CompletableFuture.completedFuture(predictions.get(key))));
+                }
+            }
+        });
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<DeviceTagKey, TimeSeriesDataModelVO> result = new LinkedHashMap<>();
+            futures.forEach((key, f) -> result.put(key, toVO(histories.get(key), f.join())));
+            return result;
+        });
+    }
+
+    private History loadHistory(DeviceTagKey key, Tag tag) {
+        String model = tag != null && tag.getForecastModel() != null && !tag.getForecastModel().isBlank() ? tag.getForecastModel() : defaultModel;
+        LocalForecastEngine.Model localModel = LocalForecastEngine.Model.parse(model);
+        String pool = tag != null ? tag.getForecastPool() : null;
+        // 优先使用由采集事件增量维护的输入窗口, 只有首次 (或窗口过期) 才查询存储
+        PredictionInputWindows.Input input = inputWindows.read(key);
+        if (input == null) {
+            int fetch = historyFetchLength > 0 ? historyFetchLength : 200;
+            List<DataRecord> dataRecords = dataStorageService.findTopN(key.deviceId(), key.tagId(), fetch);
+            input = inputWindows.seed(key, dataRecords);
+            if (input == null) return rawHistory(key, localModel, pool, dataRecords);
+        }
+        List<Double> values = new ArrayList<>(input.values().size());
+        for (Object v : input.values()) values.add(toDouble(v));
+        return new History(key, localModel, pool, values, input.timestamps());
+    }
+
+    // 窗口不可用时 (predict.window.enabled=false) 直接使用原始采样
+    private History rawHistory(DeviceTagKey key, LocalForecastEngine.Model localModel, String pool, List<DataRecord> dataRecords) {
         List<Double> recentValues = new ArrayList<>(dataRecords.size());
         List<LocalDateTime> recentTimestamps = new ArrayList<>(dataRecords.size());
         for (DataRecord dataRecord : dataRecords) {
@@ -59,14 +202,33 @@ public class PredictServiceImpl implements PredictService {
         }
         Collections.reverse(recentValues);
         Collections.reverse(recentTimestamps);
-        List<Double> predictions = doPredict(recentValues);
-        List<PredictionPoint> points = buildPredictionPoints(recentTimestamps, predictions);
+        return new History(key, localModel, pool, recentValues, recentTimestamps);
+    }
+
+    private TimeSeriesDataModelVO toVO(History history, List<Double> predictions) {
         TimeSeriesDataModelVO vo = new TimeSeriesDataModelVO();
-        vo.setTimestamps(recentTimestamps);
-        vo.setPredictionPoints(points);
+        vo.setTimestamps(history.timestamps());
+        vo.setPredictionPoints(buildPredictionPoints(history.timestamps(), predictions));
         return vo;
     }
 
+    private boolean isBatchAvailable(ForecastEndpointPools.Pool pool) {
+        return pool.hasBatch();
+    }
+
+    private ForecastEndpointPools.Pool pool(History history) {
+        return endpointPools.resolve(history.pool(), predictApiUrl, predictBatchUrl);
+    }
+
+    // 历史序列 (按时间升序); localModel 为 null 表示走远程预测服务, pool 为标签指定的端点池 (null 为默认池)
+    private record History(DeviceTagKey key, LocalForecastEngine.Model localModel, String pool, List<Double> values, List<LocalDateTime> timestamps) {}
+
+    private List<Double> localPredict(History history, LocalForecastEngine.Model model) {
+        if (history.values().isEmpty()) return Collections.emptyList();
+        int predictionLength = defaultPredictionLength > 0 ? defaultPredictionLength : 60;
+        return localForecastEngine.forecast(history.key(), model, history.values(), history.timestamps(), predictionLength);
+    }
+
     /**
      * Converts an object to a float value, handling various types and edge cases.
      */
@@ -184,60 +346,251 @@ public class PredictServiceImpl implements PredictService {
     }
 
     /**
-     * Performs prediction by calling an external API or falling back to a simple strategy.
+     * Performs prediction by calling an external API or falling back to a simple strategy. Never completes exceptionally.
      */
-    private List<Double> doPredict(List<Double> recentValues) {
+    private CompletableFuture<List<Double>> doPredict(History history) {
+        List<Double> recentValues = history.values();
         if (recentValues == null || recentValues.isEmpty()) {
             log.warn("recentValues is empty, returning empty predictions");
-            return Collections.emptyList();
+            return CompletableFuture.completedFuture(Collections.emptyList());
         }
         int predictionLength = defaultPredictionLength > 0 ? defaultPredictionLength : 60;
+        ForecastEndpointPools.Member member = pool(history).choose(false);
+        if (member == null) return CompletableFuture.completedFuture(fallbackPredict(history, predictionLength));
+        if (isBinaryWire(member)) {
+            DeviceTagKey key = history.key();
+            return member.call(() -> exchangeBinary(member, member.url(), List.of(key), Map.of(key, history), predictionLength)).thenCompose(answer -> {
+                if (answer.status() == 415) return doPredict(history); // 该端点已切换为 JSON
+                List<Double> predictions = answer.predictions().get(key);
+                return CompletableFuture.completedFuture(predictions != null ? predictions : fallbackPredict(history, predictionLength));
+            });
+        }
         Map<String, Object> body = new HashMap<>();
         body.put("data", recentValues);
         body.put("prediction_length", predictionLength);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        String json;
         try {
-            String json = objectMapper.writeValueAsString(body);
-            HttpEntity<String> entity = new HttpEntity<>(json, headers);
-            long start = System.currentTimeMillis();
-            ResponseEntity<String> resp = restTemplate.postForEntity(predictApiUrl, entity, String.class);
+            json = objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(fallbackPredict(history, predictionLength));
+        }
+        long start = System.currentTimeMillis();
+        return member.call(() -> forecastClient.postJson(member.url(), json)).handle((resp, err) -> {
+            if (err != null) {
+                logCallFailure("prediction service", err);
+                return fallbackPredict(history, predictionLength);
+            }
             long cost = System.currentTimeMillis() - start;
-            if (!resp.getStatusCode().is2xxSuccessful() || resp.getBody() == null) {
-                log.warn("Prediction service returned non-success status: status={} body={}", resp.getStatusCode(), resp.getBody());
-                return fallbackPredict(recentValues, predictionLength);
+            if (!resp.isSuccess() || resp.body() == null) {
+                log.warn("Prediction service returned non-success status: status={} body={}", resp.status(), resp.body());
+                return fallbackPredict(history, predictionLength);
+            }
+            try {
+                Map<String, Object> map = objectMapper.readValue(resp.body(), new TypeReference<>() {});
+                List<Double> predictions = toDoubleList(map.get("predictions"));
+                if (predictions.size() != predictionLength) {
+                    log.warn("Prediction count {} does not match expected {} , using fallback strategy", predictions.size(), predictionLength);
+                    return fallbackPredict(history, predictionLength);
+                }
+                log.info("Successfully called prediction service, cost={}ms, histSize={}, predSize={}", cost, recentValues.size(), predictions.size());
+                return predictions;
+            } catch (Exception e) {
+                log.error("Failed to parse prediction results: {}", e.getMessage());
+                return fallbackPredict(history, predictionLength);
+            }
+        });
+    }
+
+    /**
+     * One POST for a chunk of series: {"series":[{"id":"d:t","data":[...]}],"prediction_length":n}
+     * -> {"results":[{"id":"d:t","predictions":[...]}]}. Completes with null when the server does not support batching
+     * (the caller then falls back to single-series calls); series missing from the response use the fallback strategy.
+     */
+    private CompletableFuture<Map<DeviceTagKey, List<Double>>> doPredictBatch(ForecastEndpointPools.Pool pool, List<DeviceTagKey> chunk,
+                                                                          Map<DeviceTagKey, History> histories) {
+        int predictionLength = defaultPredictionLength > 0 ? defaultPredictionLength : 60;
+        Map<DeviceTagKey, List<Double>> result = new HashMap<>(chunk.size() * 2);
+        Map<String, DeviceTagKey> byId = new HashMap<>(chunk.size() * 2);
+        List<Map<String, Object>> series = new ArrayList<>(chunk.size());
+        for (DeviceTagKey key : chunk) {
+            List<Double> values = histories.get(key).values();
+            if (values.isEmpty()) {
+                result.put(key, Collections.emptyList());
+                continue;
             }
-            Map<String, Object> map = objectMapper.readValue(resp.getBody(), new TypeReference<>() {});
-            Object predsObj = map.get("predictions");
-            List<Double> predictions = new ArrayList<>();
-            if (predsObj instanceof List<?> list) {
-                for (Object v : list) {
-                    if (v instanceof Number n) predictions.add(n.doubleValue());
-                    else if (v != null) try {
-                        predictions.add(Double.parseDouble(v.toString()));
-                    } catch (NumberFormatException ignored) {
+            String id = key.deviceId() + ":" + key.tagId();
+            byId.put(id, key);
+            series.add(Map.of("id", id, "data", values));
+        }
+        if (series.isEmpty()) return CompletableFuture.completedFuture(result);
+        ForecastEndpointPools.Member member = pool.choose(true);
+        if (member == null) return CompletableFuture.completedFuture(null);
+        if (isBinaryWire(member)) {
+            List<DeviceTagKey> keys = new ArrayList<>(byId.values());
+            return member.call(() -> exchangeBinary(member, member.batchUrl(), keys, histories, predictionLength)).thenCompose(answer -> {
+                if (answer.status() == 415) return doPredictBatch(pool, chunk, histories); // 该端点已切换为 JSON
+                if (BATCH_UNSUPPORTED.contains(answer.status())) {
+                    member.batchRejected(answer.status());
+                    return CompletableFuture.completedFuture(null);
+                }
+                result.putAll(answer.predictions());
+                for (DeviceTagKey key : byId.values()) {
+                    result.computeIfAbsent(key, k -> fallbackPredict(histories.get(k), predictionLength));
+                }
+                return CompletableFuture.completedFuture(result);
+            });
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("series", series);
+        body.put("prediction_length", predictionLength);
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.currentTimeMillis();
+        return member.call(() -> forecastClient.postJson(member.batchUrl(), json)).handle((resp, err) -> {
+            if (err != null) {
+                logCallFailure("batch prediction service", err);
+            } else if (BATCH_UNSUPPORTED.contains(resp.status())) {
+                member.batchRejected(resp.status());
+                return null;
+            } else if (resp.isSuccess() && resp.body() != null) {
+                try {
+                    Map<String, Object> map = objectMapper.readValue(resp.body(), new TypeReference<>() {});
+                    if (map.get("results") instanceof List<?> results) {
+                        for (Object o : results) {
+                            if (!(o instanceof Map<?, ?> item)) continue;
+                            DeviceTagKey key = byId.get(String.valueOf(item.get("id")));
+                            List<Double> predictions = toDoubleList(item.get("predictions"));
+                            if (key != null && predictions.size() == predictionLength) result.put(key, predictions);
+                        }
                     }
+                    log.info("Successfully called batch prediction service, cost={}ms, series={}, answered={}",
+                            System.currentTimeMillis() - start, series.size(), result.size());
+                } catch (Exception e) {
+                    log.error("Failed to parse batch prediction results: {}", e.getMessage());
                 }
+            } else {
+                log.warn("Batch prediction service returned non-success status: status={}", resp.status());
             }
-            if (predictions.size() != predictionLength) {
-                log.warn("Prediction count {} does not match expected {} , using fallback strategy", predictions.size(), predictionLength);
-                return fallbackPredict(recentValues, predictionLength);
+            for (DeviceTagKey key : byId.values()) {
+                result.computeIfAbsent(key, k -> fallbackPredict(histories.get(k), predictionLength));
             }
-            log.info("Successfully called prediction service, cost={}ms, histSize={}, predSize={}", cost, recentValues.size(), predictions.size());
-            return predictions;
-        } catch (RestClientException e) {
-            log.error("Failed to call prediction service: {}", e.getMessage());
-            return fallbackPredict(recentValues, predictionLength);
-        } catch (Exception e) {
-            log.error("Failed to parse prediction results: {}", e.getMessage());
-            return fallbackPredict(recentValues, predictionLength);
+            return result;
+        });
+    }
+
+    private boolean isBinaryWire(ForecastEndpointPools.Member member) {
+        return "binary".equalsIgnoreCase(wireFormat) && member.supportsBinary();
+    }
+
+    /**
+     * Posts the series as a {@link ForecastWireCodec} frame. The reply may be a binary frame or JSON (single or batch
+     * shape), chosen by its Content-Type. A 415 turns the binary format off for this member (until the next probe) so
+     * the caller can retry with JSON. Only series with exactly predictionLength values are returned; never completes exceptionally
+     * (status -1 on transport errors).
+     */
+    private CompletableFuture<WireAnswer> exchangeBinary(ForecastEndpointPools.Member member, String url, List<DeviceTagKey> keys, Map<DeviceTagKey, History> histories, int predictionLength) {
+        List<List<Double>> series = new ArrayList<>(keys.size());
+        for (DeviceTagKey key : keys) series.add(histories.get(key).values());
+        byte[] payload;
+        try {
+            payload = ForecastWireCodec.encode(new ForecastWireCodec.Frame(predictionLength, keys, series));
+        } catch (IllegalArgumentException e) {
+            log.error("Failed to encode prediction request: {}", e.getMessage());
+            return CompletableFuture.completedFuture(new WireAnswer(-1, Map.of()));
+        }
+        long start = System.currentTimeMillis();
+        return forecastClient.postBinary(url, payload, ForecastWireCodec.MEDIA_TYPE).handle((resp, err) -> {
+            if (err != null) {
+                logCallFailure("prediction service", err);
+                return new WireAnswer(-1, Map.of());
+            }
+            if (resp.status() == 415) {
+                member.binaryRejected();
+                return new WireAnswer(415, Map.of());
+            }
+            Map<DeviceTagKey, List<Double>> answered = new HashMap<>(keys.size() * 2);
+            if (!resp.isSuccess() || resp.body() == null) {
+                log.warn("Prediction service returned non-success status: status={}", resp.status());
+                return new WireAnswer(resp.status(), answered);
+            }
+            try {
+                if (ForecastWireCodec.MEDIA_TYPE.equals(resp.mediaType())) {
+                    ForecastWireCodec.Frame frame = ForecastWireCodec.decode(resp.body());
+                    for (int i = 0; i < frame.keys().size(); i++) answered.put(frame.keys().get(i), frame.series().get(i));
+                } else {
+                    Map<String, Object> map = objectMapper.readValue(resp.body(), new TypeReference<>() {});
+                    if (map.get("results") instanceof List<?> results) {
+                        Map<String, DeviceTagKey> byId = new HashMap<>(keys.size() * 2);
+                        for (DeviceTagKey key : keys) byId.put(key.deviceId() + ":" + key.tagId(), key);
+                        for (Object o : results) {
+                            if (!(o instanceof Map<?, ?> item)) continue;
+                            DeviceTagKey key = byId.get(String.valueOf(item.get("id")));
+                            if (key != null) answered.put(key, toDoubleList(item.get("predictions")));
+                        }
+                    } else if (keys.size() == 1) {
+                        answered.put(keys.get(0), toDoubleList(map.get("predictions")));
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Failed to parse prediction results: {}", e.getMessage());
+            }
+            answered.keySet().retainAll(keys);
+            answered.values().removeIf(p -> p.size() != predictionLength);
+            log.info("Successfully called prediction service, cost={}ms, format={}, series={}, answered={}",
+                    System.currentTimeMillis() - start, resp.mediaType(), keys.size(), answered.size());
+            return new WireAnswer(resp.status(), answered);
+        });
+    }
+
+    private record WireAnswer(int status, Map<DeviceTagKey, List<Double>> predictions) {}
+
+    // 熔断期间或排队已满时每次调用都会失败, 只记 debug (打开熔断时 ForecastClient 已告警, 拒绝数见端点统计)
+    private static void logCallFailure(String service, Throwable err) {
+        Throwable t = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+        if (t instanceof ForecastClient.CircuitOpenException || t instanceof RejectedExecutionException) {
+            log.debug("Skipped {} call: {}", service, t.getMessage());
+        } else {
+            log.error("Failed to call {}: {}", service, rootMessage(err));
         }
     }
 
+    private static String rootMessage(Throwable err) {
+        Throwable t = err;
+        while (t.getCause() != null && t != t.getCause()) t = t.getCause();
+        return t.getClass().getSimpleName() + (t.getMessage() == null ? "" : ": " + t.getMessage());
+    }
+
+    private List<Double> toDoubleList(Object predsObj) {
+        List<Double> predictions = new ArrayList<>();
+        if (predsObj instanceof List<?> list) {
+            for (Object v : list) {
+                if (v instanceof Number n) predictions.add(n.doubleValue());
+                else if (v != null) try {
+                    predictions.add(Double.parseDouble(v.toString()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return predictions;
+    }
+
     /**
-     * Fallback prediction strategy using the last value or average of recent values.
+     * Fallback when the prediction service fails: the configured local model, or (fallback-model=last) the last value
+     * / average of recent values.
      */
-    private List<Double> fallbackPredict(List<Double> recentValues, int predictionLength) {
+    private List<Double> fallbackPredict(History history, int predictionLength) {
+        LocalForecastEngine.Model model = LocalForecastEngine.Model.parse(fallbackModel);
+        if (model != null && !history.values().isEmpty()) {
+            return localForecastEngine.forecast(history.key(), model, history.values(), history.timestamps(), predictionLength);
+        }
+        return repeatLast(history.values(), predictionLength);
+    }
+
+    private List<Double> repeatLast(List<Double> recentValues, int predictionLength) {
         List<Double> fb = new ArrayList<>(predictionLength);
         Double fill;
         if (recentValues == null || recentValues.isEmpty()) fill = 0d;
@@ -0,0 +1,177 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.event.DataIngestedEvent;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-tag sliding input windows for the forecast path, resampled to a fixed step (last sample in a step wins, empty
+ * steps hold the previous value). A window is seeded once from storage on the first prediction of a tag and then
+ * appended from {@link DataIngestedEvent}, so later predictions need no history query.
+ */
+@Component
+@Slf4j
+public class PredictionInputWindows {
+
+    @Value("${predict.window.enabled:true}")
+    private boolean enabled;
+    @Value("${predict.window.step-ms:0}")
+    private long configuredStepMs; // <=0 表示按首次加载的历史推断步长
+    @Value("${predict.api.history-length}")
+    private int capacity;
+
+    private static final long DEFAULT_STEP_MS = 60_000L;
+
+    private final Map<DeviceTagKey, Window> windows = new ConcurrentHashMap<>();
+
+    /** Evenly spaced input, oldest first; values are the raw sample objects. */
+    public record Input(List<Object> values, List<LocalDateTime> timestamps) {}
+
+    /**
+     * Window content, or null when the tag has no window yet or its newest step is older than a full window
+     * (samples then arrived without passing through ingest, e.g. a bulk import) and it must be seeded again.
+     */
+    public Input read(DeviceTagKey key) {
+        if (!enabled) return null;
+        Window w = windows.get(key);
+        if (w == null) return null;
+        Input input = w.read(toMillis(LocalDateTime.now()));
+        if (input == null) windows.remove(key, w);
+        return input;
+    }
+
+    /**
+     * Builds the window of a tag from stored records (any order) and returns its content; null when disabled or no
+     * record has a value.
+     */
+    public Input seed(DeviceTagKey key, List<DataRecord> records) {
+        if (!enabled || capacity <= 0) return null;
+        long[] ts = new long[records.size()];
+        Object[] vs = new Object[records.size()];
+        int n = 0;
+        for (DataRecord r : records) {
+            if (r.getTimestamp() == null || r.getValue() == null) continue;
+            ts[n] = toMillis(r.getTimestamp());
+            vs[n++] = r.getValue();
+        }
+        if (n == 0) return null;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> ts[i]));
+        long step = configuredStepMs > 0 ? configuredStepMs : inferStep(ts, order);
+        if (step <= 0) return null;
+        Window w = new Window(step, capacity);
+        for (Integer i : order) w.append(ts[i], vs[i]);
+        windows.put(key, w);
+        log.debug("Seeded prediction input window deviceId={} tagId={} step={}ms records={}", key.deviceId(), key.tagId(), step, n);
+        return w.read(Long.MIN_VALUE);
+    }
+
+    public void evict(DeviceTagKey key) {
+        windows.remove(key);
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    @EventListener
+    public void onTagsRemoved(TagsRemovedEvent event) {
+        event.keys().forEach(windows::remove);
+    }
+
+    @EventListener
+    public void onIngest(DataIngestedEvent event) {
+        if (!enabled || windows.isEmpty()) return;
+        for (DataRecord r : event.records()) {
+            if (r.getTimestamp() == null || r.getValue() == null) continue;
+            Window w = windows.get(new DeviceTagKey(r.getDeviceId(), r.getTagId()));
+            if (w != null) w.append(toMillis(r.getTimestamp()), r.getValue());
+        }
+    }
+
+    // 相邻样本间隔的中位数; 大于 1 秒时取整到秒, 消除采集抖动
+    private static long inferStep(long[] ts, Integer[] order) {
+        if (order.length < 2) return DEFAULT_STEP_MS;
+        long[] diffs = new long[order.length - 1];
+        int m = 0;
+        for (int i = 1; i < order.length; i++) {
+            long d = ts[order[i]] - ts[order[i - 1]];
+            if (d > 0) diffs[m++] = d;
+        }
+        if (m == 0) return DEFAULT_STEP_MS;
+        Arrays.sort(diffs, 0, m);
+        long median = diffs[m / 2];
+        return median >= 1000 ? Math.max(1000, Math.round(median / 1000.0) * 1000) : median;
+    }
+
+    private static long toMillis(LocalDateTime ts) {
+        return ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    // 环形缓冲: 第 i 个槽位对应步 (lastBucket - size + 1 + i)
+    private static final class Window {
+        final long stepMillis;
+        final Object[] slots;
+        int head = -1; // 最新槽位
+        int size;
+        long lastBucket;
+
+        Window(long stepMillis, int capacity) {
+            this.stepMillis = stepMillis;
+            this.slots = new Object[capacity];
+        }
+
+        synchronized void append(long ts, Object value) {
+            long bucket = Math.floorDiv(ts, stepMillis);
+            if (size > 0) {
+                if (bucket < lastBucket) return; // 迟到的样本不回写
+                if (bucket == lastBucket) {
+                    slots[head] = value;
+                    return;
+                }
+                long gap = bucket - lastBucket - 1;
+                if (gap >= slots.length) {
+                    size = 0; // 中断超过整个窗口, 旧值已无意义
+                } else {
+                    Object hold = slots[head];
+                    for (long k = 0; k < gap; k++) push(hold);
+                }
+            }
+            push(value);
+            lastBucket = bucket;
+        }
+
+        private void push(Object value) {
+            head = (head + 1) % slots.length;
+            slots[head] = value;
+            if (size < slots.length) size++;
+        }
+
+        /** nowMillis = Long.MIN_VALUE skips the staleness check. */
+        synchronized Input read(long nowMillis) {
+            if (size == 0) return null;
+            long lastMillis = lastBucket * stepMillis;
+            if (nowMillis != Long.MIN_VALUE && nowMillis - lastMillis > stepMillis * slots.length) return null;
+            List<Object> values = new ArrayList<>(size);
+            List<LocalDateTime> timestamps = new ArrayList<>(size);
+            long first = lastBucket - size + 1;
+            for (int i = 0; i < size; i++) {
+                values.add(slots[Math.floorMod(head - size + 1 + i, slots.length)]);
+                timestamps.add(LocalDateTime.ofInstant(Instant.ofEpochMilli((first + i) * stepMillis), ZoneOffset.UTC));
+            }
+            return new Input(values, timestamps);
+        }
+    }
+}
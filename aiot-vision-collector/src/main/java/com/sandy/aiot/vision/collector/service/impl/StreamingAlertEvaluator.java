@@ -0,0 +1,134 @@
+package com.sandy.aiot.vision.collector.service.impl;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.event.DataIngestedEvent;
+import com.sandy.aiot.vision.collector.service.AlertWriter;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds ingested samples into alert evaluation without waiting for the next scan. The ingest thread queues samples per
+ * tag; a single worker drains them in order. Tags with only deviation rules keep just their newest sample, so a burst
+ * collapses to its latest value (the same value the scan would have looked at). Tags with rules on the raw value
+ * (threshold, rate of change, rolling stddev) queue every sample, up to {@code alert.streaming.max-samples-per-tag};
+ * beyond that the oldest samples are dropped and counted.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StreamingAlertEvaluator {
+
+    private final AlertScanService alertScanService;
+    private final AlertRuleEngine ruleEngine;
+    private final AlertWriter alertWriter;
+
+    @Value("${alert.streaming.max-samples-per-tag:1000}")
+    private int maxSamplesPerTag;
+
+    // 队列只在 compute 内修改; drain 先 remove 再独占读取
+    private final Map<DeviceTagKey, Deque<DataRecord>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private ExecutorService worker;
+
+    @PostConstruct
+    public void init() {
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "alert-stream");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) worker.shutdownNow();
+    }
+
+    @EventListener
+    public void onIngest(DataIngestedEvent event) {
+        if (!alertScanService.isStreamingActive()) return;
+        for (DataRecord r : event.records()) {
+            if (r.getTimestamp() == null || r.getValue() == null) continue;
+            AlertRuleEngine.TagRules rules = ruleEngine.rulesFor(r.getTagId());
+            if (rules == null) continue;
+            boolean everySample = rules.needsEverySample();
+            pending.compute(new DeviceTagKey(r.getDeviceId(), r.getTagId()), (k, q) -> {
+                Deque<DataRecord> samples = q != null ? q : new ArrayDeque<>();
+                if (!everySample) {
+                    DataRecord last = samples.peekLast();
+                    if (last != null && r.getTimestamp().isBefore(last.getTimestamp())) return samples;
+                    queued.addAndGet(1 - samples.size());
+                    samples.clear();
+                } else if (samples.size() >= Math.max(1, maxSamplesPerTag)) {
+                    samples.pollFirst();
+                    dropped.incrementAndGet();
+                } else {
+                    queued.incrementAndGet();
+                }
+                samples.addLast(r);
+                return samples;
+            });
+        }
+        if (!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            try {
+                worker.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false); // 关闭中
+            }
+        }
+    }
+
+    /** Samples waiting for evaluation. */
+    public int pendingSamples() {
+        return queued.get();
+    }
+
+    /** Samples of raw-value rule tags dropped because their queue was full. */
+    public long droppedSamples() {
+        return dropped.get();
+    }
+
+    /** Samples evaluated since startup. */
+    public long evaluatedSamples() {
+        return evaluated.get();
+    }
+
+    private void drain() {
+        // 先复位, 之后到达的样本会再提交一次 drain, 不会遗漏
+        drainScheduled.set(false);
+        for (DeviceTagKey key : pending.keySet()) {
+            Deque<DataRecord> samples = pending.remove(key);
+            if (samples == null) continue;
+            queued.addAndGet(-samples.size());
+            for (DataRecord r : samples) {
+                try {
+                    alertScanService.evaluateSample(r);
+                } catch (Exception e) {
+                    log.debug("Streaming alert evaluation failed deviceId={} tagId={} err={}", key.deviceId(), key.tagId(), e.getMessage());
+                }
+                evaluated.incrementAndGet();
+            }
+        }
+        alertWriter.flush(); // 本轮预警批量写入
+    }
+}
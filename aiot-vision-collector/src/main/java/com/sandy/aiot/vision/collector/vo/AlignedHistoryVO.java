@@ -0,0 +1,24 @@
+package com.sandy.aiot.vision.collector.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Columnar multi-tag history: one shared timestamp column and one value column per tag,
+ * values.get(i) belongs to tagIds.get(i) and is aligned with timestamps (null where the tag has no sample).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlignedHistoryVO {
+    private Long deviceId;
+    private List<Long> tagIds;
+    private List<String> tagNames;
+    private List<String> timestamps;
+    private List<List<Object>> values;
+}
@@ -0,0 +1,7 @@
+package com.sandy.aiot.vision.collector.vo;
+
+/**
+ * (deviceId, tagId) 组合键, 用于按标签缓存/批量预测.
+ */
+public record DeviceTagKey(Long deviceId, Long tagId) {
+}
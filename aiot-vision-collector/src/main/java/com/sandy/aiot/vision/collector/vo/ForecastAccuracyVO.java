@@ -0,0 +1,25 @@
+package com.sandy.aiot.vision.collector.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Streaming forecast error of one series (exponentially weighted over matched actual values).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ForecastAccuracyVO {
+    private Long deviceId;
+    private Long tagId;
+    private long samples;
+    private double mae;
+    private Double mape; // null 表示实际值全部为 0, 无法计算
+    private double bias; // 预测值 - 实际值, 正数表示预测偏高
+    private double errorRatio; // max(MAE, |bias|) / 平均 |实际值|, 用于调整刷新周期
+    private double refreshFactor; // < 1 提前刷新, > 1 延后刷新
+    private String lastUpdated;
+}
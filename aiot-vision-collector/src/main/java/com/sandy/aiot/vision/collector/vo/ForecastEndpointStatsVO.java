@@ -0,0 +1,31 @@
+package com.sandy.aiot.vision.collector.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Call statistics of one forecast endpoint since startup. Percentiles are bucket upper bounds.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ForecastEndpointStatsVO {
+    private String url;
+    private String circuit; // CLOSED / OPEN / HALF_OPEN
+    private long requests; // 实际发出的请求, 含对冲请求
+    private long errors; // 传输错误、超时和 5xx
+    private long timeouts;
+    private long shortCircuited; // 熔断期间直接拒绝的调用
+    private long rejected; // 本地排队已满而拒绝的调用
+    private long hedged;
+    private long p50Millis;
+    private long p95Millis;
+    private long p99Millis;
+    private long maxMillis;
+    private Map<String, Long> latencyBuckets; // le<毫秒> -> 次数, inf 为超过最大桶
+}
@@ -0,0 +1,34 @@
+package com.sandy.aiot.vision.collector.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Routing state of one forecast endpoint pool.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ForecastPoolVO {
+    private String name;
+    private List<MemberVO> members;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MemberVO {
+        private String url;
+        private String batchUrl;
+        private boolean healthy; // 最近一次健康检查结果
+        private String circuit;
+        private int outstanding; // 当前在途请求数
+        private boolean batchSupported; // 有批量地址且未被拒绝 (拒绝后按 capability-reprobe-ms 重新探测)
+        private boolean binarySupported; // 未拒绝二进制格式
+    }
+}
@@ -0,0 +1,44 @@
+package com.sandy.aiot.vision.collector.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Prediction cache memory accounting: totals plus the largest series.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredictionCacheStatsVO {
+    private int seriesCount;
+    private long totalPoints;
+    private long totalBytes;
+    private int queuedSeries;
+    private int maxSeries; // <=0 不限
+    private long maxBytes;
+    private long hits; // 预警取值命中容差内的预测点 / 页面查看时缓存未过期
+    private long misses;
+    private long evictedCapacity; // 超出序列数或字节上限淘汰
+    private long evictedExpired; // 超过 ttl 未读取
+    private long evictedRemoved; // 标签/设备已删除
+    private List<SeriesStats> largest;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SeriesStats {
+        private Long deviceId;
+        private Long tagId;
+        private int points;
+        private long bytes;
+        private String coverageStart;
+        private String coverageEnd;
+        private long stepMillis;
+    }
+}
@@ -14,6 +14,12 @@ import java.util.List;
 @AllArgsConstructor
 public class TimeSeriesDataModelRsp {
     private List<PredictionPointRsp> predictionPoints;
+    // 以下字段仅在由预测缓存返回时填充
+    private String coverageStart; // 缓存中该序列预测覆盖的起止时间
+    private String coverageEnd;
+    private Long ageMs; // 距上次刷新的毫秒数, 未知时为 null (如从快照恢复)
+    private Boolean stale; // 覆盖已结束或超过 maxAge
+    private Boolean refreshing; // 返回时后台刷新仍在进行
 
     @Data
     @NoArgsConstructor
@@ -60,6 +60,12 @@ public class AlertDuplicateSuppressionTest {
         predictionCacheService.putPredictionPoint(device.getId(), tag.getId(), ts, predicted);
     }
 
+    private void recover(LocalDateTime ts) {
+        storeActualAndPrediction(100, 100, ts);
+        alertScanService.scanOnce();
+        assertNotNull(alertRepository.findAll().get(0).getResolvedAt(), "first alert resolved");
+    }
+
     @Test
     void unackUnignoredAlertSuppressesDuplicate() {
         LocalDateTime ts = LocalDateTime.now().withNano(0);
@@ -82,6 +88,8 @@ public class AlertDuplicateSuppressionTest {
         first.setAcknowledged(true);
         first.setAcknowledgedAt(LocalDateTime.now());
         alertRepository.save(first);
+        // 恢复正常后预警自动解除, 下一次超限才是新的预警
+        recover(ts.plusSeconds(30));
         // new actual at later timestamp should create another
         LocalDateTime ts2 = ts.plusMinutes(1);
         storeActualAndPrediction(160, 100, ts2);
@@ -99,6 +107,7 @@ public class AlertDuplicateSuppressionTest {
         first.setIgnored(true);
         first.setIgnoredAt(LocalDateTime.now());
         alertRepository.save(first);
+        recover(ts.plusSeconds(30));
         // new actual triggers another
         LocalDateTime ts2 = ts.plusMinutes(2);
         storeActualAndPrediction(190, 100, ts2);
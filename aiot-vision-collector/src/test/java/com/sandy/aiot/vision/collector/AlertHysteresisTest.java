@@ -0,0 +1,108 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.service.impl.AlertScanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A deviation oscillating around the threshold raises one alert after the debounce and resolves it once the value
+ * stays below the clear threshold.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.streaming.enabled=false",
+        "alert.deviation-percent-threshold=15",
+        "alert.state.clear-ratio=0.8",
+        "alert.state.raise-after-ms=20000",
+        "alert.state.clear-after-ms=20000",
+        "spring.datasource.url=jdbc:h2:mem:hysteresisdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class AlertHysteresisTest {
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired AlertRepository alertRepository;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired AlertScanService alertScanService;
+
+    @Test
+    void oscillatingSignalRaisesOneAlertAndAutoResolves() {
+        Device d = deviceRepository.save(Device.builder().name("FlapDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag tag = tagRepository.save(Tag.builder().name("Level").address("ns=2;s=Level").device(d).build());
+        LocalDateTime t0 = LocalDateTime.now().withNano(0);
+
+        sample(d, tag, 120, t0);                   // 20%: PENDING
+        sample(d, tag, 114, t0.plusSeconds(10));   // 回差区间: 去抖重置
+        sample(d, tag, 120, t0.plusSeconds(20));   // PENDING
+        assertTrue(alertsOf(tag).isEmpty(), "not raised before raise-after-ms");
+        sample(d, tag, 125, t0.plusSeconds(50));   // 持续 30s: ACTIVE
+        assertEquals(1, alertsOf(tag).size());
+
+        Alert alert = alertsOf(tag).get(0);
+        alert.setAcknowledged(true);
+        alertRepository.save(alert);
+        sample(d, tag, 114, t0.plusSeconds(60));   // 未低于恢复阈值 12%, 保持 ACTIVE
+        sample(d, tag, 120, t0.plusSeconds(70));
+        sample(d, tag, 105, t0.plusSeconds(80));   // CLEARING
+        sample(d, tag, 118, t0.plusSeconds(90));   // 再次超限, 回到 ACTIVE
+        sample(d, tag, 105, t0.plusSeconds(100));  // CLEARING
+        assertNull(alertsOf(tag).get(0).getResolvedAt());
+        sample(d, tag, 104, t0.plusSeconds(130));  // 持续恢复 30s: 解除
+
+        List<Alert> alerts = alertsOf(tag);
+        assertEquals(1, alerts.size(), "acknowledging or oscillating does not create new rows");
+        assertNotNull(alerts.get(0).getResolvedAt());
+
+        sample(d, tag, 130, t0.plusSeconds(140));  // 新一轮超限重新去抖
+        sample(d, tag, 130, t0.plusSeconds(170));
+        assertEquals(2, alertsOf(tag).size());
+    }
+
+    @Test
+    void unresolvedAlertFromEarlierRunIsResolvedOnceConditionClears() {
+        Device d = deviceRepository.save(Device.builder().name("RestartDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag tag = tagRepository.save(Tag.builder().name("Level").address("ns=2;s=Level2").device(d).build());
+        LocalDateTime t0 = LocalDateTime.now().withNano(0);
+        // 重启前生成且已确认的预警, 内存中没有对应状态
+        alertRepository.save(Alert.builder().deviceId(d.getId()).tagId(tag.getId()).type("DEVIATION").severity("HIGH")
+                .signature(d.getId() + ":" + tag.getId() + ":DEVIATION").createdAt(t0.minusHours(2)).acknowledged(true).build());
+
+        sample(d, tag, 120, t0);                   // 仍超限: 沿用已有预警
+        sample(d, tag, 125, t0.plusSeconds(30));
+        assertEquals(1, alertsOf(tag).size());
+        sample(d, tag, 104, t0.plusSeconds(40));   // CLEARING
+        sample(d, tag, 104, t0.plusSeconds(70));   // 持续恢复 30s: 解除
+
+        List<Alert> alerts = alertsOf(tag);
+        assertEquals(1, alerts.size());
+        assertNotNull(alerts.get(0).getResolvedAt());
+    }
+
+    private void sample(Device d, Tag tag, double value, LocalDateTime ts) {
+        predictionCacheService.putPredictionPoint(d.getId(), tag.getId(), ts, 100d);
+        dataStorageService.save(List.of(DataRecord.builder().deviceId(d.getId()).tagId(tag.getId()).value(value).timestamp(ts).build()));
+        alertScanService.scanOnce();
+    }
+
+    private List<Alert> alertsOf(Tag tag) {
+        return alertRepository.findAll().stream().filter(a -> tag.getId().equals(a.getTagId())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,131 @@
+package com.sandy.aiot.vision.collector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.impl.AlertScanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Rules configured per tag and per tag group are compiled and evaluated together on each sample.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.streaming.enabled=false",
+        "alert.prediction-enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:alertruledb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AlertRuleEngineTest {
+    @Autowired MockMvc mockMvc;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired AlertRepository alertRepository;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired AlertScanService alertScanService;
+
+    @Test
+    void groupAndTagRulesEvaluatedInOnePass() throws Exception {
+        Tag tag = seedTag("Boiler1", "Temp", "boiler");
+        Long deviceId = tag.getDevice().getId();
+        long thresholdId = createRule("{\"tagGroup\":\"boiler\",\"type\":\"threshold\",\"upperLimit\":95,\"severity\":\"high\"}");
+        long rateId = createRule("{\"tagId\":" + tag.getId() + ",\"type\":\"RATE_OF_CHANGE\",\"maxRatePerMinute\":10}");
+
+        LocalDateTime t0 = LocalDateTime.now().withNano(0).minusMinutes(5);
+        sample(deviceId, tag.getId(), 50, t0);
+        assertTrue(alertsOf(tag).isEmpty());
+        sample(deviceId, tag.getId(), 100, t0.plusMinutes(1));
+
+        List<Alert> alerts = alertsOf(tag);
+        assertEquals(2, alerts.size(), alerts.toString());
+        Alert threshold = bySignature(alerts, deviceId + ":" + tag.getId() + ":THRESHOLD:" + thresholdId);
+        assertEquals("HIGH", threshold.getSeverity());
+        assertEquals(95.0, threshold.getThresholdValue(), 1e-9);
+        Alert rate = bySignature(alerts, deviceId + ":" + tag.getId() + ":RATE_OF_CHANGE:" + rateId);
+        assertEquals("MEDIUM", rate.getSeverity());
+        assertTrue(rate.getMessage().contains("50.00/分钟"), rate.getMessage());
+
+        // 不在分组内的标签不受分组规则影响
+        Tag other = seedTag("Boiler2", "Temp", null);
+        sample(other.getDevice().getId(), other.getId(), 200, t0);
+        assertTrue(alertsOf(other).isEmpty());
+    }
+
+    @Test
+    void rollingStddevFlagsOutlier() throws Exception {
+        Tag tag = seedTag("Pump1", "Vibration", null);
+        Long deviceId = tag.getDevice().getId();
+        createRule("{\"tagId\":" + tag.getId() + ",\"type\":\"ROLLING_STDDEV\",\"windowSize\":5,\"sigma\":3}");
+        LocalDateTime t0 = LocalDateTime.now().withNano(0).minusMinutes(10);
+        double[] values = {10, 11, 10, 11, 10, 11, 10.5};
+        for (int i = 0; i < values.length; i++) sample(deviceId, tag.getId(), values[i], t0.plusSeconds(i * 10L));
+        assertTrue(alertsOf(tag).isEmpty(), "values within the band");
+
+        sample(deviceId, tag.getId(), 30, t0.plusSeconds(100));
+        List<Alert> alerts = alertsOf(tag);
+        assertEquals(1, alerts.size());
+        assertEquals("ROLLING_STDDEV", alerts.get(0).getType());
+    }
+
+    @Test
+    void invalidRulesRejected() throws Exception {
+        postRule("{\"tagId\":1,\"tagGroup\":\"boiler\",\"type\":\"THRESHOLD\",\"upperLimit\":1}", false);
+        postRule("{\"tagId\":1,\"type\":\"THRESHOLD\"}", false);
+        postRule("{\"tagId\":1,\"type\":\"ROLLING_STDDEV\",\"windowSize\":1,\"sigma\":3}", false);
+        postRule("{\"tagId\":1,\"type\":\"UNKNOWN\"}", false);
+    }
+
+    private long createRule(String json) throws Exception {
+        String body = postRule(json, true);
+        JsonNode node = objectMapper.readTree(body);
+        return node.path("rule").path("id").asLong();
+    }
+
+    private String postRule(String json, boolean success) throws Exception {
+        return mockMvc.perform(post("/data/api/alert-rules").contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(jsonPath("$.success").value(success))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private void sample(Long deviceId, Long tagId, double value, LocalDateTime ts) {
+        dataStorageService.save(List.of(DataRecord.builder().deviceId(deviceId).tagId(tagId).value(value).timestamp(ts).build()));
+        alertScanService.scanOnce();
+    }
+
+    private List<Alert> alertsOf(Tag tag) {
+        return alertRepository.findAll().stream().filter(a -> tag.getId().equals(a.getTagId())).collect(Collectors.toList());
+    }
+
+    private static Alert bySignature(List<Alert> alerts, String signature) {
+        return alerts.stream().filter(a -> signature.equals(a.getSignature())).findFirst()
+                .orElseGet(() -> fail("no alert with signature " + signature));
+    }
+
+    private Tag seedTag(String deviceName, String tagName, String group) {
+        Device d = deviceRepository.save(Device.builder().name(deviceName).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        return tagRepository.save(Tag.builder().name(tagName).address("ns=2;s=" + tagName).tagGroup(group).device(d).build());
+    }
+}
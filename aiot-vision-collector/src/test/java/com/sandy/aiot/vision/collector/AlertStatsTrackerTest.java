@@ -0,0 +1,96 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.service.AlertStatsTracker;
+import com.sandy.aiot.vision.collector.service.AlertWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Stats counters follow creates, acks, ignores and resolves without reloading alerts, and match a rebuild from the
+ * database.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.writer.flush-interval-ms=3600000",
+        "spring.datasource.url=jdbc:h2:mem:alertstatsdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AlertStatsTrackerTest {
+    @Autowired AlertStatsTracker statsTracker;
+    @Autowired AlertRepository alertRepository;
+    @Autowired AlertWriter alertWriter;
+    @Autowired MockMvc mockMvc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Test
+    void countersFollowAlertLifecycle() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Alert high1 = alertRepository.save(alert("HIGH", now));
+        alertRepository.save(alert("HIGH", now));
+        Alert medium = alertRepository.save(alert("MEDIUM", now.minusHours(3)));
+        Alert low = alertRepository.save(alert("LOW", now));
+        alertRepository.save(alert("LOW", now.minusHours(30))); // 24h 之外, 仍为活动预警
+
+        mockMvc.perform(post("/data/api/alerts/" + high1.getId() + "/ack")).andExpect(jsonPath("$.success").value(true));
+        mockMvc.perform(post("/data/api/alerts/batch-ignore").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[" + low.getId() + "]}")).andExpect(jsonPath("$.successCount").value(1));
+        alertWriter.resolve(medium, LocalDateTime.now());
+        alertWriter.flush();
+
+        AlertStatsTracker.Snapshot snap = statsTracker.snapshot(12);
+        assertEquals(2, snap.activeCount());
+        assertEquals(Map.of("HIGH", 1, "LOW", 1), snap.severityActive());
+        assertEquals(4, snap.recent24hCount());
+        assertEquals(Map.of("HIGH", 2, "MEDIUM", 1, "LOW", 1), snap.severityRecent24h());
+        assertEquals(12, snap.hourStats().size());
+        assertEquals(3, snap.hourStats().get(hourLabel(now)));
+        assertEquals(1, snap.hourStats().get(hourLabel(now.minusHours(3))));
+
+        mockMvc.perform(get("/data/api/alerts/stats"))
+                .andExpect(jsonPath("$.activeCount").value(2))
+                .andExpect(jsonPath("$.recent24hCount").value(4))
+                .andExpect(jsonPath("$.severityActive.HIGH").value(1));
+
+        // 从数据库重建得到相同结果
+        statsTracker.rebuild();
+        AlertStatsTracker.Snapshot rebuilt = statsTracker.snapshot(12);
+        assertEquals(snap, rebuilt);
+    }
+
+    @Test
+    void rolledBackInsertIsNotCounted() {
+        AlertStatsTracker.Snapshot before = statsTracker.snapshot(12);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            alertRepository.saveAndFlush(alert("HIGH", LocalDateTime.now()));
+            status.setRollbackOnly();
+        });
+        assertEquals(before, statsTracker.snapshot(12));
+    }
+
+    private static String hourLabel(LocalDateTime ts) {
+        return String.format("%02d:00", ts.getHour());
+    }
+
+    private static Alert alert(String severity, LocalDateTime createdAt) {
+        return Alert.builder().type("THRESHOLD").severity(severity).signature("stats:" + severity + ":" + createdAt)
+                .createdAt(createdAt).acknowledged(false).ignored(false).build();
+    }
+}
@@ -0,0 +1,136 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.AlertSuppressionIndex;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.service.impl.AlertScanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Duplicate suppression is answered from the in-memory index, which follows committed creates, acks, ignores and deletes.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.streaming.enabled=false",
+        "alert.deviation-percent-threshold=10",
+        "alert.duplicate-suppress-minutes=30",
+        "spring.datasource.url=jdbc:h2:mem:suppressdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AlertSuppressionIndexTest {
+    @Autowired AlertSuppressionIndex suppressionIndex;
+    @Autowired AlertScanService alertScanService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired ApplicationContext context;
+    @Autowired MockMvc mockMvc;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired AlertRepository alertRepository;
+
+    @Test
+    void indexFollowsCreateAckIgnoreAndDelete() throws Exception {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(30);
+        Alert a = alertRepository.save(open("1:1:DEVIATION", LocalDateTime.now()));
+        assertTrue(suppressionIndex.hasOpenSince("1:1:DEVIATION", cutoff));
+        mockMvc.perform(post("/data/api/alerts/" + a.getId() + "/ack")).andExpect(jsonPath("$.success").value(true));
+        assertFalse(suppressionIndex.hasOpenSince("1:1:DEVIATION", cutoff));
+
+        Alert b = alertRepository.save(open("1:2:DEVIATION", LocalDateTime.now()));
+        mockMvc.perform(post("/data/api/alerts/" + b.getId() + "/ignore")).andExpect(jsonPath("$.success").value(true));
+        assertFalse(suppressionIndex.hasOpenSince("1:2:DEVIATION", cutoff));
+
+        Alert c = alertRepository.save(open("1:3:DEVIATION", LocalDateTime.now()));
+        assertTrue(suppressionIndex.hasOpenSince("1:3:DEVIATION", cutoff));
+        alertRepository.delete(c);
+        assertFalse(suppressionIndex.hasOpenSince("1:3:DEVIATION", cutoff));
+        // 窗口外的未处理预警不抑制
+        alertRepository.save(open("1:4:DEVIATION", LocalDateTime.now().minusHours(1)));
+        assertFalse(suppressionIndex.hasOpenSince("1:4:DEVIATION", cutoff));
+    }
+
+    @Test
+    void scanSuppressesDuplicatesFromIndex() {
+        Tag level = seedTag("IdxDev", "Level");
+        Long deviceId = level.getDevice().getId();
+        LocalDateTime ts = LocalDateTime.now().withNano(0);
+        deviate(deviceId, level.getId(), ts);
+        deviate(deviceId, level.getId(), ts.plusMinutes(1));
+        assertEquals(1, countAlerts(deviceId + ":" + level.getId() + ":DEVIATION"), "second deviation suppressed");
+    }
+
+    @Test
+    void rolledBackWritesDoNotReachTheIndex() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(30);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            alertRepository.saveAndFlush(open("3:1:DEVIATION", LocalDateTime.now()));
+            status.setRollbackOnly();
+        });
+        assertFalse(suppressionIndex.hasOpenSince("3:1:DEVIATION", cutoff));
+
+        tx.executeWithoutResult(status -> alertRepository.save(open("3:2:DEVIATION", LocalDateTime.now())));
+        assertTrue(suppressionIndex.hasOpenSince("3:2:DEVIATION", cutoff));
+    }
+
+    @Test
+    void seedsOpenAlertsWithinWindowFromDatabase() {
+        alertRepository.save(open("2:1:DEVIATION", LocalDateTime.now().minusMinutes(5)));
+        alertRepository.save(open("2:2:DEVIATION", LocalDateTime.now().minusHours(2)));
+        AlertSuppressionIndex fresh = new AlertSuppressionIndex(context.getBeanProvider(AlertRepository.class));
+        ReflectionTestUtils.setField(fresh, "duplicateSuppressMinutes", 30);
+        assertFalse(fresh.isReady());
+
+        fresh.seed();
+
+        assertTrue(fresh.isReady());
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(30);
+        assertTrue(fresh.hasOpenSince("2:1:DEVIATION", cutoff));
+        assertFalse(fresh.hasOpenSince("2:2:DEVIATION", cutoff));
+    }
+
+    private void deviate(Long deviceId, Long tagId, LocalDateTime at) {
+        predictionCacheService.putPredictionPoint(deviceId, tagId, at, 100d);
+        dataStorageService.save(List.of(DataRecord.builder().deviceId(deviceId).tagId(tagId).value(200d).timestamp(at).build()));
+        alertScanService.scanOnce();
+    }
+
+    private long countAlerts(String signature) {
+        return alertRepository.findAll().stream().filter(a -> signature.equals(a.getSignature())).count();
+    }
+
+    private Tag seedTag(String deviceName, String tagName) {
+        Device d = deviceRepository.save(Device.builder().name(deviceName).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        return tagRepository.save(Tag.builder().name(tagName).address("ns=2;s=" + tagName).device(d).build());
+    }
+
+    private static Alert open(String signature, LocalDateTime createdAt) {
+        return Alert.builder().type("DEVIATION").severity("HIGH").signature(signature).createdAt(createdAt)
+                .acknowledged(false).ignored(false).build();
+    }
+}
@@ -0,0 +1,113 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.service.AlertSuppressionIndex;
+import com.sandy.aiot.vision.collector.service.AlertWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Alerts are queued and written in batches (row by row when a batch fails); batch ack / ignore are bulk updates that
+ * keep the suppression index in sync.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.writer.flush-interval-ms=3600000",
+        "alert.writer.batch-size=40",
+        "spring.datasource.url=jdbc:h2:mem:alertwriterdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AlertWriterTest {
+    @Autowired AlertWriter alertWriter;
+    @Autowired AlertRepository alertRepository;
+    @Autowired AlertSuppressionIndex suppressionIndex;
+    @Autowired MockMvc mockMvc;
+
+    @Test
+    void queuedAlertsWrittenInBatchesOnFlush() {
+        long before = alertRepository.count();
+        List<Alert> alerts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Alert a = open("9:" + i + ":DEVIATION");
+            alerts.add(a);
+            alertWriter.enqueue(a);
+        }
+        alertWriter.resolve(alerts.get(0), LocalDateTime.now());
+        assertEquals(before, alertRepository.count(), "nothing written before flush");
+        assertEquals(101, alertWriter.pending());
+
+        alertWriter.flush();
+
+        assertEquals(0, alertWriter.pending());
+        assertEquals(before + 100, alertRepository.count());
+        assertTrue(alerts.stream().allMatch(a -> a.getId() != null));
+        assertNotNull(alertRepository.findById(alerts.get(0).getId()).orElseThrow().getResolvedAt());
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(5);
+        assertFalse(suppressionIndex.hasOpenSince("9:0:DEVIATION", cutoff), "resolved alert left the index");
+        assertTrue(suppressionIndex.hasOpenSince("9:1:DEVIATION", cutoff));
+    }
+
+    @Test
+    void failedBatchIsRetriedRowByRowAndReportsRejectedAlerts() {
+        long before = alertRepository.count();
+        Alert good1 = open("7:1:DEVIATION");
+        Alert bad = open("7:2:DEVIATION");
+        bad.setMessage("x".repeat(600)); // 超出列长度, 该行插入失败
+        Alert good2 = open("7:3:DEVIATION");
+        List<Alert> failed = new ArrayList<>();
+        for (Alert a : List.of(good1, bad, good2)) alertWriter.enqueue(a, failed::add);
+
+        alertWriter.flush();
+
+        assertEquals(before + 2, alertRepository.count());
+        assertNotNull(good1.getId());
+        assertNotNull(good2.getId());
+        assertNull(bad.getId());
+        assertEquals(List.of(bad), failed);
+        assertEquals(0, alertWriter.pending());
+    }
+
+    @Test
+    void batchAckAndIgnoreAreBulkUpdates() throws Exception {
+        Alert a = alertRepository.save(open("8:1:DEVIATION"));
+        Alert b = alertRepository.save(open("8:2:DEVIATION"));
+        Alert c = alertRepository.save(open("8:3:DEVIATION"));
+        long missing = c.getId() + 100000;
+
+        mockMvc.perform(post("/data/api/alerts/batch-ack").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[" + a.getId() + "," + b.getId() + "," + missing + "]}"))
+                .andExpect(jsonPath("$.successCount").value(2))
+                .andExpect(jsonPath("$.failedIds", contains((int) missing)));
+        mockMvc.perform(post("/data/api/alerts/batch-ignore").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[" + c.getId() + "]}"))
+                .andExpect(jsonPath("$.successCount").value(1));
+
+        assertTrue(alertRepository.findById(a.getId()).orElseThrow().isAcknowledged());
+        assertNotNull(alertRepository.findById(b.getId()).orElseThrow().getAcknowledgedAt());
+        assertTrue(alertRepository.findById(c.getId()).orElseThrow().isIgnored());
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(5);
+        assertFalse(suppressionIndex.hasOpenSince("8:1:DEVIATION", cutoff));
+        assertFalse(suppressionIndex.hasOpenSince("8:3:DEVIATION", cutoff));
+    }
+
+    private static Alert open(String signature) {
+        return Alert.builder().type("DEVIATION").severity("HIGH").signature(signature).createdAt(LocalDateTime.now())
+                .acknowledged(false).ignored(false).build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AlignedHistoryApiTest {
+    @Autowired MockMvc mockMvc;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired DataStorageService dataStorageService;
+
+    @Test
+    void returnsAlignedColumnsForRangeAndLastN() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("AlignDev").protocol("opcua").connectionString("opc.tcp://x:1").build());
+        Tag t1 = tagRepository.save(Tag.builder().name("A").address("ns=2;s=a1").device(d).build());
+        Tag t2 = tagRepository.save(Tag.builder().name("B").address("ns=2;s=a2").device(d).build());
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+        dataStorageService.save(List.of(
+                DataRecord.builder().deviceId(d.getId()).tagId(t1.getId()).value(1.0d).timestamp(base).build(),
+                DataRecord.builder().deviceId(d.getId()).tagId(t2.getId()).value(10.0d).timestamp(base).build(),
+                DataRecord.builder().deviceId(d.getId()).tagId(t1.getId()).value(2.0d).timestamp(base.plusSeconds(1)).build(),
+                DataRecord.builder().deviceId(d.getId()).tagId(t2.getId()).value(20.0d).timestamp(base.plusSeconds(2)).build()));
+
+        mockMvc.perform(get("/data/api/history/" + d.getId())
+                        .param("tagIds", t1.getId() + "," + t2.getId())
+                        .param("from", "2025-01-01T00:00:00")
+                        .param("to", "2025-01-01T00:01:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tagNames", contains("A", "B")))
+                .andExpect(jsonPath("$.timestamps", hasSize(3)))
+                .andExpect(jsonPath("$.timestamps[0]").value("2025-01-01 00:00:00"))
+                .andExpect(jsonPath("$.values[0][1]").value(2.0d))
+                .andExpect(jsonPath("$.values[0][2]").value(nullValue()))
+                .andExpect(jsonPath("$.values[1][2]").value(20.0d));
+
+        mockMvc.perform(get("/data/api/history/" + d.getId())
+                        .param("from", "2025-01-01T00:00:00")
+                        .param("to", "2025-01-01T00:01:00")
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamps", contains("2025-01-01 00:00:00", "2025-01-01 00:00:01")));
+
+        mockMvc.perform(get("/data/api/history/" + d.getId()).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamps", contains("2025-01-01 00:00:01", "2025-01-01 00:00:02")))
+                .andExpect(jsonPath("$.values[1][0]").value(nullValue()))
+                .andExpect(jsonPath("$.values[1][1]").value(20.0d));
+    }
+}
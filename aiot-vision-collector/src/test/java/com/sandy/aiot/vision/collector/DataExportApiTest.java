@@ -0,0 +1,77 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class DataExportApiTest {
+    @Autowired MockMvc mockMvc;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired DataStorageService dataStorageService;
+
+    @Test
+    void exportsAlignedCsvAndNdjson() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("ExpDev").protocol("opcua").connectionString("opc.tcp://x:1").build());
+        Tag t1 = tagRepository.save(Tag.builder().name("Temp").address("ns=2;s=e1").device(d).build());
+        Tag t2 = tagRepository.save(Tag.builder().name("Pressure").address("ns=2;s=e2").device(d).build());
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0, 0);
+        dataStorageService.save(List.of(
+                DataRecord.builder().deviceId(d.getId()).tagId(t1.getId()).value(1.5d).timestamp(base).build(),
+                DataRecord.builder().deviceId(d.getId()).tagId(t2.getId()).value(7).timestamp(base).build(),
+                DataRecord.builder().deviceId(d.getId()).tagId(t1.getId()).value(2.5d).timestamp(base.plusSeconds(1)).build()));
+
+        String csv = mockMvc.perform(get("/data/api/export/" + d.getId())
+                        .param("from", "2025-01-01T00:00:00")
+                        .param("to", "2025-01-01T00:01:00"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = csv.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("timestamp,Temp,Pressure", lines[0]);
+        assertEquals("2025-01-01 00:00:00.000,1.5,7", lines[1]);
+        assertEquals("2025-01-01 00:00:01.000,2.5,", lines[2]);
+
+        String ndjson = mockMvc.perform(get("/data/api/export/" + d.getId())
+                        .param("tagIds", String.valueOf(t1.getId()))
+                        .param("from", "2025-01-01T00:00:00")
+                        .param("to", "2025-01-01T00:01:00")
+                        .param("format", "ndjson"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] rows = ndjson.trim().split("\n");
+        assertEquals(2, rows.length);
+        assertTrue(rows[0].contains("\"" + t1.getId() + "\":1.5"));
+
+        String longCsv = mockMvc.perform(get("/data/api/export/" + d.getId())
+                        .param("from", "2025-01-01T00:00:00")
+                        .param("to", "2025-01-01T00:01:00")
+                        .param("layout", "long"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] points = longCsv.split("\n");
+        assertEquals(4, points.length);
+        assertEquals("deviceId,tagId,timestamp,value,type", points[0]);
+        assertEquals(d.getId() + "," + t1.getId() + ",2025-01-01 00:00:00.000,1.5,DOUBLE", points[1]);
+        assertEquals(d.getId() + "," + t2.getId() + ",2025-01-01 00:00:00.000,7,INT32", points[2]);
+    }
+}
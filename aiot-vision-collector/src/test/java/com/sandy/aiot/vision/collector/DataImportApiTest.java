@@ -0,0 +1,99 @@
+package com.sandy.aiot.vision.collector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class DataImportApiTest {
+    @Autowired MockMvc mockMvc;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired DataStorageService dataStorageService;
+
+    @Test
+    void csvImportIsWrittenAndReportsProgress() throws Exception {
+        String csv = "deviceId,tagId,timestamp,value,type\n"
+                + "9001,1,2025-01-01 00:00:00,1.5,\n"
+                + "9001,1,2025-01-01 00:00:01,2.5,\n"
+                + "9001,2,1735689600000,7,INT32\n"
+                + "9001,2,not-a-time,8,\n"
+                + "9001,3,2025-01-01T08:00:00+08:00,1,\n";
+        JsonNode job = importCsv("history.csv", csv);
+        assertEquals("COMPLETED", job.get("status").asText());
+        assertEquals(5, job.get("rowsRead").asLong());
+        assertEquals(4, job.get("pointsWritten").asLong());
+        assertEquals(1, job.get("rowsRejected").asLong());
+
+        List<DataRecord> tag1 = dataStorageService.findTopN(9001L, 1L, 10);
+        assertEquals(2, tag1.size());
+        assertEquals(2.5d, tag1.get(0).getValue());
+        assertEquals(7, dataStorageService.findLatest(9001L, 2L).orElseThrow().getValue());
+        assertEquals(LocalDateTime.of(2025, 1, 1, 0, 0), dataStorageService.findLatest(9001L, 3L).orElseThrow().getTimestamp(), "offset converted to UTC");
+    }
+
+    @Test
+    void untypedValuesFollowTheExistingSeriesType() throws Exception {
+        dataStorageService.save(List.of(DataRecord.builder().deviceId(9002L).tagId(1L).value(5)
+                .timestamp(LocalDateTime.of(2025, 1, 1, 0, 0)).build()));
+        String csv = "deviceId,tagId,timestamp,value\n"
+                + "9002,1,2025-01-01 00:00:01,6\n"
+                + "9002,1,2025-01-01 00:00:02,6.5\n" // 不符合 INT32, 仅该行被拒绝
+                + "9002,2,2025-01-01 00:00:01,6\n";
+        JsonNode job = importCsv("typed.csv", csv);
+        assertEquals("COMPLETED", job.get("status").asText());
+        assertEquals(2, job.get("pointsWritten").asLong());
+        assertEquals(1, job.get("rowsRejected").asLong());
+
+        assertEquals(6, dataStorageService.findLatest(9002L, 1L).orElseThrow().getValue());
+        assertEquals(6d, dataStorageService.findLatest(9002L, 2L).orElseThrow().getValue(), "new series default to DOUBLE");
+    }
+
+    @Test
+    void quotedCsvFieldsKeepCommasQuotesAndLineBreaks() throws Exception {
+        String csv = "\"deviceId\",\"tagId\",\"timestamp\",\"value\",\"type\"\n"
+                + "9003,1,\"2025-01-01 00:00:00\",\"a,b \"\"c\"\"\",TEXT\n"
+                + "9003,2,2025-01-01 00:00:00,\"line1\nline2\",TEXT\n";
+        JsonNode job = importCsv("quoted.csv", csv);
+        assertEquals("COMPLETED", job.get("status").asText());
+        assertEquals(2, job.get("pointsWritten").asLong());
+        assertEquals("a,b \"c\"", dataStorageService.findLatest(9003L, 1L).orElseThrow().getValue());
+        assertEquals("line1\nline2", dataStorageService.findLatest(9003L, 2L).orElseThrow().getValue());
+    }
+
+    private JsonNode importCsv(String name, String csv) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", name, "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+        String resp = mockMvc.perform(multipart("/data/api/import").file(file))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String jobId = objectMapper.readTree(resp).get("id").asText();
+
+        JsonNode job = null;
+        for (int i = 0; i < 50; i++) {
+            job = objectMapper.readTree(mockMvc.perform(get("/data/api/import/" + jobId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            if (job.get("finishedAt") != null && !job.get("finishedAt").isNull()) break;
+            Thread.sleep(100);
+        }
+        return job;
+    }
+}
@@ -14,6 +14,8 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -56,5 +58,22 @@ class DeviceControllerApiTest {
                 .andExpect(jsonPath("$", hasSize(1)))
                 .andExpect(jsonPath("$[0].name", is("TagX")));
     }
-}
 
+    @Test
+    void updateWithoutStorageGroupKeepsIt() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("GroupDev").protocol("opcua")
+                .connectionString("opc.tcp://localhost:4840").storageGroup("hot").build());
+
+        // 页面编辑表单只提交名称/协议/连接串
+        mockMvc.perform(put("/data/api/devices/" + d.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"GroupDev2\",\"protocol\":\"opcua\",\"connectionString\":\"opc.tcp://localhost:4840\"}"))
+                .andExpect(jsonPath("$.success", is(true)))
+                .andExpect(jsonPath("$.storageGroup", is("hot")));
+        assertEquals("hot", deviceRepository.findById(d.getId()).orElseThrow().getStorageGroup());
+
+        mockMvc.perform(put("/data/api/devices/" + d.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"GroupDev2\",\"connectionString\":\"opc.tcp://localhost:4840\",\"storageGroup\":\"\"}"))
+                .andExpect(jsonPath("$.success", is(true)));
+        assertNull(deviceRepository.findById(d.getId()).orElseThrow().getStorageGroup());
+    }
+}
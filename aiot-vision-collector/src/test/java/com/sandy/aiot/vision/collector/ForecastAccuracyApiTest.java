@@ -0,0 +1,65 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.ForecastAccuracyTracker;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"predict.accuracy.min-samples=3", "alert.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ForecastAccuracyApiTest {
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired ForecastAccuracyTracker accuracyTracker;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired MockMvc mockMvc;
+
+    @Test
+    void tracksErrorOfArrivingValuesAndScalesRefresh() throws Exception {
+        long deviceId = 9100L;
+        LocalDateTime base = LocalDateTime.now().withNano(0).minusMinutes(10);
+        List<DataRecord> actuals = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            LocalDateTime ts = base.plusMinutes(i);
+            predictionCacheService.putPredictionPoint(deviceId, 1L, ts, 100.0);
+            predictionCacheService.putPredictionPoint(deviceId, 2L, ts, 100.0);
+            actuals.add(DataRecord.builder().deviceId(deviceId).tagId(1L).value(100.0).timestamp(ts.plusSeconds(5)).build());
+            actuals.add(DataRecord.builder().deviceId(deviceId).tagId(2L).value(130).timestamp(ts).build());
+        }
+        actuals.add(DataRecord.builder().deviceId(deviceId).tagId(3L).value(1).timestamp(base).build()); // no forecast cached
+        dataStorageService.save(actuals);
+
+        assertEquals(2.0, accuracyTracker.refreshFactor(new DeviceTagKey(deviceId, 1L)), 1e-9, "exact forecast stretches refresh");
+        assertEquals(0.25, accuracyTracker.refreshFactor(new DeviceTagKey(deviceId, 2L)), 1e-9, "23% error shortens refresh");
+
+        mockMvc.perform(get("/data/api/predict-cache/" + deviceId + "/2/accuracy"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.samples").value(5))
+                .andExpect(jsonPath("$.mae").value(closeTo(30.0, 1e-9)))
+                .andExpect(jsonPath("$.bias").value(closeTo(-30.0, 1e-9)))
+                .andExpect(jsonPath("$.mape").value(closeTo(30.0 / 130, 1e-9)));
+        mockMvc.perform(get("/data/api/predict-cache/" + deviceId + "/3/accuracy"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/data/api/predict-cache/accuracy").param("top", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].tagId").value(2));
+    }
+}
@@ -0,0 +1,189 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.service.impl.ForecastClient;
+import com.sandy.aiot.vision.collector.service.impl.ForecastClient.CircuitState;
+import com.sandy.aiot.vision.collector.vo.ForecastEndpointStatsVO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Circuit breaker, hedging and latency statistics of {@link ForecastClient} against a stub whose slow answers are held
+ * on latches, so the outcome does not depend on how fast the machine is.
+ */
+class ForecastClientResilienceTest {
+    private static final AtomicInteger flakyStatus = new AtomicInteger(500);
+    private static final AtomicInteger flakyHits = new AtomicInteger();
+    private static final AtomicInteger slowFirstHits = new AtomicInteger();
+    private static final CountDownLatch gate = new CountDownLatch(1);
+    private static final CountDownLatch slowFirstRelease = new CountDownLatch(1);
+    private static final CountDownLatch hangRelease = new CountDownLatch(1);
+    private static final HttpServer server = startStub();
+
+    @AfterAll
+    static void stop() {
+        gate.countDown();
+        slowFirstRelease.countDown();
+        hangRelease.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void breakerOpensAfterConsecutiveFailuresAndClosesAfterProbe() throws Exception {
+        ForecastClient client = new ForecastClient(1000, 5000, 4, 3, 300, 0);
+        String url = url("/flaky");
+        for (int i = 0; i < 3; i++) assertEquals(500, client.postJson(url, "{}").join().status());
+        assertEquals(CircuitState.OPEN, client.circuitState(url));
+
+        int hits = flakyHits.get();
+        CompletionException e = assertThrows(CompletionException.class, () -> client.postJson(url, "{}").join());
+        assertInstanceOf(ForecastClient.CircuitOpenException.class, e.getCause());
+        assertEquals(hits, flakyHits.get(), "open circuit must not reach the server");
+
+        // 探测失败: 继续熔断
+        Thread.sleep(350);
+        assertEquals(500, client.postJson(url, "{}").join().status());
+        assertEquals(CircuitState.OPEN, client.circuitState(url));
+
+        // 探测成功: 恢复
+        flakyStatus.set(200);
+        Thread.sleep(350);
+        assertEquals(200, client.postJson(url, "{}").join().status());
+        assertEquals(CircuitState.CLOSED, client.circuitState(url));
+
+        ForecastEndpointStatsVO stats = client.endpointStats().get(0);
+        assertEquals(url, stats.getUrl());
+        assertEquals(5, stats.getRequests());
+        assertEquals(4, stats.getErrors());
+        assertEquals(1, stats.getShortCircuited());
+        assertEquals(stats.getRequests(), stats.getLatencyBuckets().values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(stats.getP50Millis() <= stats.getP99Millis());
+        assertTrue(stats.getP99Millis() <= stats.getMaxMillis() || stats.getMaxMillis() == 0);
+    }
+
+    @Test
+    void clientErrorsDoNotTripTheBreaker() {
+        ForecastClient client = new ForecastClient(1000, 5000, 4, 2, 60_000, 0);
+        String url = url("/bad-request");
+        for (int i = 0; i < 4; i++) assertEquals(400, client.postJson(url, "{}").join().status());
+        assertEquals(CircuitState.CLOSED, client.circuitState(url));
+        assertEquals(0, client.endpointStats().get(0).getErrors());
+    }
+
+    @Test
+    void hedgedRequestAnswersWhenFirstAttemptIsSlow() {
+        ForecastClient client = new ForecastClient(1000, 5000, 4, 5, 30_000, 100);
+        try {
+            // the first attempt is held until the end of the test: only the hedge can answer
+            ForecastClient.Response resp = client.postJson(url("/slow-first"), "{}").join();
+            assertEquals(200, resp.status());
+            assertEquals("fast", resp.body());
+
+            ForecastEndpointStatsVO stats = client.endpointStats().get(0);
+            assertEquals(1, stats.getHedged());
+            assertEquals(2, slowFirstHits.get());
+        } finally {
+            slowFirstRelease.countDown();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void timeoutsCountAsFailures() {
+        ForecastClient client = new ForecastClient(1000, 150, 4, 1, 60_000, 0);
+        String url = url("/hang");
+        assertThrows(CompletionException.class, () -> client.postJson(url, "{}").join());
+        assertEquals(CircuitState.OPEN, client.circuitState(url));
+        ForecastEndpointStatsVO stats = client.endpointStats().get(0);
+        assertEquals(1, stats.getTimeouts());
+        // a timed out call took at least the request timeout: it lands in a bucket above 150ms, wherever exactly
+        Map<String, Long> buckets = stats.getLatencyBuckets();
+        assertEquals(1L, buckets.values().stream().mapToLong(Long::longValue).sum());
+        for (String fast : List.of("le5", "le10", "le25", "le50", "le100")) assertEquals(0L, buckets.get(fast), fast);
+        assertTrue(stats.getMaxMillis() >= 150, "max " + stats.getMaxMillis());
+    }
+
+    @Test
+    void fullQueueRejectsWithoutTouchingTheBreaker() {
+        ForecastClient client = new ForecastClient(1000, 5000, 1, 1, 1, 60_000, 0);
+        String url = url("/gate");
+        CompletableFuture<ForecastClient.Response> inFlight = client.postJson(url, "{}");
+        CompletableFuture<ForecastClient.Response> queued = client.postJson(url, "{}");
+        assertEquals(1, client.queuedRequests());
+
+        CompletionException e = assertThrows(CompletionException.class, () -> client.postJson(url, "{}").join());
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+
+        gate.countDown();
+        assertEquals(200, inFlight.join().status());
+        assertEquals(200, queued.join().status());
+        assertEquals(0, client.queuedRequests());
+        assertEquals(CircuitState.CLOSED, client.circuitState(url));
+        ForecastEndpointStatsVO stats = client.endpointStats().get(0);
+        assertEquals(1, stats.getRejected());
+        assertEquals(0, stats.getErrors());
+    }
+
+    private static String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static HttpServer startStub() {
+        try {
+            HttpServer s = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            s.setExecutor(Executors.newCachedThreadPool());
+            s.createContext("/flaky", ex -> {
+                flakyHits.incrementAndGet();
+                reply(ex, flakyStatus.get(), "{}");
+            });
+            s.createContext("/bad-request", ex -> reply(ex, 400, "{}"));
+            s.createContext("/slow-first", ex -> {
+                boolean first = slowFirstHits.incrementAndGet() == 1;
+                if (first) await(slowFirstRelease);
+                reply(ex, 200, first ? "slow" : "fast");
+            });
+            s.createContext("/gate", ex -> {
+                await(gate);
+                reply(ex, 200, "{}");
+            });
+            s.createContext("/hang", ex -> {
+                await(hangRelease);
+                reply(ex, 200, "{}");
+            });
+            s.start();
+            return s;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes();
+        ex.getRequestBody().readAllBytes();
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+        ex.close();
+    }
+}
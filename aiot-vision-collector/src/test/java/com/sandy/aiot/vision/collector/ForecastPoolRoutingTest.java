@@ -0,0 +1,177 @@
+package com.sandy.aiot.vision.collector;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.impl.ForecastClient;
+import com.sandy.aiot.vision.collector.service.impl.ForecastEndpointPools;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per-tag pool routing and least-outstanding balancing across forecast replicas.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pooldb;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "predict.api.health.path=",
+        "predict.cache.enabled=false",
+        "alert.enabled=false"
+})
+@ActiveProfiles("test")
+class ForecastPoolRoutingTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private static final HttpServer server = startStub();
+
+    @Autowired PredictService predictService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired ForecastEndpointPools endpointPools;
+    @Autowired ForecastClient forecastClient;
+
+    @DynamicPropertySource
+    static void stubUrls(DynamicPropertyRegistry registry) {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        registry.add("predict.api.url", () -> base + "/replica-1," + base + "/replica-2");
+        registry.add("predict.api.batch-url", () -> "");
+        registry.add("predict.api.pools", () -> "premium=" + base + "/premium");
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void routesTagsByForecastPool() {
+        Device d = seedDevice("PoolDev");
+        Tag premium = tagRepository.save(Tag.builder().name("flow").address("ns=2;s=Flow").forecastPool("premium").device(d).build());
+        Tag bulk = tagRepository.save(Tag.builder().name("temp").address("ns=2;s=Temp").device(d).build());
+        seedRecords(d, premium.getId(), bulk.getId());
+
+        TimeSeriesDataModelVO p = predictService.predict(d.getId(), premium.getId());
+        assertEquals(100.0, p.getPredictionPoints().get(0).getValue(), "premium pool answered");
+        TimeSeriesDataModelVO b = predictService.predict(d.getId(), bulk.getId());
+        double v = b.getPredictionPoints().get(0).getValue();
+        assertTrue(v == 1.0 || v == 2.0, "default pool replica answered, got " + v);
+        assertTrue(endpointPools.isKnownPool("Premium"));
+        assertFalse(endpointPools.isKnownPool("gpu"));
+    }
+
+    @Test
+    void spreadsConcurrentCallsOverReplicas() {
+        Device d = seedDevice("SpreadDev");
+        List<DeviceTagKey> keys = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Tag t = tagRepository.save(Tag.builder().name("t" + i).address("ns=2;s=T" + i).device(d).build());
+            keys.add(new DeviceTagKey(d.getId(), t.getId()));
+        }
+        seedRecords(d, keys.stream().map(DeviceTagKey::tagId).toArray(Long[]::new));
+        int r1 = hits("/replica-1");
+        int r2 = hits("/replica-2");
+
+        Map<DeviceTagKey, TimeSeriesDataModelVO> result = predictService.predictBatch(keys);
+
+        assertEquals(6, result.size());
+        assertEquals(3, hits("/replica-1") - r1);
+        assertEquals(3, hits("/replica-2") - r2);
+    }
+
+    @Test
+    void choosesLeastOutstandingAvailableMember() {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        ForecastEndpointPools.Pool pool = endpointPools.resolve(null, base + "/a," + base + "/b", "");
+        ForecastEndpointPools.Member a = pool.members().get(0);
+        ForecastEndpointPools.Member b = pool.members().get(1);
+        CompletableFuture<Void> busy = new CompletableFuture<>();
+        a.call(() -> busy);
+        for (int i = 0; i < 4; i++) assertSame(b, pool.choose(false));
+        busy.complete(null);
+        assertEquals(0, a.outstanding());
+        assertNull(pool.choose(true), "no member has a batch url");
+
+        // 熔断中的端点不参与分发
+        for (int i = 0; i < 5; i++) forecastClient.postJson(b.url(), "{}").join();
+        assertEquals(ForecastClient.CircuitState.OPEN, forecastClient.circuitState(b.url()));
+        for (int i = 0; i < 4; i++) assertSame(a, pool.choose(false));
+    }
+
+    private Device seedDevice(String name) {
+        return deviceRepository.save(Device.builder().name(name).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+    }
+
+    private void seedRecords(Device d, Long... tagIds) {
+        List<DataRecord> records = new ArrayList<>();
+        for (Long tagId : tagIds) {
+            for (int i = 0; i < 10; i++) {
+                records.add(DataRecord.builder().deviceId(d.getId()).tagId(tagId).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+            }
+        }
+        dataStorageService.save(records);
+    }
+
+    private static int hits(String path) {
+        return hits.computeIfAbsent(path, k -> new AtomicInteger()).get();
+    }
+
+    private static HttpServer startStub() {
+        try {
+            HttpServer s = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            s.setExecutor(Executors.newCachedThreadPool());
+            s.createContext("/premium", ex -> answer(ex, 100.0, 0));
+            // 副本响应较慢, 使并发调用在途重叠
+            s.createContext("/replica-1", ex -> answer(ex, 1.0, 300));
+            s.createContext("/replica-2", ex -> answer(ex, 2.0, 300));
+            s.createContext("/b", ex -> reply(ex, 503, new byte[0]));
+            s.start();
+            return s;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void answer(HttpExchange ex, double value, long delayMs) throws IOException {
+        hits.computeIfAbsent(ex.getHttpContext().getPath(), k -> new AtomicInteger()).incrementAndGet();
+        int len = MAPPER.readTree(ex.getRequestBody()).get("prediction_length").asInt();
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reply(ex, 200, MAPPER.writeValueAsBytes(Map.of("predictions", Collections.nCopies(len, value))));
+    }
+
+    private static void reply(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.getRequestBody().readAllBytes();
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) ex.getResponseBody().write(body);
+        ex.close();
+    }
+}
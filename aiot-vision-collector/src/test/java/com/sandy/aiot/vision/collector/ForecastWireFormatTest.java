@@ -0,0 +1,167 @@
+package com.sandy.aiot.vision.collector;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.impl.ForecastEndpointPools;
+import com.sandy.aiot.vision.collector.service.impl.ForecastWireCodec;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Binary forecast payloads: codec round trip, negotiation with a binary-capable stub, and JSON fallback on 415.
+ */
+@SpringBootTest(properties = "predict.api.wire-format=binary")
+@ActiveProfiles("test")
+class ForecastWireFormatTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final AtomicInteger binaryCalls = new AtomicInteger();
+    private static final AtomicInteger jsonCalls = new AtomicInteger();
+    private static final HttpServer server = startStub();
+
+    @Autowired PredictService predictService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired ForecastEndpointPools endpointPools;
+
+    @DynamicPropertySource
+    static void stubUrls(DynamicPropertyRegistry registry) {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        registry.add("predict.api.url", () -> base + "/predict");
+        registry.add("predict.api.batch-url", () -> base + "/predict/batch");
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void codecRoundTripsSeriesWithPaddingAndNaN() {
+        List<DeviceTagKey> keys = List.of(new DeviceTagKey(1L, 2L), new DeviceTagKey(3L, 4L), new DeviceTagKey(5L, 6L));
+        List<List<Double>> series = List.of(List.of(1.5, -2.0), List.of(), Arrays.asList(null, 7.25, 1e300));
+        byte[] bytes = ForecastWireCodec.encode(new ForecastWireCodec.Frame(9, keys, series));
+        // header 12 + 3 * 20 = 72 (already 8-aligned) + 5 values
+        assertEquals(72 + 5 * 8, bytes.length);
+
+        ForecastWireCodec.Frame frame = ForecastWireCodec.decode(bytes);
+        assertEquals(9, frame.predictionLength());
+        assertEquals(keys, frame.keys());
+        assertEquals(List.of(1.5, -2.0), frame.series().get(0));
+        assertTrue(frame.series().get(1).isEmpty());
+        assertTrue(frame.series().get(2).get(0).isNaN());
+        assertEquals(List.of(7.25, 1e300), frame.series().get(2).subList(1, 3));
+
+        assertThrows(IllegalArgumentException.class, () -> ForecastWireCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> ForecastWireCodec.decode("{\"predictions\":[]}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void usesBinaryFramesForSingleAndBatchCalls() {
+        List<DeviceTagKey> keys = seed("WireDev");
+        int before = binaryCalls.get();
+
+        TimeSeriesDataModelVO single = predictService.predict(keys.get(0).deviceId(), keys.get(0).tagId());
+        assertEquals(5, single.getPredictionPoints().size());
+        assertEquals(9.0, single.getPredictionPoints().get(0).getValue(), "stub echoes the last history value");
+
+        Map<DeviceTagKey, TimeSeriesDataModelVO> batch = predictService.predictBatch(keys);
+        assertEquals(2, batch.size());
+        for (DeviceTagKey key : keys) assertEquals(9.0, batch.get(key).getPredictionPoints().get(4).getValue());
+        assertEquals(2, binaryCalls.get() - before);
+    }
+
+    @Test
+    void fallsBackToJsonWhenBinaryIsRejected() {
+        List<DeviceTagKey> keys = seed("JsonOnlyDev");
+        String url = (String) ReflectionTestUtils.getField(predictService, "predictApiUrl");
+        ReflectionTestUtils.setField(predictService, "predictApiUrl", url.replace("/predict", "/json-only"));
+        try {
+            int before = jsonCalls.get();
+            TimeSeriesDataModelVO vo = predictService.predict(keys.get(0).deviceId(), keys.get(0).tagId());
+            assertEquals(42.0, vo.getPredictionPoints().get(0).getValue());
+            assertEquals(1, jsonCalls.get() - before);
+            // only the rejecting endpoint switched to JSON
+            String batchUrl = (String) ReflectionTestUtils.getField(predictService, "predictBatchUrl");
+            assertFalse(endpointPools.resolve(null, url.replace("/predict", "/json-only"), batchUrl).members().get(0).supportsBinary());
+            assertTrue(endpointPools.resolve(null, url, batchUrl).members().get(0).supportsBinary());
+        } finally {
+            ReflectionTestUtils.setField(predictService, "predictApiUrl", url);
+        }
+    }
+
+    private List<DeviceTagKey> seed(String name) {
+        Device d = deviceRepository.save(Device.builder().name(name).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        List<DeviceTagKey> keys = new ArrayList<>();
+        List<DataRecord> records = new ArrayList<>();
+        for (long tagId = 1; tagId <= 2; tagId++) {
+            keys.add(new DeviceTagKey(d.getId(), tagId));
+            for (int i = 0; i < 10; i++) {
+                records.add(DataRecord.builder().deviceId(d.getId()).tagId(tagId).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+            }
+        }
+        dataStorageService.save(records);
+        return keys;
+    }
+
+    private static HttpServer startStub() {
+        try {
+            HttpServer s = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            // binary in, binary out: every series is forecast as its last value
+            s.createContext("/predict", ex -> {
+                if (!ForecastWireCodec.MEDIA_TYPE.equals(ex.getRequestHeaders().getFirst("Content-Type"))) {
+                    reply(ex, 400, "text/plain", new byte[0]);
+                    return;
+                }
+                binaryCalls.incrementAndGet();
+                ForecastWireCodec.Frame req = ForecastWireCodec.decode(ex.getRequestBody().readAllBytes());
+                List<List<Double>> out = new ArrayList<>();
+                for (List<Double> series : req.series()) out.add(Collections.nCopies(req.predictionLength(), series.get(series.size() - 1)));
+                reply(ex, 200, ForecastWireCodec.MEDIA_TYPE, ForecastWireCodec.encode(new ForecastWireCodec.Frame(0, req.keys(), out)));
+            });
+            s.createContext("/json-only", ex -> {
+                if (!"application/json".equals(ex.getRequestHeaders().getFirst("Content-Type"))) {
+                    reply(ex, 415, "text/plain", new byte[0]);
+                    return;
+                }
+                jsonCalls.incrementAndGet();
+                int len = MAPPER.readTree(ex.getRequestBody()).get("prediction_length").asInt();
+                byte[] body = MAPPER.writeValueAsBytes(Map.of("predictions", Collections.nCopies(len, 42.0)));
+                reply(ex, 200, "application/json", body);
+            });
+            s.start();
+            return s;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void reply(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        ex.getResponseHeaders().add("Content-Type", contentType);
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) ex.getResponseBody().write(body);
+        ex.close();
+    }
+}
@@ -1,11 +1,15 @@
 package com.sandy.aiot.vision.collector;
 
 import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.event.DataIngestedEvent;
 import com.sandy.aiot.vision.collector.service.DataStorageService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -16,6 +20,11 @@ public class InMemoryDataStorageServiceTest implements DataStorageService {
     // deviceId -> (tagId -> list of records newest last)
     private final Map<Long, Map<Long, Deque<DataRecord>>> store = new ConcurrentHashMap<>();
     private static final int MAX_PER_TAG = 500;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public InMemoryDataStorageServiceTest(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
     @Override
     public List<DataRecord> findLatest(Long deviceId) {
@@ -47,8 +56,61 @@ public class InMemoryDataStorageServiceTest implements DataStorageService {
         return findLatest(deviceId); // simplified for tests
     }
 
+    @Override
+    public long scanRange(Long deviceId, List<Long> tagIds, LocalDateTime from, LocalDateTime to, int limit, RowHandler handler) throws IOException {
+        Map<Long, Deque<DataRecord>> m = store.getOrDefault(deviceId, Collections.emptyMap());
+        NavigableMap<LocalDateTime, Object[]> rows = new TreeMap<>();
+        for (int i = 0; i < tagIds.size(); i++) {
+            Deque<DataRecord> q = m.get(tagIds.get(i));
+            if (q == null) continue;
+            for (DataRecord r : q) {
+                if (r.getTimestamp().isBefore(from) || !r.getTimestamp().isBefore(to)) continue;
+                rows.computeIfAbsent(r.getTimestamp(), k -> new Object[tagIds.size()])[i] = r.getValue();
+            }
+        }
+        long n = 0;
+        for (Map.Entry<LocalDateTime, Object[]> e : rows.entrySet()) {
+            if (limit > 0 && n >= limit) break;
+            handler.onRow(e.getKey().toInstant(ZoneOffset.UTC).toEpochMilli(), e.getValue());
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public long scanLatest(Long deviceId, List<Long> tagIds, int limit, RowHandler handler) throws IOException {
+        Map<Long, Deque<DataRecord>> m = store.getOrDefault(deviceId, Collections.emptyMap());
+        NavigableMap<LocalDateTime, Object[]> rows = new TreeMap<>(Comparator.reverseOrder());
+        for (int i = 0; i < tagIds.size(); i++) {
+            Deque<DataRecord> q = m.get(tagIds.get(i));
+            if (q == null) continue;
+            for (DataRecord r : q) {
+                rows.computeIfAbsent(r.getTimestamp(), k -> new Object[tagIds.size()])[i] = r.getValue();
+            }
+        }
+        long n = 0;
+        for (Map.Entry<LocalDateTime, Object[]> e : rows.entrySet()) {
+            if (n >= limit) break;
+            handler.onRow(e.getKey().toInstant(ZoneOffset.UTC).toEpochMilli(), e.getValue());
+            n++;
+        }
+        return n;
+    }
+
     @Override
     public boolean save(List<DataRecord> dataRecords) {
+        store(dataRecords);
+        eventPublisher.publishEvent(new DataIngestedEvent(dataRecords));
+        return true;
+    }
+
+    @Override
+    public boolean saveBatch(List<DataRecord> dataRecords) {
+        store(dataRecords);
+        return true;
+    }
+
+    private void store(List<DataRecord> dataRecords) {
         for (DataRecord r : dataRecords) {
             if (r.getTimestamp() == null) {
                 r.setTimestamp(LocalDateTime.now());
@@ -59,7 +121,5 @@ public class InMemoryDataStorageServiceTest implements DataStorageService {
             Deque<DataRecord> q = store.get(r.getDeviceId()).get(r.getTagId());
             while (q.size() > MAX_PER_TAG) q.removeFirst();
         }
-        return true;
     }
 }
-
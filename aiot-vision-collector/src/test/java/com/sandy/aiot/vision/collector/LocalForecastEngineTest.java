@@ -0,0 +1,108 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.event.TagsRemovedEvent;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.impl.LocalForecastEngine;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class LocalForecastEngineTest {
+    @Autowired LocalForecastEngine engine;
+    @Autowired PredictService predictService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void holtFollowsTrendAndUpdatesIncrementally() {
+        DeviceTagKey key = new DeviceTagKey(-100L, 1L);
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<Double> values = new ArrayList<>();
+        List<LocalDateTime> ts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            values.add(2.0 * i);
+            ts.add(base.plusMinutes(i));
+        }
+        List<Double> f = engine.forecast(key, LocalForecastEngine.Model.HOLT, values, ts, 3);
+        assertEquals(100.0, f.get(0), 1.0);
+        assertEquals(104.0, f.get(2), 1.0);
+
+        // sliding window with one new point: state advances by that point only
+        values.remove(0);
+        ts.remove(0);
+        values.add(100.0);
+        ts.add(base.plusMinutes(50));
+        assertEquals(102.0, engine.forecast(key, LocalForecastEngine.Model.HOLT, values, ts, 1).get(0), 1.0);
+
+        // null samples are skipped on the incremental path just like on a full fit
+        values.add(null);
+        ts.add(base.plusMinutes(51));
+        assertEquals(102.0, engine.forecast(key, LocalForecastEngine.Model.HOLT, values, ts, 1).get(0), 1.0);
+    }
+
+    @Test
+    void holtWintersDetectsSeasonality() {
+        DeviceTagKey key = new DeviceTagKey(-100L, 2L);
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<Double> values = new ArrayList<>();
+        List<LocalDateTime> ts = new ArrayList<>();
+        int period = 12;
+        for (int i = 0; i < 10 * period; i++) {
+            values.add(50 + 10 * Math.sin(2 * Math.PI * i / period));
+            ts.add(base.plusMinutes(i));
+        }
+        List<Double> f = engine.forecast(key, LocalForecastEngine.Model.HOLT_WINTERS, values, ts, period);
+        for (int h = 1; h <= period; h++) {
+            double expected = 50 + 10 * Math.sin(2 * Math.PI * (10 * period + h - 1) / period);
+            assertEquals(expected, f.get(h - 1), 2.0, "h=" + h);
+        }
+    }
+
+    @Test
+    void tagWithLocalModelIsPredictedInProcess() {
+        Device d = deviceRepository.save(Device.builder().name("LocalDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag t = tagRepository.save(Tag.builder().name("L").address("ns=2;s=l1").forecastModel("ewma").device(d).build());
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(DataRecord.builder().deviceId(d.getId()).tagId(t.getId()).value(7).timestamp(LocalDateTime.now().minusMinutes(20 - i)).build());
+        }
+        dataStorageService.save(records);
+
+        var vo = predictService.predict(d.getId(), t.getId());
+        assertEquals(5, vo.getPredictionPoints().size());
+        assertEquals(7.0, vo.getPredictionPoints().get(4).getValue(), 1e-9);
+    }
+
+    @Test
+    void removedTagsDropTheirState() {
+        DeviceTagKey key = new DeviceTagKey(-100L, 3L);
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+        engine.forecast(key, LocalForecastEngine.Model.EWMA, List.of(1.0, 2.0), List.of(base, base.plusMinutes(1)), 1);
+        Map<?, ?> states = (Map<?, ?>) ReflectionTestUtils.getField(engine, "states");
+        assertTrue(states.containsKey(key));
+
+        eventPublisher.publishEvent(new TagsRemovedEvent(List.of(key)));
+        assertFalse(states.containsKey(key));
+    }
+}
@@ -0,0 +1,112 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelRsp;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /data/api/predict is answered from the prediction cache; only stale series trigger a (shared) refresh.
+ */
+@SpringBootTest(properties = {
+        "predict.cache.prefetch-interval-ms=3600000",
+        "predict.cache.reconcile-interval-ms=3600000",
+        "alert.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:predictapidb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PredictApiCacheTest {
+    @Autowired MockMvc mockMvc;
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @MockitoSpyBean PredictService predictService;
+
+    @Test
+    void concurrentViewersOfAColdTagShareOneForecast() throws Exception {
+        Tag t = seed("ViewDev");
+        Long deviceId = t.getDevice().getId();
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<TimeSeriesDataModelRsp>> views = new ArrayList<>();
+            for (int i = 0; i < 5; i++) views.add(pool.submit(() -> predictionCacheService.viewForecast(deviceId, t.getId(), null)));
+            for (Future<TimeSeriesDataModelRsp> f : views) {
+                TimeSeriesDataModelRsp rsp = f.get(15, TimeUnit.SECONDS);
+                assertEquals(5, rsp.getPredictionPoints().size());
+                assertFalse(rsp.getStale());
+                assertNotNull(rsp.getCoverageEnd());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(predictService, times(1)).predictAsync(deviceId, t.getId());
+
+        // fresh series: served from the cache without another forecast call
+        mockMvc.perform(get("/data/api/predict/" + deviceId + "/" + t.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.predictionPoints.length()").value(5))
+                .andExpect(jsonPath("$.stale").value(false))
+                .andExpect(jsonPath("$.ageMs").isNumber());
+        verify(predictService, times(1)).predictAsync(deviceId, t.getId());
+    }
+
+    @Test
+    void maxAgeTriggersBackgroundRefreshButServesCachedPoints() throws Exception {
+        Tag t = seed("MaxAgeDev");
+        Long deviceId = t.getDevice().getId();
+        predictionCacheService.viewForecast(deviceId, t.getId(), null);
+        Thread.sleep(20);
+
+        TimeSeriesDataModelRsp rsp = predictionCacheService.viewForecast(deviceId, t.getId(), 0L);
+        assertEquals(5, rsp.getPredictionPoints().size(), "cached points are returned while refreshing");
+        verify(predictService, timeout(5000).times(2)).predictAsync(deviceId, t.getId());
+        // a generous maxAge accepts the cached series
+        predictionCacheService.viewForecast(deviceId, t.getId(), 3_600_000L);
+        verify(predictService, times(2)).predictAsync(deviceId, t.getId());
+    }
+
+    @Test
+    void unknownDeviceGivesEmptyResponseWithoutForecastCall() throws Exception {
+        mockMvc.perform(get("/data/api/predict/987654/1").param("maxAge", "60"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.predictionPoints.length()").value(0));
+        verify(predictService, never()).predictAsync(eq(987654L), anyLong());
+    }
+
+    private Tag seed(String name) {
+        Device d = deviceRepository.save(Device.builder().name(name).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag t = tagRepository.save(Tag.builder().name(name + "-T").address("ns=2;s=" + name).device(d).build());
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(DataRecord.builder().deviceId(d.getId()).tagId(t.getId()).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+        }
+        dataStorageService.save(records);
+        return t;
+    }
+}
@@ -0,0 +1,186 @@
+package com.sandy.aiot.vision.collector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.impl.ForecastClient;
+import com.sandy.aiot.vision.collector.service.impl.ForecastEndpointPools;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batch prediction and the forecast HTTP client against a local stub of the forecast service.
+ */
+@SpringBootTest(properties = "predict.api.batch-size=2")
+@ActiveProfiles("test")
+class PredictBatchTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final AtomicInteger batchCalls = new AtomicInteger();
+    private static final AtomicInteger singleCalls = new AtomicInteger();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+    private static final HttpServer server = startStub();
+
+    @Autowired PredictService predictService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired ForecastEndpointPools endpointPools;
+
+    @DynamicPropertySource
+    static void stubUrls(DynamicPropertyRegistry registry) {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        registry.add("predict.api.url", () -> base + "/predict");
+        registry.add("predict.api.batch-url", () -> base + "/predict/batch");
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void packsSeriesIntoBatchesAndMapsResultsBack() {
+        List<DeviceTagKey> keys = seed("BatchDev");
+        keys.add(new DeviceTagKey(-1L, 1L)); // unknown device is skipped
+        int before = batchCalls.get();
+
+        Map<DeviceTagKey, TimeSeriesDataModelVO> result = predictService.predictBatch(keys);
+
+        assertEquals(3, result.size());
+        assertEquals(2, batchCalls.get() - before, "3 series with batch-size 2 -> 2 requests");
+        for (DeviceTagKey key : keys.subList(0, 3)) {
+            var points = result.get(key).getPredictionPoints();
+            assertEquals(5, points.size());
+            assertEquals(key.tagId().doubleValue(), points.get(0).getValue(), "stub answers with the tag id");
+        }
+    }
+
+    @Test
+    void fallsBackToSingleCallsWhenBatchingUnsupported() {
+        List<DeviceTagKey> keys = seed("NoBatchDev");
+        String batchUrl = (String) ReflectionTestUtils.getField(predictService, "predictBatchUrl");
+        ReflectionTestUtils.setField(predictService, "predictBatchUrl", batchUrl.replace("/batch", "/missing"));
+        try {
+            int before = singleCalls.get();
+            Map<DeviceTagKey, TimeSeriesDataModelVO> result = predictService.predictBatch(keys);
+            assertEquals(3, result.size());
+            assertEquals(3, singleCalls.get() - before);
+            assertEquals(42.0, result.get(keys.get(0)).getPredictionPoints().get(0).getValue());
+            // only the rejecting endpoint stopped batching
+            String url = (String) ReflectionTestUtils.getField(predictService, "predictApiUrl");
+            assertFalse(endpointPools.resolve(null, url, batchUrl.replace("/batch", "/missing")).hasBatch());
+            assertTrue(endpointPools.resolve(null, url, batchUrl).hasBatch());
+        } finally {
+            ReflectionTestUtils.setField(predictService, "predictBatchUrl", batchUrl);
+        }
+    }
+
+    @Test
+    void clientKeepsAtMostMaxConcurrencyRequestsInFlight() {
+        ForecastClient client = new ForecastClient(1000, 5000, 2);
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        List<CompletableFuture<ForecastClient.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) futures.add(client.postJson(url, "{}"));
+        futures.forEach(f -> assertEquals(200, f.join().status()));
+        assertTrue(maxInFlight.get() <= 2, "in flight was " + maxInFlight.get());
+        assertEquals(0, client.queuedRequests());
+    }
+
+    private List<DeviceTagKey> seed(String name) {
+        Device d = deviceRepository.save(Device.builder().name(name).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        List<DeviceTagKey> keys = new ArrayList<>();
+        List<DataRecord> records = new ArrayList<>();
+        for (long tagId = 1; tagId <= 3; tagId++) {
+            keys.add(new DeviceTagKey(d.getId(), tagId));
+            for (int i = 0; i < 10; i++) {
+                records.add(DataRecord.builder().deviceId(d.getId()).tagId(tagId).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+            }
+        }
+        dataStorageService.save(records);
+        return keys;
+    }
+
+    private static HttpServer startStub() {
+        try {
+            HttpServer s = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            s.setExecutor(Executors.newFixedThreadPool(8));
+            s.createContext("/predict/batch", ex -> {
+                batchCalls.incrementAndGet();
+                JsonNode req = MAPPER.readTree(ex.getRequestBody());
+                int len = req.get("prediction_length").asInt();
+                List<Map<String, Object>> results = new ArrayList<>();
+                for (JsonNode series : req.get("series")) {
+                    String id = series.get("id").asText();
+                    double tagId = Double.parseDouble(id.substring(id.indexOf(':') + 1));
+                    results.add(Map.of("id", id, "predictions", repeat(tagId, len)));
+                }
+                reply(ex, 200, Map.of("results", results));
+            });
+            s.createContext("/slow", ex -> {
+                int now = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                reply(ex, 200, Map.of());
+            });
+            s.createContext("/predict", ex -> {
+                if (!"/predict".equals(ex.getRequestURI().getPath())) {
+                    reply(ex, 404, Map.of("error", "not found"));
+                    return;
+                }
+                singleCalls.incrementAndGet();
+                int len = MAPPER.readTree(ex.getRequestBody()).get("prediction_length").asInt();
+                reply(ex, 200, Map.of("predictions", repeat(42.0, len)));
+            });
+            s.start();
+            return s;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Double> repeat(double v, int n) {
+        List<Double> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) list.add(v);
+        return list;
+    }
+
+    private static void reply(HttpExchange ex, int status, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+        ex.close();
+    }
+}
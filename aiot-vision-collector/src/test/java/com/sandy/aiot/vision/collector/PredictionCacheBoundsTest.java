@@ -0,0 +1,93 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.PredictionCacheStatsVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * Capacity eviction (least recently read first), idle expiry and removal of deleted tags from the prediction cache.
+ */
+@SpringBootTest(properties = {
+        "predict.cache.max-series=3",
+        "predict.cache.ttl-ms=300",
+        "predict.cache.prefetch-interval-ms=3600000",
+        "predict.cache.reconcile-interval-ms=3600000",
+        "alert.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:boundsdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PredictionCacheBoundsTest {
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired MockMvc mockMvc;
+
+    @Test
+    void evictsLeastRecentlyReadSeriesOverCapacity() throws Exception {
+        LocalDateTime ts = LocalDateTime.now().plusMinutes(1);
+        long evictedBefore = predictionCacheService.stats(0).getEvictedCapacity();
+        for (long tag = 1; tag <= 3; tag++) {
+            predictionCacheService.putPredictionPoint(9001L, tag, ts, (double) tag);
+            Thread.sleep(5);
+        }
+        assertEquals(1.0, predictionCacheService.getPredictedValue(9001L, 1L, ts)); // 读取使其成为最近使用
+        Thread.sleep(5);
+        predictionCacheService.putPredictionPoint(9001L, 4L, ts, 4.0);
+        Thread.sleep(5);
+        predictionCacheService.putPredictionPoint(9001L, 5L, ts, 5.0);
+
+        assertNotNull(predictionCacheService.seriesStats(9001L, 1L));
+        assertNull(predictionCacheService.seriesStats(9001L, 2L));
+        assertNull(predictionCacheService.seriesStats(9001L, 3L));
+        assertNotNull(predictionCacheService.seriesStats(9001L, 4L));
+        assertNotNull(predictionCacheService.seriesStats(9001L, 5L));
+        PredictionCacheStatsVO stats = predictionCacheService.stats(0);
+        assertTrue(stats.getSeriesCount() <= 3);
+        assertTrue(stats.getEvictedCapacity() - evictedBefore >= 2);
+        assertTrue(stats.getHits() >= 1);
+    }
+
+    @Test
+    void expiresSeriesThatAreNotRead() throws Exception {
+        LocalDateTime ts = LocalDateTime.now().plusMinutes(1);
+        predictionCacheService.putPredictionPoint(9002L, 1L, ts, 1.0);
+        Thread.sleep(400);
+        assertTrue(predictionCacheService.evictExpired() >= 1);
+        assertNull(predictionCacheService.seriesStats(9002L, 1L));
+        assertTrue(predictionCacheService.stats(0).getEvictedExpired() >= 1);
+    }
+
+    @Test
+    void deletingDeviceOrTagDropsItsSeries() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("EvictDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag t1 = tagRepository.save(Tag.builder().name("E1").address("ns=2;s=e1").device(d).build());
+        Tag t2 = tagRepository.save(Tag.builder().name("E2").address("ns=2;s=e2").device(d).build());
+        LocalDateTime ts = LocalDateTime.now().plusMinutes(1);
+        predictionCacheService.putPredictionPoint(d.getId(), t1.getId(), ts, 1.0);
+        predictionCacheService.putPredictionPoint(d.getId(), t2.getId(), ts, 2.0);
+
+        mockMvc.perform(delete("/data/api/" + d.getId() + "/tags/" + t1.getId())).andExpect(jsonPath("$.success").value(true));
+        assertNull(predictionCacheService.seriesStats(d.getId(), t1.getId()));
+        assertNotNull(predictionCacheService.seriesStats(d.getId(), t2.getId()));
+
+        mockMvc.perform(delete("/data/api/devices/" + d.getId())).andExpect(jsonPath("$.success").value(true));
+        assertNull(predictionCacheService.seriesStats(d.getId(), t2.getId()));
+        assertTrue(predictionCacheService.stats(0).getEvictedRemoved() >= 2);
+    }
+}
@@ -0,0 +1,55 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.vo.PredictionCacheStatsVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"predict.cache.max-points-per-tag=3", "predict.cache.tolerance-ms=30000", "predict.cache.stale-tolerance-ms=0", "alert.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PredictionCacheStoreTest {
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired MockMvc mockMvc;
+
+    @Test
+    void nearestLookupKeepsLatestPointsAndReportsMemory() throws Exception {
+        long deviceId = 9001L, tagId = 1L;
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 0, 0, 0);
+        // inserted out of order; the oldest point falls out because max-points-per-tag=3
+        predictionCacheService.putPredictionPoint(deviceId, tagId, base.plusMinutes(2), 12.0);
+        predictionCacheService.putPredictionPoint(deviceId, tagId, base, 10.0);
+        predictionCacheService.putPredictionPoint(deviceId, tagId, base.plusMinutes(3), 13.0);
+        predictionCacheService.putPredictionPoint(deviceId, tagId, base.plusMinutes(1), 11.0);
+        predictionCacheService.putPredictionPoint(deviceId, tagId, base.plusMinutes(1), 11.5); // same timestamp overrides
+
+        assertEquals(11.5, predictionCacheService.getPredictedValue(deviceId, tagId, base.plusMinutes(1)));
+        assertEquals(12.0, predictionCacheService.getPredictedValue(deviceId, tagId, base.plusMinutes(2).plusSeconds(20)));
+        assertEquals(11.5, predictionCacheService.getPredictedValue(deviceId, tagId, base.plusSeconds(30)), "nearest point within tolerance");
+        assertNull(predictionCacheService.getPredictedValue(deviceId, tagId, base), "evicted and nothing within tolerance");
+        assertEquals(base.plusMinutes(3), predictionCacheService.coverageEnd(deviceId, tagId));
+
+        PredictionCacheStatsVO.SeriesStats stats = predictionCacheService.seriesStats(deviceId, tagId);
+        assertEquals(3, stats.getPoints());
+        assertTrue(stats.getBytes() >= 3 * 16);
+
+        mockMvc.perform(get("/data/api/predict-cache/" + deviceId + "/" + tagId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.points").value(3))
+                .andExpect(jsonPath("$.coverageEnd").value("2030-01-01 00:03:00"));
+        mockMvc.perform(get("/data/api/predict-cache").param("top", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.largest.length()").value(1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.impl.PredictionInputWindows;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import com.sandy.aiot.vision.collector.vo.TimeSeriesDataModelVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {"predict.local.default-model=ewma", "alert.enabled=false"})
+@ActiveProfiles("test")
+class PredictionInputWindowTest {
+    @Autowired PredictionInputWindows windows;
+    @Autowired PredictService predictService;
+    @Autowired DeviceRepository deviceRepository;
+    @MockitoSpyBean DataStorageService dataStorageService;
+
+    @Test
+    void resamplesToFixedStepAndHoldsOverGaps() {
+        DeviceTagKey key = new DeviceTagKey(-200L, 1L);
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 0, 0);
+        List<DataRecord> records = new ArrayList<>();
+        // 10s cadence with jitter: +19.98s lands in the +10s step, nothing arrives for +20s/+30s, two samples in +40s
+        int[] offsetsMs = {0, 10_050, 19_980, 40_010, 41_500, 50_000};
+        double[] values = {1, 2, 3, 4, 4.5, 5};
+        for (int i = 0; i < offsetsMs.length; i++) {
+            records.add(DataRecord.builder().deviceId(-200L).tagId(1L).value(values[i]).timestamp(base.plus(offsetsMs[i], ChronoUnit.MILLIS)).build());
+        }
+        PredictionInputWindows.Input input = windows.seed(key, records);
+
+        assertEquals(List.of(1.0, 3.0, 3.0, 3.0, 4.5, 5.0), input.values(), "last sample of a step wins, empty steps hold");
+        assertEquals(base, input.timestamps().get(0));
+        assertEquals(base.plusSeconds(50), input.timestamps().get(5));
+    }
+
+    @Test
+    void predictionReadsFromWindowAfterFirstSeed() {
+        Device d = deviceRepository.save(Device.builder().name("WindowDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(10);
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(DataRecord.builder().deviceId(d.getId()).tagId(1L).value(3).timestamp(start.plusMinutes(i)).build());
+        }
+        dataStorageService.save(records);
+
+        predictService.predict(d.getId(), 1L);
+        // appended through the ingest event; the step in between is held
+        dataStorageService.save(List.of(DataRecord.builder().deviceId(d.getId()).tagId(1L).value(9).timestamp(start.plusMinutes(11)).build()));
+        TimeSeriesDataModelVO vo = predictService.predict(d.getId(), 1L);
+
+        verify(dataStorageService, times(1)).findTopN(eq(d.getId()), eq(1L), anyInt());
+        assertEquals(start.plusMinutes(11), vo.getTimestamps().get(vo.getTimestamps().size() - 1));
+        assertEquals(start.plusMinutes(12), vo.getPredictionPoints().get(0).getTimestamp());
+        assertEquals(12, vo.getTimestamps().size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.AlertRule;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.AlertRuleRepository;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.service.impl.AlertRuleEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "predict.cache.max-refresh-per-cycle=1",
+        "predict.cache.prefetch-interval-ms=3600000",
+        "predict.cache.reconcile-interval-ms=3600000",
+        "alert.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:prefetchdb;MODE=MySQL;DB_CLOSE_DELAY=-1" // 独立库, 避免其它测试的标签参与排队
+})
+@ActiveProfiles("test")
+class PredictionPrefetchSchedulingTest {
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired AlertRuleRepository alertRuleRepository;
+    @Autowired AlertRuleEngine alertRuleEngine;
+
+    @Test
+    void refreshesViewedSeriesFirstWithinBudgetAndOnlyWhenDue() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("SchedDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag t1 = seedTag(d, "T1");
+        Tag t2 = seedTag(d, "T2");
+
+        predictionCacheService.reconcile();
+        predictionCacheService.markViewed(d.getId(), t2.getId());
+
+        // budget 1: the viewed tag goes first even though both are due
+        assertEquals(1, predictionCacheService.prefetchDue().get(10, TimeUnit.SECONDS));
+        assertNotNull(predictionCacheService.coverageEnd(d.getId(), t2.getId()));
+        assertNull(predictionCacheService.coverageEnd(d.getId(), t1.getId()));
+
+        assertEquals(1, predictionCacheService.prefetchDue().get(10, TimeUnit.SECONDS));
+        assertNotNull(predictionCacheService.coverageEnd(d.getId(), t1.getId()));
+
+        // both series are covered now, nothing is due
+        assertEquals(0, predictionCacheService.prefetchDue().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tagsWithConfiguredDeviationRulesGoBeforeOthers() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("RuleSchedDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag plain = seedTag(d, "Plain");
+        Tag watched = seedTag(d, "Watched");
+        alertRuleRepository.save(AlertRule.builder().tagId(watched.getId()).type("DEVIATION").deviationPercent(10d).build());
+        alertRuleEngine.reload();
+
+        predictionCacheService.reconcile();
+        assertEquals(1, predictionCacheService.prefetchDue().get(10, TimeUnit.SECONDS));
+        assertNotNull(predictionCacheService.coverageEnd(d.getId(), watched.getId()));
+        assertNull(predictionCacheService.coverageEnd(d.getId(), plain.getId()));
+
+        assertEquals(1, predictionCacheService.prefetchDue().get(10, TimeUnit.SECONDS));
+        assertNotNull(predictionCacheService.coverageEnd(d.getId(), plain.getId()));
+    }
+
+    private Tag seedTag(Device d, String name) {
+        Tag t = tagRepository.save(Tag.builder().name(name).address("ns=2;s=" + name).device(d).build());
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(DataRecord.builder().deviceId(d.getId()).tagId(t.getId()).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+        }
+        dataStorageService.save(records);
+        return t;
+    }
+}
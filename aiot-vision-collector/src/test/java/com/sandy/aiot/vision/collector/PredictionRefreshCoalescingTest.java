@@ -0,0 +1,67 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "predict.cache.prefetch-interval-ms=3600000",
+        "predict.cache.reconcile-interval-ms=3600000",
+        "alert.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:refreshdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class PredictionRefreshCoalescingTest {
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired DataStorageService dataStorageService;
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @MockitoSpyBean PredictService predictService;
+
+    @Test
+    void concurrentMissesShareOneRefreshAndNeverBlock() throws Exception {
+        Device d = deviceRepository.save(Device.builder().name("RefreshDev").protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        Tag t = tagRepository.save(Tag.builder().name("R1").address("ns=2;s=r1").device(d).build());
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(DataRecord.builder().deviceId(d.getId()).tagId(t.getId()).value(i).timestamp(LocalDateTime.now().minusMinutes(10 - i)).build());
+        }
+        dataStorageService.save(records);
+
+        // far beyond any forecast horizon: every lookup misses, none may trigger a second request
+        LocalDateTime farAhead = LocalDateTime.now().plusDays(1);
+        for (int i = 0; i < 5; i++) {
+            assertNull(predictionCacheService.getPredictedValue(d.getId(), t.getId(), farAhead));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (predictionCacheService.coverageEnd(d.getId(), t.getId()) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertNotNull(predictionCacheService.coverageEnd(d.getId(), t.getId()), "refreshed in the background");
+        assertNull(predictionCacheService.getPredictedValue(d.getId(), t.getId(), farAhead));
+        verify(predictService, times(1)).predictAsync(d.getId(), t.getId());
+
+        // a lookup slightly past the covered range is served from the stale series, but never more than one step away
+        LocalDateTime coverageEnd = predictionCacheService.coverageEnd(d.getId(), t.getId());
+        assertNotNull(predictionCacheService.getPredictedValue(d.getId(), t.getId(), coverageEnd.plusSeconds(45)));
+        assertNull(predictionCacheService.getPredictedValue(d.getId(), t.getId(), coverageEnd.plusMinutes(2)));
+    }
+}
@@ -0,0 +1,66 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.service.PredictionSnapshotCodec;
+import com.sandy.aiot.vision.collector.service.PredictionSnapshotCodec.SeriesData;
+import com.sandy.aiot.vision.collector.vo.DeviceTagKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredictionSnapshotCodecTest {
+
+    @Test
+    void roundTripDropsExpiredPointsAndEmptySeries(@TempDir Path dir) throws Exception {
+        long base = 1_900_000_000_000L;
+        List<SeriesData> series = List.of(
+                new SeriesData(new DeviceTagKey(1L, 10L), 60_000L,
+                        new long[]{base, base + 60_000, base + 120_000}, new double[]{1.5, -2.25, Double.NaN}),
+                new SeriesData(new DeviceTagKey(2L, 20L), 1_000L,
+                        new long[]{base - 5_000, base - 4_000}, new double[]{7, 8}));
+        Path file = dir.resolve("cache.bin");
+        PredictionSnapshotCodec.writeFile(file, base, series);
+        assertTrue(Files.size(file) < 18 + 2 * 28 + 5 * 16 + 8, "timestamps are delta encoded");
+
+        List<SeriesData> all = PredictionSnapshotCodec.readFile(file, Long.MIN_VALUE);
+        assertEquals(2, all.size());
+        assertEquals(new DeviceTagKey(1L, 10L), all.get(0).key());
+        assertEquals(60_000L, all.get(0).stepMillis());
+        assertArrayEquals(series.get(0).ts(), all.get(0).ts());
+        assertArrayEquals(series.get(0).values(), all.get(0).values());
+        assertArrayEquals(series.get(1).ts(), all.get(1).ts());
+
+        // points before the cutoff are discarded, the second series disappears entirely
+        List<SeriesData> fresh = PredictionSnapshotCodec.readFile(file, base + 60_000);
+        assertEquals(1, fresh.size());
+        assertArrayEquals(new long[]{base + 60_000, base + 120_000}, fresh.get(0).ts());
+        assertArrayEquals(new double[]{-2.25, Double.NaN}, fresh.get(0).values());
+    }
+
+    @Test
+    void rejectsCorruptOrForeignFiles() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PredictionSnapshotCodec.write(out, 0L, List.of(
+                new SeriesData(new DeviceTagKey(1L, 1L), 60_000L, new long[]{1, 2}, new double[]{3, 4})));
+        byte[] bytes = out.toByteArray();
+
+        byte[] flipped = bytes.clone();
+        flipped[flipped.length - 12] ^= 1; // inside the values
+        assertThrows(IOException.class, () -> PredictionSnapshotCodec.read(new ByteArrayInputStream(flipped), 0L));
+
+        byte[] newerVersion = bytes.clone();
+        newerVersion[5] = 2;
+        IOException e = assertThrows(IOException.class, () -> PredictionSnapshotCodec.read(new ByteArrayInputStream(newerVersion), 0L));
+        assertTrue(e.getMessage().contains("version"));
+
+        assertThrows(IOException.class, () -> PredictionSnapshotCodec.read(new ByteArrayInputStream("hello".getBytes()), 0L));
+        assertThrows(IOException.class, () -> PredictionSnapshotCodec.read(new ByteArrayInputStream(bytes, 0, bytes.length - 3), 0L));
+    }
+}
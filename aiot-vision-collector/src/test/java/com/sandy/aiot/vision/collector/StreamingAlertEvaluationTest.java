@@ -0,0 +1,129 @@
+package com.sandy.aiot.vision.collector;
+
+import com.sandy.aiot.vision.collector.entity.Alert;
+import com.sandy.aiot.vision.collector.entity.AlertRule;
+import com.sandy.aiot.vision.collector.entity.DataRecord;
+import com.sandy.aiot.vision.collector.entity.Device;
+import com.sandy.aiot.vision.collector.entity.Tag;
+import com.sandy.aiot.vision.collector.repository.AlertRepository;
+import com.sandy.aiot.vision.collector.repository.AlertRuleRepository;
+import com.sandy.aiot.vision.collector.repository.DeviceRepository;
+import com.sandy.aiot.vision.collector.repository.TagRepository;
+import com.sandy.aiot.vision.collector.service.DataStorageService;
+import com.sandy.aiot.vision.collector.service.PredictionCacheService;
+import com.sandy.aiot.vision.collector.service.impl.AlertRuleEngine;
+import com.sandy.aiot.vision.collector.service.impl.AlertScanService;
+import com.sandy.aiot.vision.collector.service.impl.StreamingAlertEvaluator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Ingested samples are evaluated against the cached prediction right away; the scan only covers tags the stream
+ * could not evaluate.
+ */
+@SpringBootTest(properties = {
+        "alert.scan-interval-ms=3600000",
+        "alert.deviation-percent-threshold=15",
+        "predict.cache.prefetch-interval-ms=3600000",
+        "spring.datasource.url=jdbc:h2:mem:streamalertdb;MODE=MySQL;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class StreamingAlertEvaluationTest {
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired TagRepository tagRepository;
+    @Autowired AlertRepository alertRepository;
+    @Autowired AlertRuleRepository alertRuleRepository;
+    @Autowired AlertRuleEngine alertRuleEngine;
+    @Autowired PredictionCacheService predictionCacheService;
+    @Autowired AlertScanService alertScanService;
+    @Autowired StreamingAlertEvaluator streamingAlertEvaluator;
+    @MockitoSpyBean DataStorageService dataStorageService;
+
+    @Test
+    void ingestedSampleRaisesAlertWithoutScan() throws Exception {
+        Tag tag = seedTag("StreamDev", "Pressure");
+        Long deviceId = tag.getDevice().getId();
+        LocalDateTime ts = LocalDateTime.now().withNano(0);
+        predictionCacheService.putPredictionPoint(deviceId, tag.getId(), ts, 100d);
+
+        dataStorageService.save(List.of(record(deviceId, tag.getId(), 150d, ts)));
+
+        Alert alert = awaitAlert(deviceId + ":" + tag.getId() + ":DEVIATION");
+        assertEquals(50.0, alert.getDeviationPercent(), 1e-6);
+        assertTrue(alert.getMessage().contains("StreamDev"), alert.getMessage());
+        assertTrue(alert.getMessage().contains("Pressure"), alert.getMessage());
+
+        // 已由采集流评估的标签, 扫描不再查询最新值
+        alertScanService.scanOnce();
+        verify(dataStorageService, never()).findLatest(deviceId, tag.getId());
+        assertEquals(1, alertRepository.findAll().stream().filter(a -> tag.getId().equals(a.getTagId())).count());
+    }
+
+    @Test
+    void scanFallsBackWhenStreamHadNoBaseline() throws Exception {
+        Tag tag = seedTag("FallbackDev", "Flow");
+        Long deviceId = tag.getDevice().getId();
+        LocalDateTime ts = LocalDateTime.now().withNano(0);
+        long before = streamingAlertEvaluator.evaluatedSamples();
+
+        dataStorageService.save(List.of(record(deviceId, tag.getId(), 150d, ts)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (streamingAlertEvaluator.evaluatedSamples() == before && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertTrue(streamingAlertEvaluator.evaluatedSamples() > before, "sample was streamed");
+        assertTrue(alertRepository.findAll().stream().noneMatch(a -> tag.getId().equals(a.getTagId())), "no baseline yet");
+
+        predictionCacheService.putPredictionPoint(deviceId, tag.getId(), ts, 100d);
+        alertScanService.scanOnce();
+        verify(dataStorageService, atLeastOnce()).findLatest(deviceId, tag.getId());
+        awaitAlert(deviceId + ":" + tag.getId() + ":DEVIATION");
+    }
+
+    @Test
+    void burstForRawValueRuleIsEvaluatedSampleBySample() throws Exception {
+        Tag tag = seedTag("BurstDev", "Vibration");
+        Long deviceId = tag.getDevice().getId();
+        alertRuleRepository.save(AlertRule.builder().tagId(tag.getId()).type("ROLLING_STDDEV").windowSize(5).sigma(3d).build());
+        alertRuleEngine.reload();
+        LocalDateTime t0 = LocalDateTime.now().withNano(0);
+        List<DataRecord> burst = new ArrayList<>();
+        for (int i = 0; i < 20; i++) burst.add(record(deviceId, tag.getId(), 10d + (i % 2), t0.plusSeconds(i)));
+        long before = streamingAlertEvaluator.evaluatedSamples();
+
+        dataStorageService.save(burst);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (streamingAlertEvaluator.evaluatedSamples() - before < burst.size() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        // 滚动标准差规则需要每个样本, 突发不再合并为最新值
+        assertEquals(burst.size(), streamingAlertEvaluator.evaluatedSamples() - before);
+        assertEquals(0, streamingAlertEvaluator.droppedSamples());
+    }
+
+    private Alert awaitAlert(String signature) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            for (Alert a : alertRepository.findAll()) {
+                if (signature.equals(a.getSignature())) return a;
+            }
+            Thread.sleep(20);
+        }
+        return fail("no alert with signature " + signature);
+    }
+
+    private Tag seedTag(String deviceName, String tagName) {
+        Device d = deviceRepository.save(Device.builder().name(deviceName).protocol("opcua").connectionString("opc.tcp://localhost:1").build());
+        return tagRepository.save(Tag.builder().name(tagName).address("ns=2;s=" + tagName).device(d).build());
+    }
+
+    private static DataRecord record(Long deviceId, Long tagId, double value, LocalDateTime ts) {
+        return DataRecord.builder().deviceId(deviceId).tagId(tagId).value(value).timestamp(ts).build();
+    }
+}